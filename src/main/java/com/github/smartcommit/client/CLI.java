@@ -3,7 +3,9 @@ package com.github.smartcommit.client;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import com.github.smartcommit.io.ContentStore;
 import com.github.smartcommit.model.Group;
+import com.github.smartcommit.model.constant.ResultFormat;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.eclipse.jgit.api.Git;
@@ -14,6 +16,8 @@ import org.eclipse.jgit.util.FS;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class CLI {
@@ -82,6 +86,71 @@ public class CLI {
       description = "Set the minimal similarity between change, [0.0, 1.0].")
   Double minSimilarity = 0.8D;
 
+  @Parameter(
+      names = {"-jg", "--use-jgit"},
+      arity = 1,
+      description =
+          "Whether to collect changes in-process with jGit instead of forking git, true/false.")
+  Boolean useJGit = false;
+
+  @Parameter(
+      names = {"-ro", "--read-only"},
+      arity = 1,
+      description =
+          "Whether to analyze the working tree without unstaging the staged changes (i.e. never modify the index), true/false.")
+  Boolean readOnly = false;
+
+  @Parameter(
+      names = {"-in", "--include"},
+      description =
+          "Only analyze the changed files matching the glob pattern (can be specified multiple times).")
+  List<String> includes = new ArrayList<>();
+
+  @Parameter(
+      names = {"-ex", "--exclude"},
+      description =
+          "Skip the changed files or dirs matching the glob pattern, e.g. build (can be specified multiple times).")
+  List<String> excludes = new ArrayList<>();
+
+  @Parameter(
+      names = {"-cs", "--cache-size"},
+      arity = 1,
+      description = "Limit the size of the cache of collected files under the output dir, in MB.")
+  Long cacheSize = ContentStore.DEFAULT_MAX_BYTES / 1024 / 1024;
+
+  @Parameter(
+      names = {"-rf", "--result-format"},
+      arity = 1,
+      description =
+          "Save the results in one json file per item (LEGACY) or all in one file (NDJSON).")
+  ResultFormat resultFormat = ResultFormat.LEGACY;
+
+  @Parameter(
+      names = {"-co", "--compact-output"},
+      arity = 1,
+      description = "Whether to save the json results without pretty printing, true/false.")
+  Boolean compactOutput = false;
+
+  @Parameter(
+      names = {"-ar", "--archive"},
+      arity = 1,
+      description =
+          "Whether to also save the results into one binary archive (results.bin), true/false.")
+  Boolean archive = false;
+
+  @Parameter(
+      names = {"-gt", "--graph-threads"},
+      arity = 1,
+      description = "Number of threads to parse the java files when building each entity graph.")
+  Integer graphThreads = 1;
+
+  @Parameter(
+      names = {"-si", "--symbol-index"},
+      arity = 1,
+      description =
+          "Whether to index the whole repo to resolve references to unchanged files, true/false.")
+  Boolean symbolIndex = false;
+
   public static void main(String[] args) {
     // config the logger
     //    PropertyConfigurator.configure("log4j.properties");
@@ -116,6 +185,15 @@ public class CLI {
       smartCommit.setWeightThreshold(weightThreshold);
       smartCommit.setMinSimilarity(minSimilarity);
       smartCommit.setMaxDistance(granularity); // use the distance on the tree to limit granularity
+      smartCommit.setUseJGit(useJGit);
+      smartCommit.setReadOnly(readOnly);
+      smartCommit.setPathPatterns(includes, excludes);
+      smartCommit.setCacheSizeLimit(cacheSize * 1024 * 1024);
+      smartCommit.setResultFormat(resultFormat);
+      smartCommit.setCompactResults(compactOutput);
+      smartCommit.setExportArchive(archive);
+      smartCommit.setGraphThreads(graphThreads);
+      smartCommit.setUseSymbolIndex(symbolIndex);
 
       Map<String, Group> groups;
       if (analyzeWorkingTree) {
@@ -3,28 +3,40 @@ package com.github.smartcommit.client;
 import com.github.smartcommit.core.GraphBuilder;
 import com.github.smartcommit.core.GroupGenerator;
 import com.github.smartcommit.core.RepoAnalyzer;
+import com.github.smartcommit.io.ContentStore;
 import com.github.smartcommit.io.DataCollector;
+import com.github.smartcommit.io.HunkStore;
+import com.github.smartcommit.io.ResultArchive;
+import com.github.smartcommit.io.ResultWriter;
+import com.github.smartcommit.io.SymbolIndex;
 import com.github.smartcommit.model.Action;
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
 import com.github.smartcommit.model.Group;
 import com.github.smartcommit.model.constant.ChangeType;
+import com.github.smartcommit.model.constant.FileStatus;
 import com.github.smartcommit.model.constant.GroupLabel;
+import com.github.smartcommit.model.constant.ResultFormat;
 import com.github.smartcommit.model.constant.Version;
-import com.github.smartcommit.model.graph.Edge;
-import com.github.smartcommit.model.graph.Node;
+import com.github.smartcommit.model.graph.CompactGraph;
+import com.github.smartcommit.util.AbstractGitService;
+import com.github.smartcommit.util.GitService;
 import com.github.smartcommit.util.GitServiceCGit;
+import com.github.smartcommit.util.GitServiceJGit;
+import com.github.smartcommit.util.PathPatterns;
 import com.github.smartcommit.util.Utils;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
-import org.jgrapht.Graph;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
@@ -37,10 +49,12 @@ public class SmartCommit {
   private final String repoPath;
   private final String tempDir;
   private Map<String, DiffHunk> id2DiffHunkMap;
+  // raw diffs of the working tree analyzed last time, for patch generation
+  private HunkStore hunkStore;
 
-  // saved for analysis
-  Graph<Node, Edge> baseGraph;
-  Graph<Node, Edge> currentGraph;
+  // saved for analysis, only the frozen copies are kept
+  CompactGraph baseGraph;
+  CompactGraph currentGraph;
 
   // options and default
   private boolean detectRefactorings = false;
@@ -48,6 +62,20 @@ public class SmartCommit {
   private double weightThreshold = 0D;
   private double minSimilarity = 0.8D;
   private int maxDistance = 0;
+  private boolean useJGit = false;
+  private boolean readOnly = false;
+  private PathPatterns pathPatterns = PathPatterns.ALL;
+  private long cacheSizeLimit = ContentStore.DEFAULT_MAX_BYTES;
+  private ResultFormat resultFormat = ResultFormat.LEGACY;
+  private boolean compactResults = false;
+  private boolean exportArchive = false;
+  private int graphThreads = 1;
+  private boolean useSymbolIndex = false;
+  // source roots of the stubs of the unchanged files in base and current versions
+  private Pair<String, String> stubDirs = null;
+  // fragments of the files in the last entity graphs, to only visit the changed files next time
+  private GraphBuilder.FragmentCache baseFragmentCache = null;
+  private GraphBuilder.FragmentCache currentFragmentCache = null;
 
   /**
    * Initial setup for analysis
@@ -87,6 +115,101 @@ public class SmartCommit {
     this.maxDistance = maxDistance;
   }
 
+  public void setUseJGit(boolean useJGit) {
+    this.useJGit = useJGit;
+  }
+
+  /**
+   * Analyze without touching the index of the repo (jGit never does), so that several sessions can
+   * run on one repo at the same time
+   *
+   * @param readOnly
+   */
+  public void setReadOnly(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Only analyze the changed files in the working tree matching the glob patterns
+   *
+   * @param includes keep the files matching any of them, all files if empty
+   * @param excludes skip the files or dirs matching any of them
+   */
+  public void setPathPatterns(List<String> includes, List<String> excludes) {
+    this.pathPatterns = new PathPatterns(includes, excludes);
+  }
+
+  /**
+   * Limit the size of the content store under the temp dir, least recently used files are evicted
+   *
+   * @param cacheSizeLimit in bytes
+   */
+  public void setCacheSizeLimit(long cacheSizeLimit) {
+    this.cacheSizeLimit = cacheSizeLimit;
+  }
+
+  /**
+   * Save the results in one json file per item (legacy), or all in one NDJSON file
+   *
+   * @param resultFormat
+   */
+  public void setResultFormat(ResultFormat resultFormat) {
+    this.resultFormat = resultFormat;
+  }
+
+  /**
+   * Save the json results without pretty printing
+   *
+   * @param compactResults
+   */
+  public void setCompactResults(boolean compactResults) {
+    this.compactResults = compactResults;
+  }
+
+  /**
+   * Also save the groups and diff hunks into a binary archive, which clients can memory-map
+   *
+   * @param exportArchive
+   */
+  public void setExportArchive(boolean exportArchive) {
+    this.exportArchive = exportArchive;
+  }
+
+  /**
+   * Number of threads to build each entity graph, which visit the java files in partitions
+   *
+   * @param graphThreads
+   */
+  public void setGraphThreads(int graphThreads) {
+    this.graphThreads = graphThreads;
+  }
+
+  /**
+   * Index the declarations of the whole repository, to resolve the references from the diff files
+   * to the unchanged files
+   *
+   * @param useSymbolIndex
+   */
+  public void setUseSymbolIndex(boolean useSymbolIndex) {
+    this.useSymbolIndex = useSymbolIndex;
+  }
+
+  /**
+   * Keep the entity fragments of each file between the analyses, so that the entity graphs are
+   * rebuilt by visiting only the files that changed since the last analysis
+   *
+   * @param incrementalGraphs
+   */
+  public void setIncrementalGraphs(boolean incrementalGraphs) {
+    if (incrementalGraphs) {
+      baseFragmentCache = new GraphBuilder.FragmentCache();
+      currentFragmentCache = new GraphBuilder.FragmentCache();
+    } else {
+      baseFragmentCache = null;
+      currentFragmentCache = null;
+    }
+  }
+
   public void setId2DiffHunkMap(Map<String, DiffHunk> id2DiffHunkMap) {
     this.id2DiffHunkMap = id2DiffHunkMap;
   }
@@ -96,11 +219,37 @@ public class SmartCommit {
   }
 
   /**
-   * Clear the temp dir and create the logs dir
+   * Create the git service to collect changes, jGit (in-process) or CGit (forking git)
+   *
+   * @return
+   */
+  private GitService createGitService() {
+    AbstractGitService gitService = useJGit ? new GitServiceJGit() : new GitServiceCGit(readOnly);
+    gitService.setPathPatterns(pathPatterns);
+    return gitService;
+  }
+
+  /**
+   * Clear the temp dir and create the logs dir, except the content store and the collected files
+   * (which are reconciled with the store instead of being rewritten)
    *
    */
   private void prepareTempDir(String dir) {
-    Utils.clearDir(dir);
+    File[] children = new File(dir).listFiles();
+    if (children != null) {
+      for (File child : children) {
+        String name = child.getName();
+        if (name.equals(ContentStore.CACHE_DIR)
+            || name.equals(Version.BASE.asString())
+            || name.equals(Version.CURRENT.asString())) {
+          continue;
+        }
+        if (child.isDirectory()) {
+          Utils.clearDir(child.getAbsolutePath());
+        }
+        child.delete();
+      }
+    }
     System.setProperty("logs.dir", dir);
     //    PropertyConfigurator.configure("log4j.properties");
   }
@@ -113,8 +262,23 @@ public class SmartCommit {
   public Map<String, Group> analyzeWorkingTree() {
     prepareTempDir(tempDir);
     // 1. analyze the repo
-    RepoAnalyzer repoAnalyzer = new RepoAnalyzer(repoID, repoName, repoPath);
-    List<DiffFile> diffFiles = repoAnalyzer.analyzeWorkingTree();
+    // the contents of diff files are loaded through the git service, keep it open until finished
+    try (GitService gitService = createGitService()) {
+      RepoAnalyzer repoAnalyzer = new RepoAnalyzer(repoID, repoName, repoPath, gitService);
+      List<DiffFile> diffFiles = repoAnalyzer.analyzeWorkingTree();
+      return analyzeWorkingTree(repoAnalyzer, diffFiles);
+    }
+  }
+
+  /**
+   * Group the changes in the working tree, which have been extracted by the repo analyzer
+   *
+   * @param repoAnalyzer
+   * @param diffFiles
+   * @return
+   */
+  private Map<String, Group> analyzeWorkingTree(
+      RepoAnalyzer repoAnalyzer, List<DiffFile> diffFiles) {
     List<DiffHunk> allDiffHunks = repoAnalyzer.getDiffHunks();
     if (diffFiles.isEmpty()) {
       logger.info("Nothing to commit, working tree clean.");
@@ -164,9 +328,12 @@ public class SmartCommit {
 
     // 2. collect the data into temp dir
     // (1) diff files (2) file id mapping (3) diff hunks
-    DataCollector dataCollector = new DataCollector(repoName, tempDir);
+    DataCollector dataCollector =
+        new DataCollector(repoName, tempDir, new ContentStore(tempDir, cacheSizeLimit));
     // dirs that keeps the source code of diff files
     Pair<String, String> srcDirs = dataCollector.collectDiffFilesWorking(diffFiles);
+    // the current version of the unchanged files is the same as in the git index
+    indexSymbols("HEAD", null, diffFiles);
 
     Map<String, Group> results = new HashMap<>();
     if (onlyEncodingChange) {
@@ -179,18 +346,26 @@ public class SmartCommit {
       results = analyze(diffFiles, allDiffHunks, srcDirs);
     }
 
-    dataCollector.collectDiffHunks(diffFiles, tempDir);
+    hunkStore = new HunkStore();
+    diffFiles.forEach(hunkStore::add);
+
+    try (ResultWriter resultWriter = new ResultWriter(tempDir, resultFormat, compactResults)) {
+      dataCollector.collectDiffHunks(diffFiles, resultWriter);
 
-    // generate commit message
-    if (results != null) {
-      for (Map.Entry<String, Group> entry : results.entrySet()) {
-        Group group = entry.getValue();
-        // generate recommended commit messages
-        group.setRecommendedCommitMsgs(generateCommitMsg(group));
+      // generate commit message
+      if (results != null) {
+        for (Map.Entry<String, Group> entry : results.entrySet()) {
+          Group group = entry.getValue();
+          // generate recommended commit messages
+          group.setRecommendedCommitMsgs(generateCommitMsg(group));
+        }
+        // save the results on disk
+        exportGroupResults(results, resultWriter);
+        exportGroupDetails(results, resultWriter, ResultWriter.DETAILS);
+        if (exportArchive) {
+          exportResultArchive(results, tempDir);
+        }
       }
-      // save the results on disk
-      exportGroupResults(results, tempDir);
-      exportGroupDetails(results, tempDir + File.separator + "details");
     }
 
     return results;
@@ -203,12 +378,92 @@ public class SmartCommit {
    * @return suggested groups <id:group>
    */
   public Map<String, Group> analyzeCommit(String commitID) {
+    // 1. analyze the repo
+    // the contents of diff files are loaded through the git service, keep it open until finished
+    try (GitService gitService = createGitService()) {
+      RepoAnalyzer repoAnalyzer = new RepoAnalyzer(repoID, repoName, repoPath, gitService);
+      repoAnalyzer.analyzeCommit(commitID);
+      return analyzeCommit(commitID, repoAnalyzer);
+    }
+  }
+
+  /**
+   * Analyze the commits in a range one by one, walking the history once with one jGit repository
+   * and object reader. The changes of the next commit are extracted in the background while the
+   * current one is being grouped.
+   *
+   * @param fromCommit the start commit (excluded), null to start from the root commit
+   * @param toCommit the end commit (included)
+   * @return suggested groups of each commit, from the oldest to the newest <commit id:<id:group>>
+   */
+  public Map<String, Map<String, Group>> analyzeCommitRange(String fromCommit, String toCommit) {
+    Map<String, Map<String, Group>> results = new LinkedHashMap<>();
+    // jGit is not thread-safe, so all git operations are done in one single background thread
+    ExecutorService extractor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "commit-extractor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    GitServiceJGit gitService = new GitServiceJGit();
+    try {
+      List<String> commitIDs =
+          extractor.submit(() -> gitService.getCommitsInRange(repoPath, fromCommit, toCommit)).get();
+      Future<RepoAnalyzer> next =
+          commitIDs.isEmpty() ? null : extractor.submit(extractCommit(gitService, commitIDs.get(0)));
+      for (int i = 0; i < commitIDs.size(); ++i) {
+        String commitID = commitIDs.get(i);
+        Future<RepoAnalyzer> current = next;
+        // prefetch the next commit while grouping the current one
+        next =
+            i + 1 < commitIDs.size()
+                ? extractor.submit(extractCommit(gitService, commitIDs.get(i + 1)))
+                : null;
+        try {
+          results.put(commitID, analyzeCommit(commitID, current.get()));
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          logger.error("Failed to analyze commit: " + commitID);
+          e.printStackTrace();
+          results.put(commitID, new HashMap<>());
+        }
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      e.printStackTrace();
+    } finally {
+      extractor.submit(gitService::close);
+      extractor.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Create the task to extract the changes of one commit
+   *
+   * @return
+   */
+  private Callable<RepoAnalyzer> extractCommit(GitService gitService, String commitID) {
+    return () -> {
+      RepoAnalyzer repoAnalyzer = new RepoAnalyzer(repoID, repoName, repoPath, gitService);
+      repoAnalyzer.analyzeCommit(commitID);
+      return repoAnalyzer;
+    };
+  }
+
+  /**
+   * Group the changes of one commit, which have been extracted by the repo analyzer
+   *
+   * @param commitID
+   * @param repoAnalyzer
+   * @return
+   */
+  private Map<String, Group> analyzeCommit(String commitID, RepoAnalyzer repoAnalyzer) {
     String resultsDir = tempDir + File.separator + commitID;
     prepareTempDir(resultsDir);
 
-    // 1. analyze the repo
-    RepoAnalyzer repoAnalyzer = new RepoAnalyzer(repoID, repoName, repoPath);
-    List<DiffFile> diffFiles = repoAnalyzer.analyzeCommit(commitID);
+    List<DiffFile> diffFiles = repoAnalyzer.getDiffFiles();
     List<DiffHunk> allDiffHunks = repoAnalyzer.getDiffHunks();
 
     if (diffFiles.isEmpty() || allDiffHunks.isEmpty()) {
@@ -219,20 +474,58 @@ public class SmartCommit {
     this.id2DiffHunkMap = repoAnalyzer.getIdToDiffHunkMap();
 
     // 2. collect the data into temp dir
-    DataCollector dataCollector = new DataCollector(repoName, tempDir);
+    DataCollector dataCollector =
+        new DataCollector(repoName, tempDir, new ContentStore(tempDir, cacheSizeLimit));
     // dirs that keeps the source code of diff files
     Pair<String, String> srcDirs = dataCollector.collectDiffFilesAtCommit(commitID, diffFiles);
+    indexSymbols(commitID + "^", commitID, diffFiles);
 
     Map<String, Group> results = analyze(diffFiles, allDiffHunks, srcDirs);
 
-    dataCollector.collectDiffHunks(diffFiles, resultsDir);
-
-    exportGroupResults(results, resultsDir);
-    exportGroupDetails(results, resultsDir + File.separator + "details");
+    try (ResultWriter resultWriter = new ResultWriter(resultsDir, resultFormat, compactResults)) {
+      dataCollector.collectDiffHunks(diffFiles, resultWriter);
+      exportGroupResults(results, resultWriter);
+      exportGroupDetails(results, resultWriter, ResultWriter.DETAILS);
+    }
+    if (exportArchive) {
+      exportResultArchive(results, resultsDir);
+    }
 
     return results;
   }
 
+  /**
+   * Update the symbol indexes of base and current versions, and write the stubs of the unchanged
+   * files
+   *
+   * @param baseRevision
+   * @param currentRevision null for the git index
+   * @param diffFiles
+   */
+  private void indexSymbols(String baseRevision, String currentRevision, List<DiffFile> diffFiles) {
+    stubDirs = null;
+    if (!useSymbolIndex) {
+      return;
+    }
+    ContentStore contentStore = new ContentStore(tempDir, cacheSizeLimit);
+    Set<String> basePaths = new HashSet<>();
+    Set<String> currentPaths = new HashSet<>();
+    for (DiffFile diffFile : diffFiles) {
+      basePaths.add(diffFile.getBaseRelativePath());
+      currentPaths.add(diffFile.getCurrentRelativePath());
+      if (diffFile.getStatus() == FileStatus.DELETED) {
+        // gone from the current version, though still in the index if deleted in the working tree
+        currentPaths.add(diffFile.getBaseRelativePath());
+      }
+    }
+    SymbolIndex symbolIndex = new SymbolIndex(contentStore);
+    symbolIndex.update(repoPath, baseRevision, Version.BASE, basePaths);
+    symbolIndex.update(repoPath, currentRevision, Version.CURRENT, currentPaths);
+    contentStore.evict();
+    stubDirs =
+        Pair.of(symbolIndex.getStubDir(Version.BASE), symbolIndex.getStubDir(Version.CURRENT));
+  }
+
   /**
    * Analyze the changes collected
    *
@@ -266,10 +559,21 @@ public class SmartCommit {
   private void buildRefGraphs(List<DiffFile> diffFiles, Pair<String, String> srcDirs)
       throws ExecutionException, InterruptedException, TimeoutException {
     ExecutorService executorService = Executors.newFixedThreadPool(2);
-    Future<Graph<Node, Edge>> baseBuilder =
-        executorService.submit(new GraphBuilder(srcDirs.getLeft(), diffFiles));
-    Future<Graph<Node, Edge>> currentBuilder =
-        executorService.submit(new GraphBuilder(srcDirs.getRight(), diffFiles));
+    GraphBuilder baseGraphBuilder = new GraphBuilder(srcDirs.getLeft(), diffFiles);
+    GraphBuilder currentGraphBuilder = new GraphBuilder(srcDirs.getRight(), diffFiles);
+    baseGraphBuilder.setParallelism(graphThreads);
+    currentGraphBuilder.setParallelism(graphThreads);
+    if (stubDirs != null) {
+      baseGraphBuilder.setStubDir(stubDirs.getLeft());
+      currentGraphBuilder.setStubDir(stubDirs.getRight());
+    }
+    baseGraphBuilder.setFragmentCache(baseFragmentCache);
+    currentGraphBuilder.setFragmentCache(currentFragmentCache);
+    // freeze each graph once built, so that the mutable one can be collected right away
+    Future<CompactGraph> baseBuilder =
+        executorService.submit(() -> CompactGraph.freeze(baseGraphBuilder.call()));
+    Future<CompactGraph> currentBuilder =
+        executorService.submit(() -> CompactGraph.freeze(currentGraphBuilder.call()));
     baseGraph = baseBuilder.get(60 * 10, TimeUnit.SECONDS);
     currentGraph = currentBuilder.get(60 * 10, TimeUnit.SECONDS);
     //            String baseDot = GraphExporter.exportAsDotWithType(baseGraph);
@@ -340,20 +644,20 @@ public class SmartCommit {
    * @param outputDir output directory path
    */
   public void exportGroupResults(Map<String, Group> generatedGroups, String outputDir) {
-    Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    try (ResultWriter resultWriter = new ResultWriter(outputDir)) {
+      exportGroupResults(generatedGroups, resultWriter);
+    }
+  }
+
+  /**
+   * Save meta information of each group with the result writer
+   *
+   * @param generatedGroups generated groups <id:group>
+   * @param resultWriter
+   */
+  public void exportGroupResults(Map<String, Group> generatedGroups, ResultWriter resultWriter) {
     for (Map.Entry<String, Group> entry : generatedGroups.entrySet()) {
-      Utils.writeStringToFile(
-          gson.toJson(entry.getValue()),
-          outputDir
-              + File.separator
-              + "generated_groups"
-              + File.separator
-              + entry.getKey()
-              + ".json");
-      // any manual adjustments will be made on this copy
-      Utils.writeStringToFile(
-          gson.toJson(entry.getValue()),
-          outputDir + File.separator + "manual_groups" + File.separator + entry.getKey() + ".json");
+      resultWriter.writeGroup(entry.getKey(), entry.getValue());
     }
   }
 
@@ -364,10 +668,24 @@ public class SmartCommit {
    * @param outputDir output directory path
    */
   public void exportGroupDetails(Map<String, Group> results, String outputDir) {
-    Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    File dir = new File(outputDir);
+    try (ResultWriter resultWriter = new ResultWriter(dir.getParent())) {
+      exportGroupDetails(results, resultWriter, dir.getName());
+    }
+  }
+
+  /**
+   * Generate and save the detailed content of diff hunks for each group with the result writer
+   *
+   * @param results generated groups <id:group>
+   * @param resultWriter
+   * @param section the dir (or the record type) to save the details
+   */
+  public void exportGroupDetails(
+      Map<String, Group> results, ResultWriter resultWriter, String section) {
+    Gson gson = resultWriter.getGson();
     List<String> groupedDiffHunks = new ArrayList<>();
     for (Map.Entry<String, Group> entry : results.entrySet()) {
-      String path = outputDir + File.separator + entry.getKey() + ".json";
       StringBuilder builder = new StringBuilder();
       builder.append(entry.getValue().getIntentLabel()).append("\n");
       builder.append(entry.getValue().getCommitMsg()).append("\n");
@@ -395,7 +713,7 @@ public class SmartCommit {
         builder.append(gson.toJson(diffHunk.getBaseHunk())).append("\n");
         builder.append(gson.toJson(diffHunk.getCurrentHunk())).append("\n");
       }
-      Utils.writeStringToFile(builder.toString(), path);
+      resultWriter.writeGroupDetails(section, entry.getKey(), builder.toString());
     }
 
     if (groupedDiffHunks.size() != id2DiffHunkMap.keySet().size()) {
@@ -407,6 +725,21 @@ public class SmartCommit {
     }
   }
 
+  /**
+   * Save the groups and their diff hunks into one binary archive file
+   *
+   * @param results generated groups <id:group>
+   * @param outputDir output directory path
+   */
+  public void exportResultArchive(Map<String, Group> results, String outputDir) {
+    try {
+      ResultArchive.write(
+          new File(outputDir, ResultArchive.FILE_NAME), results, id2DiffHunkMap);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
   /**
    * Read selected group json file, generate patches that can be applied incrementally for
    * inter-versions
@@ -418,15 +751,39 @@ public class SmartCommit {
     String patchesDir = tempDir + File.separator + "patches";
     Utils.clearDir(patchesDir);
 
-    List<String> groupFilePaths = Utils.listAllJsonFilePaths(manualGroupsDir);
     Gson gson = new Gson();
-    for (String path : groupFilePaths) {
+    List<Group> groups = new ArrayList<>();
+    // raw diffs are kept in memory after analysis, otherwise each diff file is indexed once
+    HunkStore store = hunkStore != null ? hunkStore : new HunkStore();
+    File ndjsonFile = new File(tempDir, ResultWriter.NDJSON_FILE);
+    if (resultFormat.equals(ResultFormat.NDJSON) && ndjsonFile.exists()) {
+      try {
+        ResultWriter.readRecords(
+            ndjsonFile,
+            (type, id, data) -> {
+              if (type.equals(ResultWriter.GENERATED_GROUPS)) {
+                groups.add(gson.fromJson(data, Group.class));
+              } else if (type.equals(ResultWriter.DIFFS) && !store.containsFile(id)) {
+                store.add(gson.fromJson(data, DiffFile.class));
+              }
+            });
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    // manual adjustments take precedence over the generated groups
+    if (new File(manualGroupsDir).exists()) {
+      groups.clear();
+      for (String path : Utils.listAllJsonFilePaths(manualGroupsDir)) {
+        // read and parse group json file
+        groups.add(gson.fromJson(new JsonReader(new FileReader(path)), Group.class));
+      }
+    }
+
+    for (Group group : groups) {
       StringBuilder builder = new StringBuilder();
-      // read and parse group json file
-      JsonReader reader = new JsonReader(new FileReader(path));
-      Group group = gson.fromJson(reader, Group.class);
       // put diff hunks within the same file together
-      Map<String, List<String>> fileID2hunkIDsMap = new HashMap<>();
+      Map<String, List<String>> fileID2hunkIDsMap = new LinkedHashMap<>();
       for (String id : group.getDiffHunkIDs()) {
         Pair<String, String> idPair = Utils.parseUUIDs(id);
         String fileID = idPair.getLeft();
@@ -440,22 +797,25 @@ public class SmartCommit {
         }
       }
 
-      // read and parse the diff json by file id
       for (Map.Entry<String, List<String>> entry : fileID2hunkIDsMap.entrySet()) {
-        String fileDiffPath = fileDiffsDir + File.separator + entry.getKey() + ".json";
-        reader = new JsonReader(new FileReader(fileDiffPath));
-        DiffFile diffFile = gson.fromJson(reader, DiffFile.class);
+        if (!store.containsFile(entry.getKey())) {
+          // index the raw diffs in the diff json by file id
+          String fileDiffPath = fileDiffsDir + File.separator + entry.getKey() + ".json";
+          try (JsonReader reader =
+              new JsonReader(
+                  Files.newBufferedReader(Paths.get(fileDiffPath), StandardCharsets.UTF_8))) {
+            store.add(reader);
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
         // get headers and raw diffs
-        builder
-            .append(String.join(System.lineSeparator(), diffFile.getRawHeaders()))
-            .append(System.lineSeparator());
+        if (!store.appendHeaders(entry.getKey(), builder)) {
+          logger.error("Null diffFile with id: " + entry.getKey());
+          continue;
+        }
         for (String diffHunkID : entry.getValue()) {
-          DiffHunk diffHunk = diffFile.getDiffHunksMap().getOrDefault(diffHunkID, null);
-          if (diffHunk != null) {
-            builder
-                .append(String.join(System.lineSeparator(), diffHunk.getRawDiffs()))
-                .append(System.lineSeparator());
-          } else {
+          if (!store.appendRawDiffs(diffHunkID, builder)) {
             logger.error("Null diffHunk with id: " + diffHunkID);
           }
         }
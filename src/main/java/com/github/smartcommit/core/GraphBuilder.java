@@ -2,9 +2,13 @@ package com.github.smartcommit.core;
 
 import com.github.smartcommit.core.visitor.MemberVisitor;
 import com.github.smartcommit.core.visitor.MyNodeFinder;
+import com.github.smartcommit.io.ContentStore;
+import com.github.smartcommit.io.SymbolIndex;
+import com.github.smartcommit.model.CoveredNodes;
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
 import com.github.smartcommit.model.EntityPool;
+import com.github.smartcommit.model.SourceTree;
 import com.github.smartcommit.model.constant.Version;
 import com.github.smartcommit.model.entity.DeclarationInfo;
 import com.github.smartcommit.model.entity.FieldInfo;
@@ -12,12 +16,12 @@ import com.github.smartcommit.model.entity.HunkInfo;
 import com.github.smartcommit.model.entity.MethodInfo;
 import com.github.smartcommit.model.graph.Edge;
 import com.github.smartcommit.model.graph.EdgeType;
+import com.github.smartcommit.model.graph.IdAllocator;
 import com.github.smartcommit.model.graph.Node;
+import com.github.smartcommit.model.graph.NodeIndex;
 import com.github.smartcommit.model.graph.NodeType;
 import com.github.smartcommit.util.JDTService;
 import com.github.smartcommit.util.NameResolver;
-import com.github.smartcommit.util.Utils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 import org.eclipse.jdt.core.JavaCore;
@@ -26,8 +30,17 @@ import org.jgrapht.Graph;
 import org.jgrapht.graph.builder.GraphTypeBuilder;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /** Build the semantic context graph of DiffHunks in Java files. */
@@ -36,13 +49,26 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
   private static final Logger logger = Logger.getLogger(GraphBuilder.class);
   private static final String JRE_PATH =
       System.getProperty("java.home") + File.separator + "lib/rt.jar";
+  private static final Pattern PACKAGE_PATTERN =
+      Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
   //  private static final String[] CLASS_PATH =
   // System.getProperty("java.class.path").split(Pattern.quote(File.pathSeparator));
 
   private String srcDir;
   private List<DiffFile> diffFiles;
+  // the java files of the version in srcDir
+  private SourceTree sourceTree;
   private EntityPool entityPool;
   private Graph<Node, Edge> graph;
+  // index of the nodes in the graph for entity lookups
+  private NodeIndex nodeIndex;
+  private IdAllocator idAllocator;
+  // number of threads to visit the compilation units, 1 to visit them in one pass
+  private int parallelism = 1;
+  // source root of the stubs of the unchanged files, null to only resolve within the diff files
+  private String stubDir = null;
+  // fragments of the files from the last build, null to visit all files every time
+  private FragmentCache fragmentCache = null;
 
   public GraphBuilder(String srcDir) {
     this.srcDir = srcDir;
@@ -52,8 +78,53 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
   public GraphBuilder(String srcDir, List<DiffFile> diffFiles) {
     this.srcDir = srcDir;
     this.diffFiles = diffFiles;
+    this.sourceTree = new SourceTree(getVersion(srcDir), diffFiles);
     this.entityPool = new EntityPool(srcDir);
     this.graph = initGraph();
+    this.nodeIndex = new NodeIndex();
+    this.idAllocator = new IdAllocator();
+  }
+
+  /**
+   * Partition the java files across the threads, each parses its own part and visits each file
+   * into a fragment, which are merged in the order of the paths
+   *
+   * @param parallelism
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Resolve the references to the unchanged files through their stubs, see {@link
+   * com.github.smartcommit.io.SymbolIndex}
+   *
+   * @param stubDir
+   */
+  public void setStubDir(String stubDir) {
+    this.stubDir = stubDir;
+  }
+
+  /**
+   * Reuse the fragments from the last build with the cache, as long as none of the java files (and
+   * the stubs) changed since then, since the bindings in each fragment may depend on any of them
+   *
+   * @param fragmentCache
+   */
+  public void setFragmentCache(FragmentCache fragmentCache) {
+    this.fragmentCache = fragmentCache;
+  }
+
+  /**
+   * Get the version of the files collected in the dir (named after the version)
+   *
+   * @param srcDir
+   * @return
+   */
+  private static Version getVersion(String srcDir) {
+    return new File(srcDir).getName().equals(Version.CURRENT.asString())
+        ? Version.CURRENT
+        : Version.BASE;
   }
 
   /**
@@ -77,13 +148,20 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
    */
   @Override
   public Graph<Node, Edge> call() {
-    // get all java files by extension in the source directory
-    Collection<File> javaFiles = FileUtils.listFiles(new File(srcDir), new String[] {"java"}, true);
+    // the java files are known from the diff files, so the source directory is not listed
+    // absolute path : relative path
+    Map<String, String> absoluteToRelativePath = new HashMap<>();
     Set<String> srcPathSet = new HashSet<>();
     Set<String> srcFolderSet = new HashSet<>();
-    for (File javaFile : javaFiles) {
+    for (String relativePath : sourceTree.getPaths()) {
+      File javaFile = new File(srcDir, relativePath);
+      if (!javaFile.isFile()) {
+        // failed to collect
+        continue;
+      }
       String srcPath = javaFile.getAbsolutePath();
       String srcFolderPath = javaFile.getParentFile().getAbsolutePath();
+      absoluteToRelativePath.put(srcPath, relativePath);
       srcPathSet.add(srcPath);
       srcFolderSet.add(srcFolderPath);
     }
@@ -93,69 +171,25 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     NameResolver.setSrcPathSet(srcPathSet);
     String[] srcFolderPaths = new String[srcFolderSet.size()];
     srcFolderSet.toArray(srcFolderPaths);
-    String[] encodings = new String[srcFolderPaths.length];
-    Arrays.fill(encodings, "UTF-8");
-
-    ASTParser parser = ASTParser.newParser(8);
-    Map<String, String> options = JavaCore.getOptions();
-    options.put(JavaCore.COMPILER_COMPLIANCE, "8");
-    options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_8);
-    options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_8);
-    options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
-    JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
-    parser.setCompilerOptions(options);
-
-    //        parser.setProject(WorkspaceUtilities.javaProject);
-    parser.setKind(ASTParser.K_COMPILATION_UNIT);
-    parser.setEnvironment(new String[] {JRE_PATH}, srcFolderPaths, encodings, true);
-    parser.setResolveBindings(true);
-    parser.setBindingsRecovery(true);
 
     // Vertex: create nodes and nesting edges while visiting the ASTs
-    encodings = new String[srcPaths.length];
-    Arrays.fill(encodings, "UTF-8");
-    parser.createASTs(
-        srcPaths,
-        encodings,
-        new String[] {},
-        new FileASTRequestor() {
-          @Override
-          public void acceptAST(String sourceFilePath, CompilationUnit cu) {
-            try {
-              // get the corresponding diff file
-              Version version = Version.BASE;
-              if (sourceFilePath.contains(
-                  File.separator + Version.CURRENT.asString() + File.separator)) {
-                version = Version.CURRENT;
-              }
-              Optional<DiffFile> diffFileOpt = getDiffFileByPath(sourceFilePath, version);
-              if (diffFileOpt.isPresent()) {
-                DiffFile diffFile = diffFileOpt.get();
-                Map<String, Pair<Integer, Integer>> hunksPosition =
-                    computeHunksPosition(diffFile, cu, version);
-
-                // collect type/field/method infos and create nodes
-                JDTService jdtService =
-                    new JDTService(FileUtils.readFileToString(new File(sourceFilePath)));
-                cu.accept(new MemberVisitor(diffFile.getIndex(), entityPool, graph, jdtService));
-
-                // collect hunk infos and create nodes
-                createHunkInfos(version, diffFile.getIndex(), hunksPosition, cu, jdtService);
-              }
-            } catch (Exception e) {
-              e.printStackTrace();
-            }
-          }
-        },
-        null);
+    if (parallelism > 1 || fragmentCache != null) {
+      visitFileByFile(srcPaths, srcFolderPaths, absoluteToRelativePath);
+    } else {
+      Fragment fragment = new Fragment(entityPool, graph, nodeIndex, idAllocator);
+      visitFiles(srcPaths, srcFolderPaths, absoluteToRelativePath, srcPath -> fragment);
+    }
 
     // Edge: create inter-entity edges with the EntityPool and EntityInfo
     Map<String, MethodInfo> methodDecMap = entityPool.methodInfoMap;
     Map<String, FieldInfo> fieldDecMap = entityPool.fieldInfoMap;
     Map<String, HunkInfo> hunkMap = entityPool.hunkInfoMap;
-    Map<IMethodBinding, MethodInfo> methodBindingMap = new HashMap<>();
+    // binding key : method info, since the bindings from different parsers are not identical
+    Map<String, MethodInfo> methodBindingMap = new HashMap<>();
     for (MethodInfo methodInfo : entityPool.methodInfoMap.values()) {
-      methodBindingMap.put(methodInfo.methodBinding, methodInfo);
+      if (methodInfo.bindingKey != null) {
+        methodBindingMap.put(methodInfo.bindingKey, methodInfo);
+      }
     }
 
     // 0. edges from type/interface/enum/annotation declaration
@@ -166,7 +200,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     topDecMap.putAll(entityPool.annotationInfoMap);
     for (DeclarationInfo info : topDecMap.values()) {
       // method invocation
-      for (IMethodBinding methodCall : info.methodCalls) {
+      for (String methodCall : info.methodCalls) {
         MethodInfo targetMethodInfo = methodBindingMap.get(methodCall);
         if (targetMethodInfo != null) {
           createEdge(info.node, targetMethodInfo.node, EdgeType.CALL);
@@ -192,7 +226,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     for (MethodInfo methodInfo : methodDecMap.values()) {
       Node methodDeclNode = methodInfo.node;
       // method invocation
-      for (IMethodBinding methodCall : methodInfo.methodCalls) {
+      for (String methodCall : methodInfo.methodCalls) {
         MethodInfo targetMethodInfo = methodBindingMap.get(methodCall);
         if (targetMethodInfo != null) {
           createEdge(methodDeclNode, targetMethodInfo.node, EdgeType.CALL);
@@ -244,7 +278,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
       }
 
       // method invocation
-      for (IMethodBinding methodCall : fieldInfo.methodCalls) {
+      for (String methodCall : fieldInfo.methodCalls) {
         MethodInfo targetMethodInfo = methodBindingMap.get(methodCall);
         if (targetMethodInfo != null) {
           createEdge(fieldDeclNode, targetMethodInfo.node, EdgeType.CALL);
@@ -272,7 +306,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     for (HunkInfo hunkInfo : hunkMap.values()) {
       Node hunkNode = hunkInfo.node;
       // method invocation
-      for (IMethodBinding methodCall : hunkInfo.methodCalls) {
+      for (String methodCall : hunkInfo.methodCalls) {
         MethodInfo targetMethodInfo = methodBindingMap.get(methodCall);
         if (targetMethodInfo != null) {
           createEdge(hunkNode, targetMethodInfo.node, EdgeType.CALL);
@@ -299,6 +333,310 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     return graph;
   }
 
+  /**
+   * Parse the java files with one parser, and visit each compilation unit into its fragment
+   *
+   * @param srcPaths
+   * @param srcFolderPaths
+   * @param absoluteToRelativePath
+   * @param fragmentOf absolute path : fragment to visit into
+   */
+  private void visitFiles(
+      String[] srcPaths,
+      String[] srcFolderPaths,
+      Map<String, String> absoluteToRelativePath,
+      Function<String, Fragment> fragmentOf) {
+    ASTParser parser = createParser(srcFolderPaths);
+    String[] encodings = new String[srcPaths.length];
+    Arrays.fill(encodings, "UTF-8");
+    parser.createASTs(
+        srcPaths,
+        encodings,
+        new String[] {},
+        new FileASTRequestor() {
+          @Override
+          public void acceptAST(String sourceFilePath, CompilationUnit cu) {
+            try {
+              // get the corresponding diff file
+              Version version = sourceTree.getVersion();
+              String relativePath = absoluteToRelativePath.get(sourceFilePath);
+              DiffFile diffFile = sourceTree.getDiffFile(relativePath);
+              if (diffFile != null) {
+                Fragment part = fragmentOf.apply(sourceFilePath);
+                Map<String, Pair<Integer, Integer>> hunksPosition =
+                    computeHunksPosition(diffFile, cu, version);
+
+                // collect type/field/method infos and create nodes
+                // the same content as the collected file, so it is not read back
+                JDTService jdtService = new JDTService(sourceTree.getContent(relativePath));
+                cu.accept(
+                    new MemberVisitor(
+                        diffFile.getIndex(),
+                        part.entityPool,
+                        part.graph,
+                        part.nodeIndex,
+                        part.idAllocator,
+                        jdtService));
+
+                // collect hunk infos and create nodes
+                createHunkInfos(part, version, diffFile.getIndex(), hunksPosition, cu, jdtService);
+              }
+            } catch (Exception e) {
+              e.printStackTrace();
+            }
+          }
+        },
+        null);
+  }
+
+  /**
+   * Visit each java file into a fragment of its own (or reuse the cached one if the file, its diff
+   * and the files it is resolved against stay the same), then merge the fragments into the entity
+   * pool and the graph
+   *
+   * @param srcPaths
+   * @param srcFolderPaths
+   * @param absoluteToRelativePath
+   */
+  private void visitFileByFile(
+      String[] srcPaths, String[] srcFolderPaths, Map<String, String> absoluteToRelativePath) {
+    // sort the paths so that the partitions and the merge do not depend on the hash order
+    String[] sortedPaths = srcPaths.clone();
+    Arrays.sort(sortedPaths);
+    String buildKey =
+        fragmentCache == null ? "" : getBuildKey(sortedPaths, absoluteToRelativePath);
+    // absolute path : cache key
+    Map<String, String> cacheKeys = new HashMap<>();
+    // absolute path : fragment of the file
+    Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+    List<String> pathsToVisit = new ArrayList<>();
+    for (String srcPath : sortedPaths) {
+      String cacheKey = getCacheKey(absoluteToRelativePath.get(srcPath)) + ":" + buildKey;
+      cacheKeys.put(srcPath, cacheKey);
+      Fragment cached = fragmentCache == null ? null : fragmentCache.get(cacheKey);
+      if (cached != null) {
+        // the diff hunks are created again for each analysis
+        cached.entityPool.hunkInfoMap.values().forEach(this::saveCoveredNodes);
+        fragments.put(srcPath, cached);
+      } else {
+        pathsToVisit.add(srcPath);
+      }
+    }
+
+    // types in the files not compiled together are looked up in the source roots
+    Set<String> srcFolderSet = new LinkedHashSet<>(Arrays.asList(srcFolderPaths));
+    for (String srcPath : sortedPaths) {
+      srcFolderSet.add(getSourceRoot(srcPath, absoluteToRelativePath.get(srcPath)));
+    }
+    String[] lookupPaths = srcFolderSet.toArray(new String[0]);
+    // the ids are temporary until merged
+    IdAllocator fragmentIdAllocator = new IdAllocator();
+    Function<String, Fragment> fragmentOf =
+        srcPath ->
+            fragments.computeIfAbsent(
+                srcPath,
+                path ->
+                    new Fragment(
+                        new EntityPool(srcDir), initGraph(), new NodeIndex(), fragmentIdAllocator));
+    if (parallelism > 1 && pathsToVisit.size() > 1) {
+      visitInParallel(pathsToVisit, lookupPaths, absoluteToRelativePath, fragmentOf);
+    } else if (!pathsToVisit.isEmpty()) {
+      visitFiles(
+          pathsToVisit.toArray(new String[0]), lookupPaths, absoluteToRelativePath, fragmentOf);
+    }
+
+    // merge in the order of paths instead of completion, so the result is deterministic
+    Map<String, Fragment> visitedFragments = new HashMap<>();
+    for (String srcPath : sortedPaths) {
+      Fragment fragment = fragments.get(srcPath);
+      if (fragment != null) {
+        merge(fragment);
+        visitedFragments.put(cacheKeys.get(srcPath), fragment);
+      }
+    }
+    if (fragmentCache != null) {
+      fragmentCache.retain(visitedFragments);
+    }
+  }
+
+  /**
+   * Visit the partitions of the java files in parallel, each with a parser of its own
+   *
+   * @param srcPaths
+   * @param lookupPaths
+   * @param absoluteToRelativePath
+   * @param fragmentOf
+   */
+  private void visitInParallel(
+      List<String> srcPaths,
+      String[] lookupPaths,
+      Map<String, String> absoluteToRelativePath,
+      Function<String, Fragment> fragmentOf) {
+    int partSize = (srcPaths.size() + parallelism - 1) / parallelism;
+    ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+    List<Future<?>> parts = new ArrayList<>();
+    for (int start = 0; start < srcPaths.size(); start += partSize) {
+      String[] partPaths =
+          srcPaths
+              .subList(start, Math.min(start + partSize, srcPaths.size()))
+              .toArray(new String[0]);
+      parts.add(
+          executorService.submit(
+              () -> visitFiles(partPaths, lookupPaths, absoluteToRelativePath, fragmentOf)));
+    }
+    try {
+      for (Future<?> part : parts) {
+        part.get();
+      }
+    } catch (ExecutionException e) {
+      // the graph misses the nodes of the failed part, so fail the whole build
+      executorService.shutdownNow();
+      throw new IllegalStateException("Failed to visit the java files", e.getCause());
+    } catch (InterruptedException e) {
+      executorService.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted when visiting the java files", e);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Key of the fragment of a java file, which depends on both versions of the file (for the diff
+   * hunks) and its index
+   *
+   * @param relativePath
+   * @return
+   */
+  private String getCacheKey(String relativePath) {
+    DiffFile diffFile = sourceTree.getDiffFile(relativePath);
+    return diffFile.getIndex()
+        + ":"
+        + relativePath
+        + ":"
+        + hashContent(diffFile.getBaseContent())
+        + ":"
+        + hashContent(diffFile.getCurrentContent())
+        + ":"
+        + (stubDir != null);
+  }
+
+  /**
+   * Key of the files that the bindings in the fragments are resolved against, i.e. the
+   * declarations (without the method bodies) in this version of all the java files in the build
+   * and the stubs, so that no fragment is reused once any of them changes (e.g. a new overload in
+   * another file), while a change only inside the bodies of another file keeps them
+   *
+   * @param srcPaths
+   * @param absoluteToRelativePath
+   * @return
+   */
+  private String getBuildKey(String[] srcPaths, Map<String, String> absoluteToRelativePath) {
+    StringBuilder builder = new StringBuilder();
+    for (String srcPath : srcPaths) {
+      String relativePath = absoluteToRelativePath.get(srcPath);
+      builder
+          .append(relativePath)
+          .append(':')
+          .append(fragmentCache.getDeclarationDigest(sourceTree.getContent(relativePath)))
+          .append('\n');
+    }
+    if (stubDir != null) {
+      builder.append(SymbolIndex.getStubsDigest(stubDir));
+    }
+    return hashContent(builder.toString());
+  }
+
+  private static String hashContent(String content) {
+    return content == null ? "" : ContentStore.hash(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get the source root of a java file, i.e. the dir where its package starts
+   *
+   * @param srcPath
+   * @param relativePath
+   * @return the parent dir if the package does not match the dirs
+   */
+  private String getSourceRoot(String srcPath, String relativePath) {
+    File root = new File(srcPath).getParentFile();
+    String content = sourceTree.getContent(relativePath);
+    Matcher matcher = PACKAGE_PATTERN.matcher(content == null ? "" : content);
+    if (matcher.find()) {
+      String[] packageNames = matcher.group(1).split("\\.");
+      File dir = root;
+      for (int i = packageNames.length - 1; i >= 0 && dir != null; --i) {
+        dir = packageNames[i].equals(dir.getName()) ? dir.getParentFile() : null;
+      }
+      if (dir != null) {
+        root = dir;
+      }
+    }
+    return root.getAbsolutePath();
+  }
+
+  /**
+   * Merge one fragment into the entity pool and the graph, and renumber its nodes and edges
+   *
+   * @param part
+   */
+  private void merge(Fragment part) {
+    // node in the fragment : node in the graph
+    Map<Node, Node> mergedNodes = new HashMap<>();
+    for (Node node : part.graph.vertexSet()) {
+      Node mergedNode = node;
+      if (node.getType().equals(NodeType.PACKAGE)) {
+        // fragments cached from the last time have package nodes of their own
+        mergedNode =
+            nodeIndex.findByQualifiedName(node.getQualifiedName(), NodeType.PACKAGE).orElse(node);
+      }
+      if (mergedNode == node && graph.addVertex(node)) {
+        node.setId(idAllocator.nextNodeID());
+        nodeIndex.add(node);
+      }
+      mergedNodes.put(node, mergedNode);
+    }
+    for (Edge edge : part.graph.edgeSet()) {
+      edge.setId(idAllocator.nextEdgeID());
+      graph.addEdge(
+          mergedNodes.get(part.graph.getEdgeSource(edge)),
+          mergedNodes.get(part.graph.getEdgeTarget(edge)),
+          edge);
+    }
+    entityPool.merge(part.entityPool);
+  }
+
+  /**
+   * Create a parser that resolves bindings within the source folders (and the stubs)
+   *
+   * @param srcFolderPaths
+   * @return
+   */
+  private ASTParser createParser(String[] srcFolderPaths) {
+    if (stubDir != null) {
+      srcFolderPaths = Arrays.copyOf(srcFolderPaths, srcFolderPaths.length + 1);
+      srcFolderPaths[srcFolderPaths.length - 1] = stubDir;
+    }
+    String[] encodings = new String[srcFolderPaths.length];
+    Arrays.fill(encodings, "UTF-8");
+
+    ASTParser parser = ASTParser.newParser(8);
+    Map<String, String> options = JavaCore.getOptions();
+    options.put(JavaCore.COMPILER_COMPLIANCE, "8");
+    options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_8);
+    options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_8);
+    options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
+    JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+    parser.setCompilerOptions(options);
+
+    //        parser.setProject(WorkspaceUtilities.javaProject);
+    parser.setKind(ASTParser.K_COMPILATION_UNIT);
+    parser.setEnvironment(new String[] {JRE_PATH}, srcFolderPaths, encodings, true);
+    parser.setResolveBindings(true);
+    parser.setBindingsRecovery(true);
+    return parser;
+  }
+
   /**
    * Create an (logical) edge in the graph: if not exists, create; else increase the weight by one
    *
@@ -308,11 +646,10 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
    * @return whether the operation succeeds
    */
   private boolean createEdge(Node source, Node target, EdgeType edgeType) {
-    int edgeCount = graph.edgeSet().size();
     boolean success = false;
     Set<Edge> edges = graph.getAllEdges(source, target);
     if (edges.isEmpty()) {
-      success = graph.addEdge(source, target, new Edge(edgeCount++, edgeType));
+      success = graph.addEdge(source, target, newEdge(edgeType));
     } else {
       // find the edge with the same type and increase the weight by one
       for (Edge e : edges) {
@@ -324,7 +661,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
       }
       // allow for multiple edges with different types
       if (!success) {
-        success = graph.addEdge(source, target, new Edge(edgeCount++, edgeType));
+        success = graph.addEdge(source, target, newEdge(edgeType));
       }
     }
     if (!success) {
@@ -333,6 +670,16 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
     return success;
   }
 
+  /**
+   * Create an edge with a new id
+   *
+   * @param edgeType
+   * @return
+   */
+  private Edge newEdge(EdgeType edgeType) {
+    return new Edge(idAllocator.nextEdgeID(), edgeType);
+  }
+
   /**
    * Find the type declaration node
    *
@@ -369,11 +716,13 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
   /**
    * Collect info of the hunks in the current file
    *
+   * @param part
    * @param hunksPosition
    * @param cu
    * @return
    */
   private void createHunkInfos(
+      Fragment part,
       Version version,
       Integer fileIndex,
       Map<String, Pair<Integer, Integer>> hunksPosition,
@@ -410,29 +759,23 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
 
       HunkInfo hunkInfo = new HunkInfo(index);
       hunkInfo.fileIndex = fileIndex;
-      hunkInfo.coveredNodes = coveredNodes;
+      hunkInfo.coveredNodes = CoveredNodes.of(coveredNodes);
 
       // save covered nodes also in hunks
-      Pair<Integer, Integer> indices = Utils.parseIndices(index);
-      DiffHunk diffHunk = null;
-      if (fileIndex < diffFiles.size())
-        diffHunk = diffFiles.get(fileIndex).getDiffHunks().get(indices.getRight());
-      if (diffHunk != null) {
-        if (version.equals(Version.BASE)) {
-          diffHunk.getBaseHunk().setCoveredNodes(new ArrayList<>(coveredNodes));
-        } else {
-          diffHunk.getCurrentHunk().setCoveredNodes(new ArrayList<>(coveredNodes));
-        }
-      }
+      saveCoveredNodes(hunkInfo);
 
-      int nodeID = graph.vertexSet().size() + 1;
-      int edgeID = graph.edgeSet().size() + 1;
-      Node hunkNode = new Node(nodeID, NodeType.HUNK, hunkInfo.uniqueName(), hunkInfo.uniqueName());
+      Node hunkNode =
+          new Node(
+              part.idAllocator.nextNodeID(),
+              NodeType.HUNK,
+              hunkInfo.uniqueName(),
+              hunkInfo.uniqueName());
       hunkNode.isInDiffHunk = true;
       hunkNode.diffHunkIndex = index;
 
       hunkInfo.node = hunkNode;
-      graph.addVertex(hunkNode);
+      part.graph.addVertex(hunkNode);
+      part.nodeIndex.add(hunkNode);
 
       boolean existInGraph = false;
       for (ASTNode astNode : coveredNodes) {
@@ -454,10 +797,11 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
               if (annoBinding != null && annoBinding.getQualifiedName().contains(".")) {
                 nodeOpt =
                     findNodeByNameAndType(
-                        annoBinding.getQualifiedName(), NodeType.ANNOTATION, true);
+                        part.nodeIndex, annoBinding.getQualifiedName(), NodeType.ANNOTATION, true);
               } else {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         ((AnnotationTypeDeclaration) astNode).getName().getIdentifier(),
                         NodeType.ANNOTATION,
                         false);
@@ -469,7 +813,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 node.diffHunkIndex = index;
 
                 hunkInfo.typeDefs.add(node.getQualifiedName());
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
               } else {
                 logger.warn("ANNOTATION_TYPE_DECLARATION Not Found: " + astNode);
@@ -482,6 +826,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   && memberBinding.getDeclaringClass().getQualifiedName().contains(".")) {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         memberBinding.getDeclaringClass().getQualifiedName()
                             + ":"
                             + memberBinding.getName(),
@@ -490,6 +835,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
               } else {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         ((AnnotationTypeMemberDeclaration) astNode).getName().getIdentifier(),
                         NodeType.ANNOTATION_MEMBER,
                         false);
@@ -500,7 +846,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 node.isInDiffHunk = true;
                 node.diffHunkIndex = index;
 
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
               } else {
                 logger.warn("ANNOTATION_TYPE_MEMBER_DECLARATION Not Found: " + astNode);
               }
@@ -509,10 +855,12 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
               ITypeBinding enumBinding = ((EnumDeclaration) astNode).resolveBinding();
               if (enumBinding != null && enumBinding.getQualifiedName().contains(".")) {
                 nodeOpt =
-                    findNodeByNameAndType(enumBinding.getQualifiedName(), NodeType.ENUM, true);
+                    findNodeByNameAndType(
+                        part.nodeIndex, enumBinding.getQualifiedName(), NodeType.ENUM, true);
               } else {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         ((AbstractTypeDeclaration) astNode).getName().getIdentifier(),
                         NodeType.ENUM,
                         false);
@@ -524,7 +872,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 node.diffHunkIndex = index;
 
                 hunkInfo.typeDefs.add(node.getQualifiedName());
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
               } else {
                 logger.warn("ENUM_DECLARATION Not Found: " + astNode);
               }
@@ -534,11 +882,16 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
               NodeType type =
                   ((TypeDeclaration) astNode).isInterface() ? NodeType.INTERFACE : NodeType.CLASS;
               if (typeBinding != null && typeBinding.getQualifiedName().contains(".")) {
-                nodeOpt = findNodeByNameAndType(typeBinding.getQualifiedName(), type, true);
+                nodeOpt =
+                    findNodeByNameAndType(
+                        part.nodeIndex, typeBinding.getQualifiedName(), type, true);
               } else {
                 nodeOpt =
                     findNodeByNameAndType(
-                        ((TypeDeclaration) astNode).getName().getIdentifier(), type, false);
+                        part.nodeIndex,
+                        ((TypeDeclaration) astNode).getName().getIdentifier(),
+                        type,
+                        false);
               }
 
               if (nodeOpt.isPresent()) {
@@ -548,7 +901,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 node.diffHunkIndex = index;
 
                 hunkInfo.typeDefs.add(node.getQualifiedName());
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
               } else {
                 logger.warn("TYPE_DECLARATION Not Found: " + astNode);
@@ -560,6 +913,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   && varBinding.getDeclaringClass().getQualifiedName().contains(".")) {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         varBinding.getDeclaringClass().getQualifiedName()
                             + ":"
                             + ((EnumConstantDeclaration) astNode).getName().getFullyQualifiedName(),
@@ -568,6 +922,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
               } else {
                 nodeOpt =
                     findNodeByNameAndType(
+                        part.nodeIndex,
                         ((EnumConstantDeclaration) astNode).getName().getIdentifier(),
                         NodeType.ENUM_CONSTANT,
                         false);
@@ -581,7 +936,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
 
                 // consider constant as fields
                 hunkInfo.fieldDefs.add(node.getQualifiedName());
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
               } else {
                 logger.warn("ENUM_CONSTANT_DECLARATION Not Found: " + astNode);
@@ -600,6 +955,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   // use qualified name
                   nodeOpt =
                       findNodeByNameAndType(
+                          part.nodeIndex,
                           binding.getDeclaringClass().getQualifiedName() + ":" + binding.getName(),
                           NodeType.FIELD,
                           true);
@@ -607,7 +963,10 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   // use simple name instead
                   nodeOpt =
                       findNodeByNameAndType(
-                          fragment.getName().getFullyQualifiedName(), NodeType.FIELD, false);
+                          part.nodeIndex,
+                          fragment.getName().getFullyQualifiedName(),
+                          NodeType.FIELD,
+                          false);
                 }
                 if (nodeOpt.isPresent()) {
                   existInGraph = true;
@@ -616,7 +975,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   node.diffHunkIndex = index;
 
                   hunkInfo.fieldDefs.add(node.getQualifiedName());
-                  graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                  part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
                 } else {
                   logger.warn("FIELD_DECLARATION Not Found: " + astNode);
@@ -634,9 +993,11 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 uniqueMethodName =
                     jdtService.getUniqueNameForMethod(
                         methodBinding.getDeclaringClass().getQualifiedName(), methodDeclaration);
-                nodeOpt = findNodeByNameAndType(uniqueMethodName, NodeType.METHOD, true);
+                nodeOpt =
+                    findNodeByNameAndType(part.nodeIndex, uniqueMethodName, NodeType.METHOD, true);
               } else {
-                nodeOpt = findNodeByNameAndType(uniqueMethodName, NodeType.METHOD, false);
+                nodeOpt =
+                    findNodeByNameAndType(part.nodeIndex, uniqueMethodName, NodeType.METHOD, false);
               }
 
               if (nodeOpt.isPresent()) {
@@ -646,7 +1007,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 node.diffHunkIndex = index;
 
                 hunkInfo.methodDefs.add(node.getQualifiedName());
-                graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
               } else {
                 logger.warn("METHOD_DECLARATION Not Found: " + astNode);
@@ -660,10 +1021,14 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                 TypeDeclaration parent = ((TypeDeclaration) initializer.getParent());
                 if (parent.resolveBinding() != null) {
                   String uniqueName = parent.resolveBinding().getQualifiedName() + ":INIT";
-                  nodeOpt = findNodeByNameAndType(uniqueName, NodeType.INITIALIZER_BLOCK, true);
+                  nodeOpt =
+                      findNodeByNameAndType(
+                          part.nodeIndex, uniqueName, NodeType.INITIALIZER_BLOCK, true);
                 } else {
                   String uniqueName = parent.getName().getFullyQualifiedName() + ":INIT";
-                  nodeOpt = findNodeByNameAndType(uniqueName, NodeType.INITIALIZER_BLOCK, false);
+                  nodeOpt =
+                      findNodeByNameAndType(
+                          part.nodeIndex, uniqueName, NodeType.INITIALIZER_BLOCK, false);
                 }
                 if (nodeOpt.isPresent()) {
                   existInGraph = true;
@@ -672,7 +1037,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
                   node.diffHunkIndex = index;
 
                   //                  hunkInfo.methodDefs.add(node.getQualifiedName());
-                  graph.addEdge(hunkNode, node, new Edge(edgeID, EdgeType.CONTAIN));
+                  part.graph.addEdge(hunkNode, node, part.newEdge(EdgeType.CONTAIN));
 
                 } else {
                   logger.warn("INITIALIZER Not Found: " + astNode);
@@ -688,9 +1053,9 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
       // create the HunkInfo node for hunks inside entities
       if (!existInGraph) {
         // find parent entity node (expected to exist) and create the contain edge
-        Optional<Node> parentNodeOpt = findParentNode(coveredNodes);
+        Optional<Node> parentNodeOpt = findParentNode(part.nodeIndex, coveredNodes);
         if (parentNodeOpt.isPresent()) {
-          graph.addEdge(parentNodeOpt.get(), hunkNode, new Edge(edgeID, EdgeType.CONTAIN));
+          part.graph.addEdge(parentNodeOpt.get(), hunkNode, part.newEdge(EdgeType.CONTAIN));
         }
 
         // save imported types into the entityPool
@@ -702,10 +1067,28 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
       }
 
       // add HunkInfo into the pool
-      entityPool.hunkInfoMap.put(hunkInfo.uniqueName(), hunkInfo);
+      part.entityPool.hunkInfoMap.put(hunkInfo.uniqueName(), hunkInfo);
     }
     if (!importType2HunkMap.isEmpty()) {
-      entityPool.importInfoMap.put(fileIndex, importType2HunkMap);
+      part.entityPool.importInfoMap.put(fileIndex, importType2HunkMap);
+    }
+  }
+
+  /**
+   * Save the nodes covered by the hunk also in the diff hunk
+   *
+   * @param hunkInfo
+   */
+  private void saveCoveredNodes(HunkInfo hunkInfo) {
+    DiffHunk diffHunk = null;
+    if (hunkInfo.fileIndex < diffFiles.size())
+      diffHunk = diffFiles.get(hunkInfo.fileIndex).getDiffHunks().get(hunkInfo.hunkIndex);
+    if (diffHunk != null) {
+      if (sourceTree.getVersion().equals(Version.BASE)) {
+        diffHunk.getBaseHunk().setCoveredNodes(hunkInfo.coveredNodes);
+      } else {
+        diffHunk.getCurrentHunk().setCoveredNodes(hunkInfo.coveredNodes);
+      }
     }
   }
 
@@ -762,10 +1145,11 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
   /**
    * Find the nearest common ancestor entity in the ast and the node in the graph
    *
+   * @param nodeIndex
    * @param astNodes
    * @return
    */
-  private Optional<Node> findParentNode(Set<ASTNode> astNodes) {
+  private Optional<Node> findParentNode(NodeIndex nodeIndex, Set<ASTNode> astNodes) {
     // TODO: find the nearest common ancestor of the covered ast nodes
     ASTNode parentEntity = null;
     for (ASTNode astNode : astNodes) {
@@ -789,10 +1173,7 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
           identifier = ((MethodDeclaration) parentEntity).getName().getFullyQualifiedName();
           break;
       }
-      String finalIdentifier = identifier;
-      return graph.vertexSet().stream()
-          .filter(node -> node.getIdentifier().equals(finalIdentifier))
-          .findAny();
+      return nodeIndex.findByIdentifier(identifier);
     }
     return Optional.empty();
   }
@@ -801,48 +1182,92 @@ public class GraphBuilder implements Callable<Graph<Node, Edge>> {
    * Find the corresponding node in graph by name (qualified name first, simple name if no qualified
    * name) and type
    *
+   * @param nodeIndex
    * @param name
    * @param type
    * @return
    */
   private Optional<Node> findNodeByNameAndType(
-      String name, NodeType type, Boolean isQualifiedName) {
+      NodeIndex nodeIndex, String name, NodeType type, Boolean isQualifiedName) {
     if (isQualifiedName) {
-      return graph.vertexSet().stream()
-          .filter(node -> node.getType().equals(type) && node.getQualifiedName().equals(name))
-          .findAny();
+      return nodeIndex.findByQualifiedName(name, type);
     } else {
-      return graph.vertexSet().stream()
-          .filter(node -> node.getType().equals(type) && node.getIdentifier().endsWith(name))
-          .findAny();
+      return nodeIndex.findByIdentifierSuffix(name, type);
+    }
+  }
+
+  /** The entities, nodes and edges collected from one (or all) of the java files */
+  private static class Fragment {
+    private final EntityPool entityPool;
+    private final Graph<Node, Edge> graph;
+    private final NodeIndex nodeIndex;
+    private final IdAllocator idAllocator;
+
+    private Fragment(
+        EntityPool entityPool,
+        Graph<Node, Edge> graph,
+        NodeIndex nodeIndex,
+        IdAllocator idAllocator) {
+      this.entityPool = entityPool;
+      this.graph = graph;
+      this.nodeIndex = nodeIndex;
+      this.idAllocator = idAllocator;
+    }
+
+    private Edge newEdge(EdgeType edgeType) {
+      return new Edge(idAllocator.nextEdgeID(), edgeType);
     }
   }
 
   /**
-   * Given the absolute path, return the corresponding diff file
-   *
-   * @param absolutePath
-   * @return
+   * Fragments of the java files in one version from the last build, kept between the analyses of
+   * the same repository
    */
-  private Optional<DiffFile> getDiffFileByPath(String absolutePath, Version version) {
-    String formattedPath = Utils.formatPath(absolutePath);
-    switch (version) {
-      case BASE:
-        return this.diffFiles.stream()
-            .filter(
-                diffFile ->
-                    !diffFile.getBaseRelativePath().isEmpty()
-                        && formattedPath.endsWith(diffFile.getBaseRelativePath()))
-            .findAny();
-      case CURRENT:
-        return this.diffFiles.stream()
-            .filter(
-                diffFile ->
-                    !diffFile.getCurrentRelativePath().isEmpty()
-                        && formattedPath.endsWith(diffFile.getCurrentRelativePath()))
-            .findAny();
-      default:
-        return Optional.empty();
+  public static class FragmentCache {
+    // cache key : fragment of the file
+    private final Map<String, Fragment> fragments = new HashMap<>();
+    // content hash : digest of the declarations, of the files in the last build
+    private Map<String, String> declarationDigests = new HashMap<>();
+    // the same for the files in the current build
+    private Map<String, String> nextDeclarationDigests = new HashMap<>();
+
+    public int size() {
+      return fragments.size();
+    }
+
+    private Fragment get(String cacheKey) {
+      return fragments.get(cacheKey);
+    }
+
+    /**
+     * Digest of the declarations in a java file, parsed without the method bodies only if the
+     * content is not in the last build
+     *
+     * @param content
+     * @return
+     */
+    private String getDeclarationDigest(String content) {
+      if (content == null) {
+        return "";
+      }
+      String contentHash = hashContent(content);
+      String digest = nextDeclarationDigests.get(contentHash);
+      if (digest == null) {
+        digest = declarationDigests.get(contentHash);
+        if (digest == null) {
+          digest = hashContent(SymbolIndex.summarize(content).stub);
+        }
+        nextDeclarationDigests.put(contentHash, digest);
+      }
+      return digest;
+    }
+
+    /** Keep only the fragments (and the declaration digests) of the files in the last build */
+    private void retain(Map<String, Fragment> visitedFragments) {
+      fragments.clear();
+      fragments.putAll(visitedFragments);
+      declarationDigests = nextDeclarationDigests;
+      nextDeclarationDigests = new HashMap<>();
     }
   }
 }
@@ -3,10 +3,12 @@ package com.github.smartcommit.core;
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
 import com.github.smartcommit.model.Group;
+import com.github.smartcommit.model.SourceTree;
 import com.github.smartcommit.model.constant.*;
 import com.github.smartcommit.model.diffgraph.DiffEdge;
 import com.github.smartcommit.model.diffgraph.DiffEdgeType;
 import com.github.smartcommit.model.diffgraph.DiffNode;
+import com.github.smartcommit.model.graph.CompactGraph;
 import com.github.smartcommit.model.graph.Edge;
 import com.github.smartcommit.model.graph.Node;
 import com.github.smartcommit.util.Utils;
@@ -23,8 +25,6 @@ import org.jgrapht.graph.builder.GraphTypeBuilder;
 import org.refactoringminer.api.Refactoring;
 import org.refactoringminer.api.RefactoringMinerTimedOutException;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
@@ -38,8 +38,9 @@ public class GroupGenerator {
   private Pair<String, String> srcDirs; // dirs to store the collected files
   private List<DiffFile> diffFiles;
   private List<DiffHunk> diffHunks;
-  private Graph<Node, Edge> baseGraph;
-  private Graph<Node, Edge> currentGraph;
+  // frozen entity graphs, only traversed here
+  private CompactGraph baseGraph;
+  private CompactGraph currentGraph;
   // map from the grouped diff hunk index to its group id (for quick-find)
   private Map<String, String> indexToGroupMap;
 
@@ -58,8 +59,8 @@ public class GroupGenerator {
       Pair<String, String> srcDirs,
       List<DiffFile> diffFiles,
       List<DiffHunk> diffHunks,
-      Graph<Node, Edge> baseGraph,
-      Graph<Node, Edge> currentGraph) {
+      CompactGraph baseGraph,
+      CompactGraph currentGraph) {
     this.repoID = repoID;
     this.repoName = repoName;
     this.srcDirs = srcDirs;
@@ -87,14 +88,8 @@ public class GroupGenerator {
             .buildGraph();
     int nodeID = 0;
 
-    List<Node> baseHunkNodes =
-        baseGraph.vertexSet().stream()
-            .filter(node -> node.isInDiffHunk)
-            .collect(Collectors.toList());
-    List<Node> currentHunkNodes =
-        currentGraph.vertexSet().stream()
-            .filter(node -> node.isInDiffHunk)
-            .collect(Collectors.toList());
+    int[] baseHunkNodes = baseGraph.getHunkNodes();
+    int[] currentHunkNodes = currentGraph.getHunkNodes();
 
     for (DiffHunk diffHunk : diffHunks) {
       DiffNode diffNode = new DiffNode(nodeID++, diffHunk.getUniqueIndex(), diffHunk.getUUID());
@@ -273,23 +268,22 @@ public class GroupGenerator {
     createEdges(reformat, DiffEdgeType.REFORMAT, 1.0);
   }
 
-  private Map<String, Set<String>> analyzeDefUse(Graph<Node, Edge> graph) {
+  private Map<String, Set<String>> analyzeDefUse(CompactGraph graph) {
     Map<String, Set<String>> defUseLinks = new HashMap<>();
-    List<Node> hunkNodes =
-        graph.vertexSet().stream().filter(node -> node.isInDiffHunk).collect(Collectors.toList());
-    for (Node node : hunkNodes) {
-      List<String> defHunkNodes = analyzeDef(graph, node, new HashSet<>());
-      List<String> useHunkNodes = analyzeUse(graph, node, new HashSet<>());
+    for (int node : graph.getHunkNodes()) {
+      List<String> defHunkNodes = analyzeDef(graph, node, new BitSet(graph.nodeCount()));
+      List<String> useHunkNodes = analyzeUse(graph, node, new BitSet(graph.nodeCount()));
       // record the links an return
       if (!defHunkNodes.isEmpty() || !useHunkNodes.isEmpty()) {
-        if (!defUseLinks.containsKey(node.diffHunkIndex)) {
-          defUseLinks.put(node.diffHunkIndex, new HashSet<>());
+        String diffHunkIndex = graph.getDiffHunkIndex(node);
+        if (!defUseLinks.containsKey(diffHunkIndex)) {
+          defUseLinks.put(diffHunkIndex, new HashSet<>());
         }
         for (String s : defHunkNodes) {
-          defUseLinks.get(node.diffHunkIndex).add(s);
+          defUseLinks.get(diffHunkIndex).add(s);
         }
         for (String s : useHunkNodes) {
-          defUseLinks.get(node.diffHunkIndex).add(s);
+          defUseLinks.get(diffHunkIndex).add(s);
         }
       }
     }
@@ -304,22 +298,22 @@ public class GroupGenerator {
    * @param visited
    * @return
    */
-  private List<String> analyzeDef(Graph<Node, Edge> graph, Node node, HashSet<Node> visited) {
+  private List<String> analyzeDef(CompactGraph graph, int node, BitSet visited) {
     //    Graphs.predecessorListOf()
     List<String> res = new ArrayList<>();
-    Set<Edge> inEdges =
-        graph.incomingEdgesOf(node).stream()
-            .filter(edge -> edge.getType().isStructural())
-            .collect(Collectors.toSet());
-    if (inEdges.isEmpty() || visited.contains(node)) {
+    if (!hasEdges(graph, node, false, true) || visited.get(node)) {
       return res;
     }
-    visited.add(node);
-    for (Edge edge : inEdges) {
-      Node srcNode = graph.getEdgeSource(edge);
-      if (srcNode != node && !visited.contains(node)) {
-        if (srcNode.isInDiffHunk) {
-          res.add(srcNode.diffHunkIndex);
+    visited.set(node);
+    for (int i = 0; i < graph.inDegreeOf(node); ++i) {
+      int edge = graph.getIncomingEdge(node, i);
+      if (!graph.getEdgeType(edge).isStructural()) {
+        continue;
+      }
+      int srcNode = graph.getEdgeSource(edge);
+      if (srcNode != node && !visited.get(node)) {
+        if (graph.isInDiffHunk(srcNode)) {
+          res.add(graph.getDiffHunkIndex(srcNode));
         }
         res.addAll(analyzeDef(graph, srcNode, visited));
       }
@@ -335,21 +329,21 @@ public class GroupGenerator {
    * @param visited
    * @return
    */
-  private List<String> analyzeUse(Graph<Node, Edge> graph, Node node, HashSet<Node> visited) {
+  private List<String> analyzeUse(CompactGraph graph, int node, BitSet visited) {
     List<String> res = new ArrayList<>();
-    Set<Edge> outEdges =
-        graph.outgoingEdgesOf(node).stream()
-            .filter(edge -> !edge.getType().isStructural())
-            .collect(Collectors.toSet());
-    if (outEdges.isEmpty() || visited.contains(node)) {
+    if (!hasEdges(graph, node, true, false) || visited.get(node)) {
       return res;
     }
-    visited.add(node);
-    for (Edge edge : outEdges) {
-      Node tgtNode = graph.getEdgeTarget(edge);
-      if (tgtNode != node && !visited.contains(tgtNode)) {
-        if (tgtNode.isInDiffHunk) {
-          res.add(tgtNode.diffHunkIndex);
+    visited.set(node);
+    for (int i = 0; i < graph.outDegreeOf(node); ++i) {
+      int edge = graph.getOutgoingEdge(node, i);
+      if (graph.getEdgeType(edge).isStructural()) {
+        continue;
+      }
+      int tgtNode = graph.getEdgeTarget(edge);
+      if (tgtNode != node && !visited.get(tgtNode)) {
+        if (graph.isInDiffHunk(tgtNode)) {
+          res.add(graph.getDiffHunkIndex(tgtNode));
         }
         res.addAll(analyzeUse(graph, tgtNode, visited));
       }
@@ -357,6 +351,26 @@ public class GroupGenerator {
     return res;
   }
 
+  /**
+   * Check if the node has any outgoing (or incoming) edge of structural (or other) types
+   *
+   * @param graph
+   * @param node
+   * @param outgoing
+   * @param structural
+   * @return
+   */
+  private boolean hasEdges(CompactGraph graph, int node, boolean outgoing, boolean structural) {
+    int degree = outgoing ? graph.outDegreeOf(node) : graph.inDegreeOf(node);
+    for (int i = 0; i < degree; ++i) {
+      int edge = outgoing ? graph.getOutgoingEdge(node, i) : graph.getIncomingEdge(node, i);
+      if (graph.getEdgeType(edge).isStructural() == structural) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Generate groups of changes either with a dynamic or fixed threshold
    *
@@ -913,11 +927,15 @@ public class GroupGenerator {
     //    Set<DiffHunk> refDiffHunks = new TreeSet<>(ascendingByIndexComparator());
 
     try {
-      File rootFolder1 = new File(srcDirs.getLeft());
-      File rootFolder2 = new File(srcDirs.getRight());
-
-      UMLModel model1 = new UMLModelASTReader(rootFolder1).getUmlModel();
-      UMLModel model2 = new UMLModelASTReader(rootFolder2).getUmlModel();
+      // read the java files from the diff files in memory, instead of the collected files
+      SourceTree baseTree = new SourceTree(Version.BASE, diffFiles);
+      SourceTree currentTree = new SourceTree(Version.CURRENT, diffFiles);
+
+      UMLModel model1 =
+          new UMLModelASTReader(baseTree.getContents(), baseTree.getDirectories()).getUmlModel();
+      UMLModel model2 =
+          new UMLModelASTReader(currentTree.getContents(), currentTree.getDirectories())
+              .getUmlModel();
       UMLModelDiff modelDiff = model1.diff(model2);
 
       List<Refactoring> refactorings = modelDiff.getRefactorings();
@@ -942,7 +960,7 @@ public class GroupGenerator {
           }
         }
       }
-    } catch (RefactoringMinerTimedOutException | IOException e) {
+    } catch (RefactoringMinerTimedOutException e) {
       e.printStackTrace();
     }
     return refDiffHunks;
@@ -1129,16 +1147,15 @@ public class GroupGenerator {
    * @param diffHunkIndex
    * @return
    */
-  private Map<String, Integer> getHierarchy(
-      Graph<Node, Edge> graph, List<Node> nodes, String diffHunkIndex) {
+  private Map<String, Integer> getHierarchy(CompactGraph graph, int[] nodes, String diffHunkIndex) {
     Map<String, Integer> hierarchy = new HashMap<>();
-    Optional<Node> nodeOpt =
-        nodes.stream().filter(node -> node.getDiffHunkIndex().equals(diffHunkIndex)).findAny();
-    if (nodeOpt.isPresent()) {
-      Node node = nodeOpt.get();
-      hierarchy.put("hunk", node.getId());
-      // find parents from incoming edges
-      findAncestors(graph, node, hierarchy);
+    for (int node : nodes) {
+      if (graph.getDiffHunkIndex(node).equals(diffHunkIndex)) {
+        hierarchy.put("hunk", graph.getNodeId(node));
+        // find parents from incoming edges
+        findAncestors(graph, node, hierarchy);
+        break;
+      }
     }
     return hierarchy;
   }
@@ -1150,19 +1167,19 @@ public class GroupGenerator {
    * @param node
    * @param hierarchy
    */
-  private void findAncestors(Graph<Node, Edge> graph, Node node, Map<String, Integer> hierarchy) {
-    Set<Edge> incomingEdges =
-        graph.incomingEdgesOf(node).stream()
-            .filter(edge -> edge.getType().isStructural()) // contain or define
-            .collect(Collectors.toSet());
-    for (Edge edge : incomingEdges) {
-      Node srcNode = graph.getEdgeSource(edge);
-      switch (srcNode.getType()) {
+  private void findAncestors(CompactGraph graph, int node, Map<String, Integer> hierarchy) {
+    for (int i = 0; i < graph.inDegreeOf(node); ++i) {
+      int edge = graph.getIncomingEdge(node, i);
+      if (!graph.getEdgeType(edge).isStructural()) { // contain or define
+        continue;
+      }
+      int srcNode = graph.getEdgeSource(edge);
+      switch (graph.getNodeType(srcNode)) {
         case CLASS:
         case INTERFACE:
         case ENUM:
         case ANNOTATION:
-          hierarchy.put("class", srcNode.getId());
+          hierarchy.put("class", graph.getNodeId(srcNode));
           findAncestors(graph, srcNode, hierarchy);
           break;
         case METHOD:
@@ -1170,11 +1187,11 @@ public class GroupGenerator {
         case ENUM_CONSTANT:
         case ANNOTATION_MEMBER:
         case INITIALIZER_BLOCK:
-          hierarchy.put("member", srcNode.getId());
+          hierarchy.put("member", graph.getNodeId(srcNode));
           findAncestors(graph, srcNode, hierarchy);
           break;
         case PACKAGE:
-          hierarchy.put("package", srcNode.getId());
+          hierarchy.put("package", graph.getNodeId(srcNode));
           break;
       }
     }
@@ -12,7 +12,7 @@ import java.util.*;
 
 // import com.github.gumtreediff.gen.jdt.JdtTreeGenerator;
 
-public class RepoAnalyzer {
+public class RepoAnalyzer implements AutoCloseable {
 
   private static final Logger logger = Logger.getLogger(RepoAnalyzer.class);
 
@@ -23,8 +23,16 @@ public class RepoAnalyzer {
   private List<DiffHunk> diffHunks;
   private Map<String, DiffFile> idToDiffFileMap;
   private Map<String, DiffHunk> idToDiffHunkMap;
+  // the lazy contents of diff files are loaded through the git service, so it is kept open as long
+  // as the diff files are in use: by the caller if given, otherwise until this analyzer is closed
+  private GitService gitService;
+  private boolean ownsGitService;
 
   public RepoAnalyzer(String repoID, String repoName, String repoPath) {
+    this(repoID, repoName, repoPath, null);
+  }
+
+  public RepoAnalyzer(String repoID, String repoName, String repoPath, GitService gitService) {
     this.repoID = repoID;
     this.repoName = repoName;
     this.repoPath = repoPath;
@@ -32,6 +40,8 @@ public class RepoAnalyzer {
     this.diffHunks = new ArrayList<>();
     this.idToDiffFileMap = new HashMap<>();
     this.idToDiffHunkMap = new HashMap<>();
+    this.gitService = gitService == null ? new GitServiceCGit() : gitService;
+    this.ownsGitService = gitService == null;
   }
 
   public String getRepoPath() {
@@ -49,7 +59,6 @@ public class RepoAnalyzer {
   /** Analyze the current working tree to cache temp data */
   public List<DiffFile> analyzeWorkingTree() {
     // analyze the diff files and hunks
-    GitService gitService = new GitServiceCGit();
     ArrayList<DiffFile> diffFiles = gitService.getChangedFilesInWorkingTree(this.repoPath);
     if (!diffFiles.isEmpty()) {
       gitService.getDiffHunksInWorkingTree(this.repoPath, diffFiles);
@@ -66,7 +75,6 @@ public class RepoAnalyzer {
    */
   public List<DiffFile> analyzeCommit(String commitID) {
     // analyze the diff files and hunks
-    GitService gitService = new GitServiceCGit();
     ArrayList<DiffFile> diffFiles = gitService.getChangedFilesAtCommit(this.repoPath, commitID);
     if (!diffFiles.isEmpty()) {
       gitService.getDiffHunksAtCommit(this.repoPath, commitID, diffFiles);
@@ -76,6 +84,14 @@ public class RepoAnalyzer {
     return diffFiles;
   }
 
+  /** Close the git service created here, after which the lazy contents cannot be read */
+  @Override
+  public void close() {
+    if (ownsGitService) {
+      gitService.close();
+    }
+  }
+
   /**
    * Generate fileID:diffFile map (for commit stage)
    *
@@ -4,7 +4,9 @@ import com.github.smartcommit.model.EntityPool;
 import com.github.smartcommit.model.entity.*;
 import com.github.smartcommit.model.graph.Edge;
 import com.github.smartcommit.model.graph.EdgeType;
+import com.github.smartcommit.model.graph.IdAllocator;
 import com.github.smartcommit.model.graph.Node;
+import com.github.smartcommit.model.graph.NodeIndex;
 import com.github.smartcommit.model.graph.NodeType;
 import com.github.smartcommit.util.JDTService;
 import org.eclipse.jdt.core.dom.*;
@@ -19,13 +21,22 @@ public class MemberVisitor extends ASTVisitor {
   private Integer fileIndex;
   private EntityPool entityPool;
   private Graph<Node, Edge> graph;
+  private NodeIndex nodeIndex;
+  private IdAllocator idAllocator;
   private JDTService jdtService;
 
   public MemberVisitor(
-      Integer fileIndex, EntityPool entityPool, Graph<Node, Edge> graph, JDTService jdtService) {
+      Integer fileIndex,
+      EntityPool entityPool,
+      Graph<Node, Edge> graph,
+      NodeIndex nodeIndex,
+      IdAllocator idAllocator,
+      JDTService jdtService) {
     this.fileIndex = fileIndex;
     this.entityPool = entityPool;
     this.graph = graph;
+    this.nodeIndex = nodeIndex;
+    this.idAllocator = idAllocator;
     this.jdtService = jdtService;
   }
 
@@ -42,7 +53,7 @@ public class MemberVisitor extends ASTVisitor {
     Node enumNode =
         new Node(
             generateNodeID(), NodeType.ANNOTATION, node.getName().getIdentifier(), qualifiedName);
-    graph.addVertex(enumNode);
+    addNode(enumNode);
 
     if (node.isPackageMemberTypeDeclaration()) {
       String packageName = jdtService.getPackageName(node);
@@ -75,7 +86,7 @@ public class MemberVisitor extends ASTVisitor {
                 NodeType.ANNOTATION_MEMBER,
                 memberInfo.name,
                 memberInfo.uniqueName());
-        graph.addVertex(memberNode);
+        addNode(memberNode);
         graph.addEdge(enumNode, memberNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
         memberInfo.node = memberNode;
       } else if (member instanceof EnumDeclaration) {
@@ -91,7 +102,7 @@ public class MemberVisitor extends ASTVisitor {
     String qualifiedName = jdtService.getQualifiedNameForNamedType(node);
     Node enumNode =
         new Node(generateNodeID(), NodeType.ENUM, node.getName().getIdentifier(), qualifiedName);
-    graph.addVertex(enumNode);
+    addNode(enumNode);
 
     if (node.isPackageMemberTypeDeclaration()) {
       String packageName = jdtService.getPackageName(node);
@@ -121,7 +132,7 @@ public class MemberVisitor extends ASTVisitor {
                 NodeType.ENUM_CONSTANT,
                 enumConstantInfo.name,
                 enumConstantInfo.uniqueName());
-        graph.addVertex(enumConstantNode);
+        addNode(enumConstantNode);
         graph.addEdge(enumNode, enumConstantNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         enumConstantInfo.node = enumConstantNode;
@@ -137,7 +148,7 @@ public class MemberVisitor extends ASTVisitor {
         for (FieldInfo fieldInfo : fieldInfos) {
           Node fieldNode =
               new Node(generateNodeID(), NodeType.FIELD, fieldInfo.name, fieldInfo.uniqueName());
-          graph.addVertex(fieldNode);
+          addNode(fieldNode);
           graph.addEdge(enumNode, fieldNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
           fieldInfo.node = fieldNode;
@@ -149,7 +160,7 @@ public class MemberVisitor extends ASTVisitor {
             jdtService.createMethodInfo(fileIndex, (MethodDeclaration) obj, qualifiedName);
         Node methodNode =
             new Node(generateNodeID(), NodeType.METHOD, methodInfo.name, methodInfo.uniqueName());
-        graph.addVertex(methodNode);
+        addNode(methodNode);
         graph.addEdge(enumNode, methodNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         methodInfo.node = methodNode;
@@ -181,7 +192,7 @@ public class MemberVisitor extends ASTVisitor {
 
     String qualifiedName = jdtService.getQualifiedNameForAnonyType(declaration, superClassName);
     Node node = new Node(generateNodeID(), NodeType.ANONY_CLASS, superClassName, qualifiedName);
-    graph.addVertex(node);
+    addNode(node);
     // parse info
     ClassInfo classInfo =
         jdtService.createAnonyClassInfo(declaration, superClassName, qualifiedName);
@@ -210,7 +221,7 @@ public class MemberVisitor extends ASTVisitor {
         Node initNode =
             new Node(
                 generateNodeID(), NodeType.INITIALIZER_BLOCK, info.uniqueName(), info.uniqueName());
-        graph.addVertex(initNode);
+        addNode(initNode);
         graph.addEdge(node, initNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         info.node = initNode;
@@ -232,7 +243,7 @@ public class MemberVisitor extends ASTVisitor {
       for (FieldInfo fieldInfo : fieldInfos) {
         Node fieldNode =
             new Node(generateNodeID(), NodeType.FIELD, fieldInfo.name, fieldInfo.uniqueName());
-        graph.addVertex(fieldNode);
+        addNode(fieldNode);
         graph.addEdge(node, fieldNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         fieldInfo.node = fieldNode;
@@ -252,7 +263,7 @@ public class MemberVisitor extends ASTVisitor {
           jdtService.createMethodInfo(fileIndex, methodDeclaration, qualifiedName);
       Node methodNode =
           new Node(generateNodeID(), NodeType.METHOD, methodInfo.name, methodInfo.uniqueName());
-      graph.addVertex(methodNode);
+      addNode(methodNode);
       graph.addEdge(node, methodNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
       methodInfo.node = methodNode;
@@ -271,7 +282,7 @@ public class MemberVisitor extends ASTVisitor {
     String qualifiedNameForType = jdtService.getQualifiedNameForNamedType(type);
     Node typeNode =
         new Node(generateNodeID(), nodeType, type.getName().getIdentifier(), qualifiedNameForType);
-    graph.addVertex(typeNode);
+    addNode(typeNode);
 
     if (type.isInterface()) {
       InterfaceInfo interfaceInfo = jdtService.createInterfaceInfo(fileIndex, type);
@@ -312,7 +323,7 @@ public class MemberVisitor extends ASTVisitor {
         Node initNode =
             new Node(
                 generateNodeID(), NodeType.INITIALIZER_BLOCK, info.uniqueName(), info.uniqueName());
-        graph.addVertex(initNode);
+        addNode(initNode);
         graph.addEdge(typeNode, initNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         info.node = initNode;
@@ -329,7 +340,7 @@ public class MemberVisitor extends ASTVisitor {
       for (FieldInfo fieldInfo : fieldInfos) {
         Node fieldNode =
             new Node(generateNodeID(), NodeType.FIELD, fieldInfo.name, fieldInfo.uniqueName());
-        graph.addVertex(fieldNode);
+        addNode(fieldNode);
         graph.addEdge(typeNode, fieldNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
         fieldInfo.node = fieldNode;
@@ -344,7 +355,7 @@ public class MemberVisitor extends ASTVisitor {
           jdtService.createMethodInfo(fileIndex, methodDeclaration, qualifiedNameForType);
       Node methodNode =
           new Node(generateNodeID(), NodeType.METHOD, methodInfo.name, methodInfo.uniqueName());
-      graph.addVertex(methodNode);
+      addNode(methodNode);
       graph.addEdge(typeNode, methodNode, new Edge(generateEdgeID(), EdgeType.DEFINE));
 
       methodInfo.node = methodNode;
@@ -360,11 +371,21 @@ public class MemberVisitor extends ASTVisitor {
    * @return
    */
   private Integer generateNodeID() {
-    return this.graph.vertexSet().size() + 1;
+    return idAllocator.nextNodeID();
   }
 
   private Integer generateEdgeID() {
-    return this.graph.edgeSet().size() + 1;
+    return idAllocator.nextEdgeID();
+  }
+
+  /**
+   * Add a node into the graph and the index
+   *
+   * @param node
+   */
+  private void addNode(Node node) {
+    graph.addVertex(node);
+    nodeIndex.add(node);
   }
 
   /**
@@ -374,12 +395,7 @@ public class MemberVisitor extends ASTVisitor {
    * @return
    */
   private Optional<Node> getParentTypeNode(String qualifiedName) {
-    return graph.vertexSet().stream()
-        .filter(
-            node ->
-                (node.getType().equals(NodeType.CLASS) || node.getType().equals(NodeType.INTERFACE))
-                    && node.getQualifiedName().equals(qualifiedName))
-        .findAny();
+    return nodeIndex.findByQualifiedName(qualifiedName, NodeType.CLASS, NodeType.INTERFACE);
   }
 
   /**
@@ -389,14 +405,8 @@ public class MemberVisitor extends ASTVisitor {
    * @return
    */
   private Optional<Node> getParentMemberNode(String qualifiedName) {
-    return graph.vertexSet().stream()
-        .filter(
-            node ->
-                (node.getType().equals(NodeType.METHOD)
-                    || node.getType().equals(NodeType.FIELD)
-                    || node.getType().equals(NodeType.INITIALIZER_BLOCK)))
-        .filter(node -> node.getQualifiedName().equals(qualifiedName))
-        .findAny();
+    return nodeIndex.findByQualifiedName(
+        qualifiedName, NodeType.METHOD, NodeType.FIELD, NodeType.INITIALIZER_BLOCK);
   }
 
   /**
@@ -406,20 +416,9 @@ public class MemberVisitor extends ASTVisitor {
    * @return
    */
   private Node getOrCreatePkgNode(String packageName) {
-    Optional<Node> pkgNodeOpt =
-        graph.vertexSet().stream()
-            .filter(
-                node ->
-                    node.getType().equals(NodeType.PACKAGE)
-                        && node.getQualifiedName().equals(packageName))
-            .findAny();
-    if (pkgNodeOpt.isPresent()) {
-      return pkgNodeOpt.get();
-    } else {
-      // create if not exist
-      Node pkgNode = new Node(generateNodeID(), NodeType.PACKAGE, packageName, packageName);
-      graph.addVertex(pkgNode);
-      return pkgNode;
-    }
+    Node pkgNode = idAllocator.getOrCreatePkgNode(packageName);
+    // no-op if the package node is already in the graph
+    addNode(pkgNode);
+    return pkgNode;
   }
 }
@@ -122,6 +122,8 @@ public class Evaluation {
     smartCommit.setMinSimilarity(0.8D);
     smartCommit.setMaxDistance(1);
     Stopwatch stopwatch = Stopwatch.createStarted();
+    // the contents of diff files are loaded through the git service, keep it open until finished
+    GitService gitService = new GitServiceCGit();
 
     // randomly sample 100 composite commits for each size
     // combine consecutive 2/3/5 commitsByEmail into a change-set
@@ -167,7 +169,8 @@ public class Evaluation {
 
               // get diff hunks and save in groundTruth
               RepoAnalyzer repoAnalyzer =
-                  new RepoAnalyzer(String.valueOf(repoName.hashCode()), repoName, repoPath);
+                  new RepoAnalyzer(
+                      String.valueOf(repoName.hashCode()), repoName, repoPath, gitService);
 
               List<DiffFile> diffFiles = repoAnalyzer.analyzeCommit(commitID);
 
@@ -370,6 +373,7 @@ public class Evaluation {
         sampleNum++;
       }
     }
+    gitService.close();
 
     System.out.println(
         "SmartCommit: Median Accuracy: " + Utils.formatDouble(getMedian(scAccuracies)) + "%");
@@ -1000,6 +1004,8 @@ public class Evaluation {
     smartCommit.setMinSimilarity(0.8D);
     smartCommit.setMaxDistance(1);
     Stopwatch stopwatch = Stopwatch.createStarted();
+    // the contents of diff files are loaded through the git service, keep it open until finished
+    GitService gitService = new GitServiceCGit();
 
     // randomly sample 100 composite commits for each size
     // combine consecutive 2/3/5 commitsByEmail into a change-set
@@ -1030,7 +1036,7 @@ public class Evaluation {
 
         // get diff hunks and save in groundTruth
         RepoAnalyzer repoAnalyzer =
-            new RepoAnalyzer(String.valueOf(repoName.hashCode()), repoName, repoPath);
+            new RepoAnalyzer(String.valueOf(repoName.hashCode()), repoName, repoPath, gitService);
 
         List<DiffFile> diffFiles = repoAnalyzer.analyzeCommit(commitID);
 
@@ -1217,5 +1223,6 @@ public class Evaluation {
             + " Accuracy="
             + accuracy
             + "%");
+    gitService.close();
   }
 }
@@ -0,0 +1,328 @@
+package com.github.smartcommit.io;
+
+import com.github.smartcommit.util.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content-addressed store under the output dir, which keeps the artifacts computed from the file
+ * contents by their hashes, and the manifests of the dirs materialized from the contents, so that
+ * repeated analyses only touch the changed files. Least recently used artifacts are evicted when
+ * the store grows over the size limit.
+ */
+public class ContentStore {
+  private static final Logger logger = Logger.getLogger(ContentStore.class);
+  public static final String CACHE_DIR = ".cache";
+  public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+  private static final String ARTIFACTS_DIR = "artifacts";
+  private static final String TREES_DIR = "trees";
+
+  private final File storeDir;
+  private final long maxBytes;
+
+  /**
+   * Open (or create) the store under the output dir
+   *
+   * @param outputDir the dir that keeps the results
+   * @param maxBytes the size limit of the store
+   */
+  public ContentStore(String outputDir, long maxBytes) {
+    this.storeDir = new File(Utils.createDir(outputDir + File.separator + CACHE_DIR));
+    this.maxBytes = maxBytes;
+  }
+
+  public ContentStore(String outputDir) {
+    this(outputDir, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Compute the git blob hash of the given bytes, i.e. sha1("blob <length>\0<content>"). It is the
+   * blob id in git only for the exact bytes in the repo: the collected files are decoded and
+   * written as UTF-8, so for a file in another encoding it is the hash of what is written, not the
+   * blob id (which is what the symbol index keys its artifacts by).
+   *
+   * @param content the bytes as they are written or parsed
+   * @return hex string of the hash
+   */
+  public static String hash(byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+      byte[] bytes = digest.digest(content);
+      StringBuilder builder = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+        builder.append(Character.forDigit(b & 0xF, 16));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public File getStoreDir() {
+    return storeDir;
+  }
+
+  /**
+   * Save an artifact computed from the content with the hash, e.g. the parse summary of a file
+   *
+   * @param hash the hash of the content
+   * @param kind the kind of the artifact
+   * @param data
+   */
+  public void putArtifact(String hash, String kind, byte[] data) {
+    write(getArtifactFile(hash, kind), data);
+  }
+
+  /**
+   * Read an artifact computed from the content with the hash
+   *
+   * @param hash the hash of the content
+   * @param kind the kind of the artifact
+   * @return null if not in the store
+   */
+  public byte[] getArtifact(String hash, String kind) {
+    return read(getArtifactFile(hash, kind));
+  }
+
+  /**
+   * Start to reconcile the files under the dir with the contents put one by one: only the files
+   * whose contents changed since the last time are rewritten, and the files that are gone are
+   * deleted
+   *
+   * @param dir the dir to keep the files
+   * @return the writer to put the files, which must be finished to delete the files that are gone
+   */
+  public TreeWriter openTree(String dir) {
+    return new TreeWriter(dir);
+  }
+
+  /**
+   * Writes the files of one dir as they come, and keeps the manifest of them. The files are plain
+   * copies, so changing them never affects the store; a file changed since it was written (by its
+   * length or last modified time) is written again.
+   */
+  public class TreeWriter {
+    private final File treeDir;
+    private final File manifestFile;
+    private final Map<String, ManifestEntry> oldManifest;
+    // relative path : what is written to the file
+    private final Map<String, ManifestEntry> manifest = new TreeMap<>();
+    private int count = 0;
+
+    private TreeWriter(String dir) {
+      treeDir = new File(Utils.createDir(dir));
+      manifestFile = getManifestFile(treeDir);
+      Map<String, ManifestEntry> old = readManifest(manifestFile);
+      if (old == null) {
+        // no record of what is in the dir, start from scratch
+        Utils.clearDir(treeDir.getAbsolutePath());
+        old = new HashMap<>();
+      }
+      oldManifest = old;
+      // the dir is not in sync with the manifest until finished
+      manifestFile.delete();
+    }
+
+    /**
+     * Write the file if its content changed since the last time
+     *
+     * @param relativePath
+     * @param content
+     */
+    public void put(String relativePath, byte[] content) {
+      String hash = hash(content);
+      File file = new File(treeDir, relativePath);
+      ManifestEntry entry = oldManifest.get(relativePath);
+      if (entry != null && entry.hash.equals(hash) && entry.isWrittenTo(file)) {
+        manifest.put(relativePath, entry);
+        return;
+      }
+      if (write(file, content)) {
+        count++;
+        entry = new ManifestEntry(hash, file);
+        manifest.put(relativePath, entry);
+        // in case the same path is put twice
+        oldManifest.put(relativePath, entry);
+      } else {
+        logger.error("Error when materializing: " + file.getAbsolutePath());
+      }
+    }
+
+    /**
+     * Delete the files that are not put this time, and save the manifest
+     *
+     * @return number of files written
+     */
+    public int finish() {
+      for (String path : oldManifest.keySet()) {
+        if (!manifest.containsKey(path)) {
+          delete(new File(treeDir, path), treeDir);
+        }
+      }
+      writeManifest(manifestFile, manifest);
+      return count;
+    }
+  }
+
+  /** What is written to a file of a materialized dir */
+  private static class ManifestEntry {
+    private final String hash;
+    private final long length;
+    private final long lastModified;
+
+    private ManifestEntry(String hash, File file) {
+      this.hash = hash;
+      this.length = file.length();
+      this.lastModified = file.lastModified();
+    }
+
+    private boolean isWrittenTo(File file) {
+      return file.length() == length && file.lastModified() == lastModified;
+    }
+  }
+
+  /**
+   * Evict the least recently used artifacts until the store fits in the size limit
+   *
+   * @return number of bytes freed
+   */
+  public long evict() {
+    List<File> files = new ArrayList<>();
+    listFiles(new File(storeDir, ARTIFACTS_DIR), files);
+    long size = 0L;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size <= maxBytes) {
+      return 0L;
+    }
+
+    // the access time is kept in the last modified time
+    Map<File, Long> lastModified = new HashMap<>();
+    for (File file : files) {
+      lastModified.put(file, file.lastModified());
+    }
+    files.sort(Comparator.comparingLong(lastModified::get));
+    long freed = 0L;
+    for (File file : files) {
+      if (size - freed <= maxBytes) {
+        break;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        freed += length;
+      }
+    }
+    logger.info("Evicted " + freed + " bytes from " + storeDir.getAbsolutePath());
+    return freed;
+  }
+
+  private File getArtifactFile(String hash, String kind) {
+    return new File(
+        storeDir,
+        ARTIFACTS_DIR
+            + File.separator
+            + kind
+            + File.separator
+            + hash.substring(0, 2)
+            + File.separator
+            + hash.substring(2));
+  }
+
+  private File getManifestFile(File treeDir) {
+    String key = hash(treeDir.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+    return new File(storeDir, TREES_DIR + File.separator + key + ".json");
+  }
+
+  private Map<String, ManifestEntry> readManifest(File manifestFile) {
+    byte[] bytes = read(manifestFile);
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      return new Gson()
+          .fromJson(
+              new String(bytes, StandardCharsets.UTF_8),
+              new TypeToken<Map<String, ManifestEntry>>() {}.getType());
+    } catch (JsonParseException e) {
+      logger.warn("Unreadable manifest: " + manifestFile.getAbsolutePath());
+      return null;
+    }
+  }
+
+  private void writeManifest(File manifestFile, Map<String, ManifestEntry> manifest) {
+    write(manifestFile, new Gson().toJson(manifest).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Mark the file as recently used */
+  private static void touch(File file) {
+    file.setLastModified(System.currentTimeMillis());
+  }
+
+  private static byte[] read(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      touch(file);
+      return bytes;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /** Write into a temp file then move it, so that a half-written file is never read */
+  private static boolean write(File file, byte[] bytes) {
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+      Files.write(temp, bytes);
+      Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /** Delete the file and its parent dirs that become empty, up to the root */
+  private static void delete(File file, File root) {
+    file.delete();
+    File dir = file.getParentFile();
+    while (dir != null && !dir.equals(root)) {
+      String[] names = dir.list();
+      if (names == null || names.length > 0 || !dir.delete()) {
+        break;
+      }
+      dir = dir.getParentFile();
+    }
+  }
+
+  private static void listFiles(File dir, List<File> files) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        listFiles(child, files);
+      } else {
+        files.add(child);
+      }
+    }
+  }
+}
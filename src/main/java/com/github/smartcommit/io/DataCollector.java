@@ -1,30 +1,38 @@
 package com.github.smartcommit.io;
 
 import com.github.smartcommit.model.Action;
+import com.github.smartcommit.model.CoveredNodes;
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
 import com.github.smartcommit.model.constant.*;
 import com.github.smartcommit.util.Utils;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
-import org.eclipse.jdt.core.dom.*;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import static org.eclipse.jdt.core.dom.ASTNode.*;
-
 public class DataCollector {
   private static final Logger logger = Logger.getLogger(DataCollector.class);
 
   private String repoName;
   private String tempDir;
+  private ContentStore contentStore;
 
   public DataCollector(String repoName, String tempDir) {
+    this(repoName, tempDir, new ContentStore(tempDir));
+  }
+
+  /**
+   * @param repoName
+   * @param tempDir
+   * @param contentStore the store to reuse the collected files of the last time
+   */
+  public DataCollector(String repoName, String tempDir, ContentStore contentStore) {
     this.repoName = repoName;
     this.tempDir = Utils.createDir(tempDir);
+    this.contentStore = contentStore;
   }
 
   /**
@@ -67,7 +75,8 @@ public class DataCollector {
   }
 
   /**
-   * Collect the diff files into the data dir
+   * Collect the diff files into the data dir, only the files changed since the last collection are
+   * rewritten
    *
    * @param baseDir
    * @param currentDir
@@ -75,51 +84,42 @@ public class DataCollector {
    * @return
    */
   private int collect(String baseDir, String currentDir, List<DiffFile> diffFiles) {
-    int count = 0;
-    Utils.createDir(baseDir);
-    Utils.createDir(currentDir);
+    ContentStore.TreeWriter baseTree = contentStore.openTree(baseDir);
+    ContentStore.TreeWriter currentTree = contentStore.openTree(currentDir);
     for (DiffFile diffFile : diffFiles) {
       // skip binary files
       if (diffFile.getFileType().equals(FileType.BIN)) {
         continue;
       }
-      String basePath, currentPath;
       switch (diffFile.getStatus()) {
         case ADDED:
         case UNTRACKED:
-          currentPath = currentDir + diffFile.getCurrentRelativePath();
-          if (Utils.writeStringToFile(diffFile.getCurrentContent(), currentPath)) {
-            count++;
-          } else {
-            logger.error("Error when collecting: " + diffFile.getStatus() + ":" + currentPath);
-          }
+          putContent(currentTree, diffFile.getCurrentRelativePath(), diffFile.getCurrentContent());
           break;
         case DELETED:
-          basePath = baseDir + diffFile.getBaseRelativePath();
-          if (Utils.writeStringToFile(diffFile.getBaseContent(), basePath)) {
-            count++;
-          } else {
-            logger.error("Error when collecting: " + diffFile.getStatus() + ":" + basePath);
-          }
+          putContent(baseTree, diffFile.getBaseRelativePath(), diffFile.getBaseContent());
           break;
         case MODIFIED:
         case RENAMED:
         case COPIED:
-          basePath = baseDir + diffFile.getBaseRelativePath();
-          currentPath = currentDir + diffFile.getCurrentRelativePath();
-          boolean baseOk = Utils.writeStringToFile(diffFile.getBaseContent(), basePath);
-          boolean currentOk = Utils.writeStringToFile(diffFile.getCurrentContent(), currentPath);
-          if (baseOk && currentOk) {
-            count++;
-          } else {
-            logger.error("Error when collecting: " + diffFile.getStatus() + ":" + basePath);
-          }
+          putContent(baseTree, diffFile.getBaseRelativePath(), diffFile.getBaseContent());
+          putContent(currentTree, diffFile.getCurrentRelativePath(), diffFile.getCurrentContent());
           break;
       }
     }
+    int count = baseTree.finish() + currentTree.finish();
+    contentStore.evict();
     return count;
   }
 
+  private void putContent(ContentStore.TreeWriter tree, String relativePath, String content) {
+    if (content == null) {
+      logger.error("Error when collecting: " + relativePath);
+      return;
+    }
+    tree.put(relativePath, content.getBytes(StandardCharsets.UTF_8));
+  }
+
   /**
    * Save diffs for each diff file on the disk
    *
@@ -127,7 +127,20 @@ public class DataCollector {
    * @return fileID : filePath (base if status!=ADDED else current)
    */
   public Map<String, String> collectDiffHunks(List<DiffFile> diffFiles, String resultsDir) {
-    String diffDir = resultsDir + File.separator + "diffs";
+    try (ResultWriter resultWriter = new ResultWriter(resultsDir)) {
+      return collectDiffHunks(diffFiles, resultWriter);
+    }
+  }
+
+  /**
+   * Save diffs for each diff file with the result writer
+   *
+   * @param diffFiles
+   * @param resultWriter
+   * @return fileID : filePath (base if status!=ADDED else current)
+   */
+  public Map<String, String> collectDiffHunks(
+      List<DiffFile> diffFiles, ResultWriter resultWriter) {
     Map<String, String> fileIDToPathMap = new HashMap<>();
     for (DiffFile diffFile : diffFiles) {
       // generate description for each diff hunk
@@ -142,16 +155,11 @@ public class DataCollector {
               ? diffFile.getCurrentRelativePath()
               : diffFile.getBaseRelativePath();
       fileIDToPathMap.put(diffFile.getFileID(), filePath);
-      Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
-      Utils.writeStringToFile(
-          gson.toJson(diffFile.shallowClone()),
-          diffDir + File.separator + diffFile.getFileID() + ".json");
+      resultWriter.writeDiffFile(diffFile);
     }
 
     // save the fileID to path map
-    Gson gson = new Gson();
-    String str = gson.toJson(fileIDToPathMap);
-    Utils.writeStringToFile(str, resultsDir + File.separator + "file_ids.json");
+    resultWriter.writeFileIDs(fileIDToPathMap);
     return fileIDToPathMap;
   }
 
@@ -245,7 +253,8 @@ public class DataCollector {
    * @param coveredNodes
    * @return
    */
-  private static List<Action> analyzeCoveredNodes(ChangeType changeType, List<ASTNode> coveredNodes) {
+  private static List<Action> analyzeCoveredNodes(
+      ChangeType changeType, CoveredNodes coveredNodes) {
     List<Action> actions = new ArrayList<>();
     Operation operation = convertChangeTypeToOperation(changeType);
 
@@ -278,7 +287,7 @@ public class DataCollector {
    * @return
    */
   private static List<Action> analyzeCoveredNodes(
-      ChangeType changeType, List<ASTNode> baseNodes, List<ASTNode> currentNodes) {
+      ChangeType changeType, CoveredNodes baseNodes, CoveredNodes currentNodes) {
     List<Action> actions = new ArrayList<>();
     Operation operation = convertChangeTypeToOperation(changeType);
 
@@ -304,43 +313,10 @@ public class DataCollector {
    * @param coveredNodes
    * @return
    */
-  private static List<Pair<String, String>> getASTNodesInfo(List<ASTNode> coveredNodes) {
+  private static List<Pair<String, String>> getASTNodesInfo(CoveredNodes coveredNodes) {
     Set<Pair<String, String>> infos = new LinkedHashSet<>();
-    for (ASTNode node : coveredNodes) {
-      if (node != null) {
-        String type = Annotation.nodeClassForType(node.getNodeType()).getSimpleName();
-        String label = "";
-        switch (node.getNodeType()) {
-          case TYPE_DECLARATION:
-            label = ((TypeDeclaration) node).getName().getIdentifier();
-            break;
-          case ENUM_DECLARATION:
-            label = ((EnumDeclaration) node).getName().getIdentifier();
-            break;
-          case VARIABLE_DECLARATION_STATEMENT:
-            label =
-                ((VariableDeclarationFragment)
-                        ((VariableDeclarationStatement) node).fragments().get(0))
-                    .getName()
-                    .getIdentifier();
-            break;
-          case FIELD_DECLARATION:
-            label =
-                ((VariableDeclarationFragment) ((FieldDeclaration) node).fragments().get(0))
-                    .getName()
-                    .getIdentifier();
-            break;
-          case METHOD_DECLARATION:
-            label = ((MethodDeclaration) node).getName().getIdentifier();
-            break;
-          case EXPRESSION_STATEMENT:
-            label = ((ExpressionStatement) node).toString();
-            break;
-          default:
-            label = "";
-        }
-        infos.add(Pair.of(type, label));
-      }
+    for (int i = 0; i < coveredNodes.size(); ++i) {
+      infos.add(Pair.of(coveredNodes.getTypeName(i), coveredNodes.getLabel(i)));
     }
     return new ArrayList<>(infos);
   }
@@ -0,0 +1,139 @@
+package com.github.smartcommit.io;
+
+import com.github.smartcommit.model.DiffFile;
+import com.github.smartcommit.model.DiffHunk;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Raw headers and raw diffs of the diff files for patch generation, kept in one text buffer and
+ * indexed by fileID and diffHunkID, so that a patch is generated by copying ranges of the buffer.
+ */
+public class HunkStore {
+  private final StringBuilder text = new StringBuilder();
+  // fileID : [start, end) of the raw headers in the text
+  private final Map<String, int[]> headerRanges = new HashMap<>();
+  // diffHunkID : [start, end) of the raw diffs in the text
+  private final Map<String, int[]> hunkRanges = new HashMap<>();
+
+  /**
+   * Index the raw headers and raw diffs of a diff file in memory
+   *
+   * @param diffFile
+   */
+  public void add(DiffFile diffFile) {
+    headerRanges.put(diffFile.getFileID(), appendLines(diffFile.getRawHeaders()));
+    for (Map.Entry<String, DiffHunk> entry : diffFile.getDiffHunksMap().entrySet()) {
+      hunkRanges.put(entry.getKey(), appendLines(entry.getValue().getRawDiffs()));
+    }
+  }
+
+  /**
+   * Index the raw headers and raw diffs of a diff file saved in json, other fields are skipped
+   * without being deserialized
+   *
+   * @param reader reader of a serialized diff file
+   */
+  public void add(JsonReader reader) throws IOException {
+    String fileID = null;
+    int[] headerRange = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "fileID":
+          fileID = reader.nextString();
+          break;
+        case "rawHeaders":
+          headerRange = appendLines(reader);
+          break;
+        case "diffHunksMap":
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String diffHunkID = reader.nextName();
+            reader.beginObject();
+            while (reader.hasNext()) {
+              if (reader.nextName().equals("rawDiffs")) {
+                hunkRanges.put(diffHunkID, appendLines(reader));
+              } else {
+                reader.skipValue();
+              }
+            }
+            reader.endObject();
+          }
+          reader.endObject();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (fileID != null && headerRange != null) {
+      headerRanges.put(fileID, headerRange);
+    }
+  }
+
+  public boolean containsFile(String fileID) {
+    return headerRanges.containsKey(fileID);
+  }
+
+  /**
+   * Append the raw headers of a diff file to the patch
+   *
+   * @param fileID
+   * @param builder the patch
+   * @return false if the diff file is not found
+   */
+  public boolean appendHeaders(String fileID, StringBuilder builder) {
+    return append(headerRanges.get(fileID), builder);
+  }
+
+  /**
+   * Append the raw diffs of a diff hunk to the patch
+   *
+   * @param diffHunkID
+   * @param builder the patch
+   * @return false if the diff hunk is not found
+   */
+  public boolean appendRawDiffs(String diffHunkID, StringBuilder builder) {
+    return append(hunkRanges.get(diffHunkID), builder);
+  }
+
+  private boolean append(int[] range, StringBuilder builder) {
+    if (range == null) {
+      return false;
+    }
+    builder.append(text, range[0], range[1]);
+    return true;
+  }
+
+  /** Each line followed by a line separator, the same as joining them and appending one */
+  private int[] appendLines(List<String> lines) {
+    int start = text.length();
+    for (String line : lines) {
+      text.append(line).append(System.lineSeparator());
+    }
+    if (lines.isEmpty()) {
+      text.append(System.lineSeparator());
+    }
+    return new int[] {start, text.length()};
+  }
+
+  private int[] appendLines(JsonReader reader) throws IOException {
+    int start = text.length();
+    boolean empty = true;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      text.append(reader.nextString()).append(System.lineSeparator());
+      empty = false;
+    }
+    reader.endArray();
+    if (empty) {
+      text.append(System.lineSeparator());
+    }
+    return new int[] {start, text.length()};
+  }
+}
@@ -0,0 +1,425 @@
+package com.github.smartcommit.io;
+
+import com.github.smartcommit.model.DiffHunk;
+import com.github.smartcommit.model.Group;
+import com.github.smartcommit.model.Hunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Single-file binary archive of the results, which can be memory-mapped and randomly accessed by
+ * index without parsing the rest.
+ *
+ * <p>Layout (big-endian ints): the header, the group records, the hunk indices of each group, the
+ * recommended message indices of each group, the hunk records, and the string table (offsets then
+ * UTF-8 bytes). Strings in the records are indices into the string table, -1 for null.
+ */
+public class ResultArchive {
+  public static final String FILE_NAME = "results.bin";
+  private static final int MAGIC = 0x53435241; // "SCRA"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 10 * 4;
+  // groupID, intentLabel, commitMsg, firstMsg, msgCount, firstHunk, hunkCount
+  private static final int GROUP_RECORD_SIZE = 7 * 4;
+  // diffHunkID, fileID, uniqueIndex, changeType, description, basePath, baseStart, baseEnd,
+  // currentPath, currentStart, currentEnd, rawDiffs
+  private static final int HUNK_RECORD_SIZE = 12 * 4;
+
+  private final ByteBuffer buffer;
+  private final int groupCount;
+  private final int hunkCount;
+  private final int stringCount;
+  private final int groupsOffset;
+  private final int groupHunksOffset;
+  private final int groupMsgsOffset;
+  private final int hunksOffset;
+  private final int stringsOffset;
+
+  private ResultArchive(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a result archive");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported result archive version: " + buffer.getInt(4));
+    }
+    this.groupCount = buffer.getInt(8);
+    this.hunkCount = buffer.getInt(12);
+    this.stringCount = buffer.getInt(16);
+    this.groupsOffset = buffer.getInt(20);
+    this.groupHunksOffset = buffer.getInt(24);
+    this.groupMsgsOffset = buffer.getInt(28);
+    this.hunksOffset = buffer.getInt(32);
+    this.stringsOffset = buffer.getInt(36);
+  }
+
+  /**
+   * Memory-map an archive file for reading
+   *
+   * @param file
+   * @return
+   */
+  public static ResultArchive open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      return new ResultArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Read an archive from the bytes in memory
+   *
+   * @param bytes
+   * @return
+   */
+  public static ResultArchive wrap(byte[] bytes) throws IOException {
+    return new ResultArchive(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Save the groups and the diff hunks into an archive file, which is replaced as a whole so that
+   * a reader that has mapped the old one never sees it truncated
+   *
+   * @param file
+   * @param groups generated groups <id:group>
+   * @param id2DiffHunkMap diffHunkID : diff hunk
+   */
+  public static void write(
+      File file, Map<String, Group> groups, Map<String, DiffHunk> id2DiffHunkMap)
+      throws IOException {
+    file.getParentFile().mkdirs();
+    Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      Files.write(temp, toBytes(groups, id2DiffHunkMap));
+      Files.move(
+          temp,
+          file.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Serialize the groups and the diff hunks into an archive
+   *
+   * @param groups generated groups <id:group>
+   * @param id2DiffHunkMap diffHunkID : diff hunk
+   * @return
+   */
+  public static byte[] toBytes(Map<String, Group> groups, Map<String, DiffHunk> id2DiffHunkMap)
+      throws IOException {
+    StringTable strings = new StringTable();
+    // hunks in the groups first, then the ungrouped ones
+    Map<String, Integer> hunkIndices = new LinkedHashMap<>();
+    List<DiffHunk> hunks = new ArrayList<>();
+    List<Integer> groupHunks = new ArrayList<>();
+    List<Integer> groupMsgs = new ArrayList<>();
+    List<int[]> groupRecords = new ArrayList<>();
+    for (Map.Entry<String, Group> entry : groups.entrySet()) {
+      Group group = entry.getValue();
+      int firstHunk = groupHunks.size();
+      for (String id : group.getDiffHunkIDs()) {
+        String diffHunkID = id.contains(":") ? id.substring(id.indexOf(':') + 1) : id;
+        DiffHunk diffHunk = id2DiffHunkMap.get(diffHunkID);
+        if (diffHunk == null) {
+          continue;
+        }
+        Integer index = hunkIndices.get(diffHunkID);
+        if (index == null) {
+          index = hunks.size();
+          hunkIndices.put(diffHunkID, index);
+          hunks.add(diffHunk);
+        }
+        groupHunks.add(index);
+      }
+      // each message on its own, as they may span lines
+      int firstMsg = groupMsgs.size();
+      if (group.getRecommendedCommitMsgs() != null) {
+        for (String msg : group.getRecommendedCommitMsgs()) {
+          groupMsgs.add(strings.add(msg));
+        }
+      }
+      groupRecords.add(
+          new int[] {
+            strings.add(entry.getKey()),
+            strings.add(group.getIntentLabel() == null ? null : group.getIntentLabel().name()),
+            strings.add(group.getCommitMsg()),
+            firstMsg,
+            groupMsgs.size() - firstMsg,
+            firstHunk,
+            groupHunks.size() - firstHunk
+          });
+    }
+    for (Map.Entry<String, DiffHunk> entry : id2DiffHunkMap.entrySet()) {
+      if (!hunkIndices.containsKey(entry.getKey())) {
+        hunkIndices.put(entry.getKey(), hunks.size());
+        hunks.add(entry.getValue());
+      }
+    }
+
+    List<int[]> hunkRecords = new ArrayList<>();
+    for (DiffHunk diffHunk : hunks) {
+      Hunk baseHunk = diffHunk.getBaseHunk();
+      Hunk currentHunk = diffHunk.getCurrentHunk();
+      hunkRecords.add(
+          new int[] {
+            strings.add(diffHunk.getDiffHunkID()),
+            strings.add(diffHunk.getFileID()),
+            strings.add(diffHunk.getUniqueIndex()),
+            strings.add(diffHunk.getChangeType() == null ? null : diffHunk.getChangeType().name()),
+            strings.add(diffHunk.getDescription()),
+            strings.add(baseHunk.getRelativeFilePath()),
+            baseHunk.getStartLine(),
+            baseHunk.getEndLine(),
+            strings.add(currentHunk.getRelativeFilePath()),
+            currentHunk.getStartLine(),
+            currentHunk.getEndLine(),
+            strings.add(
+                diffHunk.getRawDiffs() == null
+                    ? null
+                    : String.join(System.lineSeparator(), diffHunk.getRawDiffs()))
+          });
+    }
+
+    int groupsOffset = HEADER_SIZE;
+    int groupHunksOffset = groupsOffset + groupRecords.size() * GROUP_RECORD_SIZE;
+    int groupMsgsOffset = groupHunksOffset + groupHunks.size() * 4;
+    int hunksOffset = groupMsgsOffset + groupMsgs.size() * 4;
+    int stringsOffset = hunksOffset + hunkRecords.size() * HUNK_RECORD_SIZE;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(groupRecords.size());
+    out.writeInt(hunkRecords.size());
+    out.writeInt(strings.size());
+    out.writeInt(groupsOffset);
+    out.writeInt(groupHunksOffset);
+    out.writeInt(groupMsgsOffset);
+    out.writeInt(hunksOffset);
+    out.writeInt(stringsOffset);
+    for (int[] record : groupRecords) {
+      writeInts(out, record);
+    }
+    for (Integer index : groupHunks) {
+      out.writeInt(index);
+    }
+    for (Integer index : groupMsgs) {
+      out.writeInt(index);
+    }
+    for (int[] record : hunkRecords) {
+      writeInts(out, record);
+    }
+    strings.write(out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+  public int getHunkCount() {
+    return hunkCount;
+  }
+
+  /**
+   * Find a group by its id
+   *
+   * @param groupID
+   * @return index of the group, -1 if not found
+   */
+  public int findGroup(String groupID) {
+    for (int i = 0; i < groupCount; ++i) {
+      if (groupID.equals(getGroupID(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find a hunk by its diffHunkID
+   *
+   * @param diffHunkID
+   * @return index of the hunk, -1 if not found
+   */
+  public int findHunk(String diffHunkID) {
+    for (int i = 0; i < hunkCount; ++i) {
+      if (diffHunkID.equals(getDiffHunkID(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public String getGroupID(int group) {
+    return getString(groupField(group, 0));
+  }
+
+  public String getIntentLabel(int group) {
+    return getString(groupField(group, 1));
+  }
+
+  public String getCommitMsg(int group) {
+    return getString(groupField(group, 2));
+  }
+
+  public List<String> getRecommendedCommitMsgs(int group) {
+    int first = groupField(group, 3);
+    int count = groupField(group, 4);
+    List<String> msgs = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      msgs.add(getString(buffer.getInt(groupMsgsOffset + (first + i) * 4)));
+    }
+    return msgs;
+  }
+
+  /**
+   * Get the indices of the hunks in a group
+   *
+   * @param group index of the group
+   * @return indices of the hunks
+   */
+  public int[] getHunkIndices(int group) {
+    int first = groupField(group, 5);
+    int[] indices = new int[groupField(group, 6)];
+    for (int i = 0; i < indices.length; ++i) {
+      indices[i] = buffer.getInt(groupHunksOffset + (first + i) * 4);
+    }
+    return indices;
+  }
+
+  public String getDiffHunkID(int hunk) {
+    return getString(hunkField(hunk, 0));
+  }
+
+  public String getFileID(int hunk) {
+    return getString(hunkField(hunk, 1));
+  }
+
+  public String getUniqueIndex(int hunk) {
+    return getString(hunkField(hunk, 2));
+  }
+
+  public String getChangeType(int hunk) {
+    return getString(hunkField(hunk, 3));
+  }
+
+  public String getDescription(int hunk) {
+    return getString(hunkField(hunk, 4));
+  }
+
+  public String getBasePath(int hunk) {
+    return getString(hunkField(hunk, 5));
+  }
+
+  public int getBaseStartLine(int hunk) {
+    return hunkField(hunk, 6);
+  }
+
+  public int getBaseEndLine(int hunk) {
+    return hunkField(hunk, 7);
+  }
+
+  public String getCurrentPath(int hunk) {
+    return getString(hunkField(hunk, 8));
+  }
+
+  public int getCurrentStartLine(int hunk) {
+    return hunkField(hunk, 9);
+  }
+
+  public int getCurrentEndLine(int hunk) {
+    return hunkField(hunk, 10);
+  }
+
+  public String getRawDiffs(int hunk) {
+    return getString(hunkField(hunk, 11));
+  }
+
+  private int groupField(int group, int field) {
+    if (group < 0 || group >= groupCount) {
+      throw new IndexOutOfBoundsException("Group index: " + group);
+    }
+    return buffer.getInt(groupsOffset + group * GROUP_RECORD_SIZE + field * 4);
+  }
+
+  private int hunkField(int hunk, int field) {
+    if (hunk < 0 || hunk >= hunkCount) {
+      throw new IndexOutOfBoundsException("Hunk index: " + hunk);
+    }
+    return buffer.getInt(hunksOffset + hunk * HUNK_RECORD_SIZE + field * 4);
+  }
+
+  /** Decode only the requested string from the string table */
+  private String getString(int index) {
+    if (index < 0) {
+      return null;
+    }
+    int start = buffer.getInt(stringsOffset + index * 4);
+    int end = buffer.getInt(stringsOffset + (index + 1) * 4);
+    byte[] bytes = new byte[end - start];
+    ByteBuffer view = buffer.duplicate();
+    // cast for the covariant return type on newer jdks
+    ((Buffer) view).position(stringsOffset + (stringCount + 1) * 4 + start);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Deduplicated strings, referred to by index */
+  private static class StringTable {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<byte[]> values = new ArrayList<>();
+
+    int add(String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer index = indices.get(value);
+      if (index == null) {
+        index = values.size();
+        indices.put(value, index);
+        values.add(value.getBytes(StandardCharsets.UTF_8));
+      }
+      return index;
+    }
+
+    int size() {
+      return values.size();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      int offset = 0;
+      out.writeInt(offset);
+      for (byte[] value : values) {
+        offset += value.length;
+        out.writeInt(offset);
+      }
+      for (byte[] value : values) {
+        out.write(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package com.github.smartcommit.io;
+
+import com.github.smartcommit.model.DiffFile;
+import com.github.smartcommit.model.Group;
+import com.github.smartcommit.model.constant.ResultFormat;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Save the results (diff files, file ids, groups and group details) on the disk, either in the
+ * legacy layout (one json file per item) or streamed into one NDJSON file through a single writer.
+ */
+public class ResultWriter implements Closeable {
+  private static final Logger logger = Logger.getLogger(ResultWriter.class);
+  public static final String NDJSON_FILE = "results.ndjson";
+  public static final String DIFFS = "diffs";
+  public static final String FILE_IDS = "file_ids";
+  public static final String GENERATED_GROUPS = "generated_groups";
+  public static final String MANUAL_GROUPS = "manual_groups";
+  public static final String DETAILS = "details";
+
+  private final String outputDir;
+  private final ResultFormat format;
+  private final Gson gson;
+  private final Gson compactGson;
+  // opened on the first record in NDJSON format
+  private Writer out;
+  private JsonWriter jsonWriter;
+
+  /**
+   * @param outputDir output directory path
+   * @param format layout of the results
+   * @param compact whether to save the json without pretty printing (always compact in NDJSON)
+   */
+  public ResultWriter(String outputDir, ResultFormat format, boolean compact) {
+    this.outputDir = outputDir;
+    this.format = format;
+    this.compactGson = new GsonBuilder().disableHtmlEscaping().create();
+    this.gson =
+        compact
+            ? compactGson
+            : new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+  }
+
+  public ResultWriter(String outputDir) {
+    this(outputDir, ResultFormat.LEGACY, false);
+  }
+
+  public Gson getGson() {
+    return gson;
+  }
+
+  /**
+   * Save the diff hunks of a diff file
+   *
+   * @param diffFile
+   */
+  public void writeDiffFile(DiffFile diffFile) {
+    DiffFile clone = diffFile.shallowClone();
+    if (format.equals(ResultFormat.NDJSON)) {
+      writeRecord(DIFFS, diffFile.getFileID(), clone);
+    } else {
+      writeFile(getFile(DIFFS, diffFile.getFileID()), clone);
+    }
+  }
+
+  /**
+   * Save the fileID to path map
+   *
+   * @param fileIDToPathMap
+   */
+  public void writeFileIDs(Map<String, String> fileIDToPathMap) {
+    if (format.equals(ResultFormat.NDJSON)) {
+      writeRecord(FILE_IDS, null, fileIDToPathMap);
+    } else {
+      // never pretty printed
+      writeFile(new File(outputDir, FILE_IDS + ".json"), compactGson.toJson(fileIDToPathMap));
+    }
+  }
+
+  /**
+   * Save a generated group, and a copy for manual adjustments in the legacy layout
+   *
+   * @param groupID
+   * @param group
+   */
+  public void writeGroup(String groupID, Group group) {
+    if (format.equals(ResultFormat.NDJSON)) {
+      writeRecord(GENERATED_GROUPS, groupID, group);
+    } else {
+      // serialize once for both copies
+      String json = gson.toJson(group);
+      writeFile(getFile(GENERATED_GROUPS, groupID), json);
+      // any manual adjustments will be made on this copy
+      writeFile(getFile(MANUAL_GROUPS, groupID), json);
+    }
+  }
+
+  /**
+   * Save the detailed content of diff hunks in a group
+   *
+   * @param section name of the dir in the legacy layout, or the record type in NDJSON
+   * @param groupID
+   * @param details
+   */
+  public void writeGroupDetails(String section, String groupID, String details) {
+    if (format.equals(ResultFormat.NDJSON)) {
+      writeRecord(section, groupID, details);
+    } else {
+      writeFile(getFile(section, groupID), details);
+    }
+  }
+
+  /**
+   * Read the records of each type from a NDJSON file
+   *
+   * @param ndjsonFile
+   * @param consumer accepts the type, id (null for file_ids) and data of each record
+   */
+  public static void readRecords(File ndjsonFile, RecordConsumer consumer) throws IOException {
+    try (BufferedReader reader =
+        Files.newBufferedReader(ndjsonFile.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+        JsonElement id = record.get("id");
+        consumer.accept(
+            record.get("type").getAsString(),
+            id == null ? null : id.getAsString(),
+            record.get("data"));
+      }
+    }
+  }
+
+  /** Consumer of one record in the NDJSON file */
+  public interface RecordConsumer {
+    void accept(String type, String id, JsonElement data);
+  }
+
+  private File getFile(String section, String id) {
+    return new File(outputDir + File.separator + section + File.separator + id + ".json");
+  }
+
+  /** Append one record as a line: {"type":...,"id":...,"data":...} */
+  private void writeRecord(String type, String id, Object data) {
+    try {
+      if (jsonWriter == null) {
+        new File(outputDir).mkdirs();
+        out =
+            new BufferedWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(new File(outputDir, NDJSON_FILE)),
+                    StandardCharsets.UTF_8));
+        jsonWriter = new JsonWriter(out);
+        // multiple top-level values, one per line
+        jsonWriter.setLenient(true);
+        jsonWriter.setHtmlSafe(false);
+      }
+      jsonWriter.beginObject();
+      jsonWriter.name("type").value(type);
+      if (id != null) {
+        jsonWriter.name("id").value(id);
+      }
+      jsonWriter.name("data");
+      if (data instanceof String) {
+        jsonWriter.value((String) data);
+      } else {
+        gson.toJson(data, data.getClass(), jsonWriter);
+      }
+      jsonWriter.endObject();
+      jsonWriter.flush();
+      out.write('\n');
+    } catch (IOException e) {
+      logger.error("Error when writing the " + type + " record: " + id);
+      e.printStackTrace();
+    }
+  }
+
+  private void writeFile(File file, Object data) {
+    file.getParentFile().mkdirs();
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      if (data instanceof String) {
+        writer.write((String) data);
+      } else {
+        gson.toJson(data, writer);
+      }
+    } catch (IOException e) {
+      logger.error("Error when writing: " + file.getAbsolutePath());
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      out = null;
+      jsonWriter = null;
+    }
+  }
+}
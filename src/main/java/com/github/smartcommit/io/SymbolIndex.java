@@ -0,0 +1,369 @@
+package com.github.smartcommit.io;
+
+import com.github.smartcommit.model.constant.Version;
+import com.github.smartcommit.util.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.log4j.Logger;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.*;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Index of the declarations in all the java files of one version of the repository, including the
+ * unchanged ones. Each blob is summarized once and the summary is kept in the content store under
+ * the blob hash, so only the blobs not seen before are parsed.
+ *
+ * <p>The summaries keep the declarations without bodies as stubs, which are written into one source
+ * root per version for JDT to look up the unchanged types when resolving the bindings in the diff
+ * files. The tree indexed into each source root is recorded beside it, so the next update only
+ * visits the files changed since then.
+ */
+public class SymbolIndex {
+  private static final Logger logger = Logger.getLogger(SymbolIndex.class);
+  // change the suffix when the summary changes, so that the old ones are not read
+  public static final String ARTIFACT_KIND = "symbols-v2";
+  public static final String STUBS_DIR = "stubs";
+
+  private final ContentStore contentStore;
+  private final Gson gson = new Gson();
+
+  public SymbolIndex(ContentStore contentStore) {
+    this.contentStore = contentStore;
+  }
+
+  /**
+   * Get the source root of the stubs of the version under the store
+   *
+   * @param version
+   * @return
+   */
+  public String getStubDir(Version version) {
+    return contentStore.getStoreDir().getAbsolutePath()
+        + File.separator
+        + STUBS_DIR
+        + File.separator
+        + version.asString();
+  }
+
+  /**
+   * Digest of the stubs in the source root, which changes whenever the indexed files change
+   *
+   * @param stubDir
+   * @return a new one each time if the stubs are not completely updated
+   */
+  public static String getStubsDigest(String stubDir) {
+    File recordFile = new File(new File(stubDir).getAbsolutePath() + ".json");
+    try {
+      return ContentStore.hash(Files.readAllBytes(recordFile.toPath()));
+    } catch (IOException e) {
+      return UUID.randomUUID().toString();
+    }
+  }
+
+  /**
+   * Index the java files of one revision into the stubs of the version, only the files changed
+   * since the last indexed tree (and the ones excluded or included again) are visited
+   *
+   * @param repoPath
+   * @param revision the commit, or null for the git index (staging area)
+   * @param version
+   * @param excludedPaths the files that are parsed from source instead, e.g. the diff files
+   * @return number of files parsed, i.e. not summarized before
+   */
+  public int update(String repoPath, String revision, Version version, Set<String> excludedPaths) {
+    File stubDir = new File(Utils.createDir(getStubDir(version)));
+    File recordFile = new File(stubDir.getAbsolutePath() + ".json");
+    IndexedTree record = readRecord(recordFile);
+    if (record == null) {
+      // no record of what is in the dir, start from scratch
+      Utils.clearDir(stubDir.getAbsolutePath());
+      record = new IndexedTree();
+    }
+    // the dir is not in sync with the record until updated
+    recordFile.delete();
+
+    int parsed = 0;
+    try (Repository repository =
+            new FileRepositoryBuilder()
+                .readEnvironment()
+                .findGitDir(new File(repoPath))
+                .setMustExist(true)
+                .build();
+        ObjectReader reader = repository.newObjectReader()) {
+      AbstractTreeIterator tree;
+      String treeID = null;
+      if (revision == null) {
+        tree = new DirCacheIterator(repository.readDirCache());
+      } else {
+        ObjectId commitID = repository.resolve(revision);
+        if (commitID == null) {
+          // e.g. the parent of the root commit
+          tree = new EmptyTreeIterator();
+        } else {
+          try (RevWalk revWalk = new RevWalk(reader)) {
+            RevTree revTree = revWalk.parseCommit(commitID).getTree();
+            treeID = revTree.name();
+            tree = new CanonicalTreeParser(null, reader, revTree);
+          }
+        }
+      }
+      // relative path : blob id, null if deleted
+      Map<String, ObjectId> changes = diff(repository, reader, record, tree);
+
+      // the stubs placed by the changed files, or by the files excluded or included again
+      Set<String> stubPaths = new HashSet<>();
+      Map<String, String> stubs = new HashMap<>();
+      for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+        IndexedFile old = record.files.remove(change.getKey());
+        if (old != null) {
+          stubPaths.add(old.stubPath);
+        }
+        if (change.getValue() != null) {
+          FileSymbols symbols = readSymbols(change.getValue().name());
+          if (symbols == null) {
+            symbols = summarize(reader, change.getValue());
+            parsed++;
+          }
+          IndexedFile file =
+              new IndexedFile(
+                  change.getValue().name(), getStubPath(change.getKey(), symbols.packageName));
+          record.files.put(change.getKey(), file);
+          stubPaths.add(file.stubPath);
+          stubs.put(change.getKey(), symbols.stub);
+        }
+      }
+      Set<String> toggled = new HashSet<>(record.excludedPaths);
+      for (String path : excludedPaths) {
+        if (!toggled.remove(path)) {
+          toggled.add(path);
+        }
+      }
+      for (String path : toggled) {
+        IndexedFile file = record.files.get(path);
+        if (file != null) {
+          stubPaths.add(file.stubPath);
+        }
+      }
+      record.treeID = treeID;
+      record.excludedPaths = new HashSet<>(excludedPaths);
+      record.excludedPaths.retainAll(record.files.keySet());
+
+      // the stub is written from the first file placing it, in the order of the paths
+      Map<String, String> owners = new HashMap<>();
+      if (!stubPaths.isEmpty()) {
+        for (Map.Entry<String, IndexedFile> entry : record.files.entrySet()) {
+          if (stubPaths.contains(entry.getValue().stubPath)
+              && !excludedPaths.contains(entry.getKey())) {
+            owners.merge(
+                entry.getValue().stubPath,
+                entry.getKey(),
+                (path1, path2) -> path1.compareTo(path2) <= 0 ? path1 : path2);
+          }
+        }
+      }
+      for (String stubPath : stubPaths) {
+        File stubFile = new File(stubDir, stubPath);
+        String owner = owners.get(stubPath);
+        if (owner == null) {
+          stubFile.delete();
+          continue;
+        }
+        String stub = stubs.get(owner);
+        if (stub == null) {
+          ObjectId blobID = ObjectId.fromString(record.files.get(owner).blobID);
+          FileSymbols symbols = readSymbols(blobID.name());
+          if (symbols == null) {
+            symbols = summarize(reader, blobID);
+            parsed++;
+          }
+          stub = symbols.stub;
+        }
+        Utils.writeStringToFile(stub, stubFile.getAbsolutePath());
+      }
+      logger.info(
+          "Indexed "
+              + changes.size()
+              + " changed java files, "
+              + parsed
+              + " parsed, "
+              + stubPaths.size()
+              + " stubs updated");
+    } catch (IOException e) {
+      e.printStackTrace();
+      // rebuild next time
+      return parsed;
+    }
+    writeRecord(recordFile, record);
+    return parsed;
+  }
+
+  /**
+   * Compare the java files in the tree with the indexed ones, through a walk of the two trees if
+   * the indexed tree is still in the repository, so that the unchanged subtrees are skipped
+   *
+   * @return relative path : blob id, null if deleted
+   */
+  private Map<String, ObjectId> diff(
+      Repository repository, ObjectReader reader, IndexedTree record, AbstractTreeIterator tree)
+      throws IOException {
+    Map<String, ObjectId> changes = new LinkedHashMap<>();
+    try (TreeWalk walk = new TreeWalk(repository, reader)) {
+      ObjectId oldTreeID = record.treeID == null ? null : ObjectId.fromString(record.treeID);
+      boolean twoTrees = oldTreeID != null && reader.has(oldTreeID);
+      if (twoTrees) {
+        walk.addTree(new CanonicalTreeParser(null, reader, oldTreeID));
+        walk.setFilter(AndTreeFilter.create(PathSuffixFilter.create(".java"), TreeFilter.ANY_DIFF));
+      } else {
+        walk.setFilter(PathSuffixFilter.create(".java"));
+      }
+      int index = walk.addTree(tree);
+      walk.setRecursive(true);
+      Set<String> paths = new HashSet<>();
+      while (walk.next()) {
+        String path = walk.getPathString();
+        ObjectId blobID =
+            (walk.getRawMode(index) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE
+                ? walk.getObjectId(index)
+                : null;
+        IndexedFile old = record.files.get(path);
+        if (blobID == null
+            ? old != null
+            : old == null || !old.blobID.equals(blobID.name())) {
+          changes.put(path, blobID);
+        }
+        paths.add(path);
+      }
+      if (!twoTrees) {
+        for (String path : record.files.keySet()) {
+          if (!paths.contains(path)) {
+            changes.put(path, null);
+          }
+        }
+      }
+    }
+    return changes;
+  }
+
+  /** The stub is placed by the package, which is where JDT looks up the type */
+  private static String getStubPath(String path, String packageName) {
+    String fileName = new File(path).getName();
+    return packageName.isEmpty() ? fileName : packageName.replace('.', '/') + "/" + fileName;
+  }
+
+  private FileSymbols summarize(ObjectReader reader, ObjectId blobID) throws IOException {
+    byte[] content = reader.open(blobID, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+    FileSymbols symbols = summarize(new String(content, StandardCharsets.UTF_8));
+    contentStore.putArtifact(
+        blobID.name(), ARTIFACT_KIND, gson.toJson(symbols).getBytes(StandardCharsets.UTF_8));
+    return symbols;
+  }
+
+  private FileSymbols readSymbols(String blobID) {
+    byte[] data = contentStore.getArtifact(blobID, ARTIFACT_KIND);
+    if (data == null) {
+      return null;
+    }
+    try {
+      return gson.fromJson(new String(data, StandardCharsets.UTF_8), FileSymbols.class);
+    } catch (JsonParseException e) {
+      // summarize again
+      return null;
+    }
+  }
+
+  private IndexedTree readRecord(File recordFile) {
+    if (!recordFile.exists()) {
+      return null;
+    }
+    try {
+      IndexedTree record =
+          gson.fromJson(
+              new String(Files.readAllBytes(recordFile.toPath()), StandardCharsets.UTF_8),
+              IndexedTree.class);
+      return record == null || record.files == null || record.excludedPaths == null
+          ? null
+          : record;
+    } catch (IOException | JsonParseException e) {
+      logger.warn("Unreadable index record: " + recordFile.getAbsolutePath());
+      return null;
+    }
+  }
+
+  private void writeRecord(File recordFile, IndexedTree record) {
+    Utils.writeStringToFile(gson.toJson(record), recordFile.getAbsolutePath());
+  }
+
+  /**
+   * Parse the declarations in a java file, without bindings and method bodies
+   *
+   * @param content
+   * @return
+   */
+  public static FileSymbols summarize(String content) {
+    ASTParser parser = ASTParser.newParser(8);
+    Map<String, String> options = JavaCore.getOptions();
+    JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+    parser.setCompilerOptions(options);
+    parser.setKind(ASTParser.K_COMPILATION_UNIT);
+    parser.setIgnoreMethodBodies(true);
+    parser.setSource(content.toCharArray());
+    CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+
+    FileSymbols symbols = new FileSymbols();
+    if (cu.getPackage() != null) {
+      symbols.packageName = cu.getPackage().getName().getFullyQualifiedName();
+    }
+    // the bodies are already dropped by the parser
+    symbols.stub = cu.toString();
+    return symbols;
+  }
+
+  /** The declarations in one java file */
+  public static class FileSymbols {
+    public String packageName = "";
+    // the declarations without bodies
+    public String stub = "";
+  }
+
+  /** The java files indexed into the stubs of one version */
+  private static class IndexedTree {
+    // null if not a commit tree, e.g. the git index
+    private String treeID;
+    // relative path : indexed file
+    private Map<String, IndexedFile> files = new HashMap<>();
+    // the files without stubs
+    private Set<String> excludedPaths = new HashSet<>();
+  }
+
+  private static class IndexedFile {
+    private final String blobID;
+    private final String stubPath;
+
+    private IndexedFile(String blobID, String stubPath) {
+      this.blobID = blobID;
+      this.stubPath = stubPath;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.github.smartcommit.model;
+
+import org.eclipse.jdt.core.dom.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Summary of the AST nodes covered by a hunk: the node types, source ranges and labels, which
+ * does not keep the AST (and the bindings) reachable after the file is visited.
+ */
+public class CoveredNodes {
+  public static final CoveredNodes EMPTY = new CoveredNodes(new ArrayList<>());
+
+  // node types, e.g. ASTNode.METHOD_DECLARATION
+  private final int[] types;
+  private final int[] startPositions;
+  private final int[] lengths;
+  // names of the declarations (or the statement), empty for others
+  private final String[] labels;
+
+  private CoveredNodes(List<ASTNode> nodes) {
+    int size = nodes.size();
+    this.types = new int[size];
+    this.startPositions = new int[size];
+    this.lengths = new int[size];
+    this.labels = new String[size];
+    for (int i = 0; i < size; ++i) {
+      ASTNode node = nodes.get(i);
+      types[i] = node.getNodeType();
+      startPositions[i] = node.getStartPosition();
+      lengths[i] = node.getLength();
+      labels[i] = getLabel(node);
+    }
+  }
+
+  /**
+   * Summarize the covered nodes
+   *
+   * @param nodes null ones are skipped
+   * @return
+   */
+  public static CoveredNodes of(Collection<ASTNode> nodes) {
+    List<ASTNode> nonNullNodes = new ArrayList<>();
+    for (ASTNode node : nodes) {
+      if (node != null) {
+        nonNullNodes.add(node);
+      }
+    }
+    return nonNullNodes.isEmpty() ? EMPTY : new CoveredNodes(nonNullNodes);
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public boolean isEmpty() {
+    return types.length == 0;
+  }
+
+  public int getType(int index) {
+    return types[index];
+  }
+
+  /**
+   * Simple name of the node class, e.g. MethodDeclaration
+   *
+   * @param index
+   * @return
+   */
+  public String getTypeName(int index) {
+    return ASTNode.nodeClassForType(types[index]).getSimpleName();
+  }
+
+  public int getStartPosition(int index) {
+    return startPositions[index];
+  }
+
+  public int getLength(int index) {
+    return lengths[index];
+  }
+
+  public String getLabel(int index) {
+    return labels[index];
+  }
+
+  private static String getLabel(ASTNode node) {
+    switch (node.getNodeType()) {
+      case ASTNode.TYPE_DECLARATION:
+        return ((TypeDeclaration) node).getName().getIdentifier();
+      case ASTNode.ENUM_DECLARATION:
+        return ((EnumDeclaration) node).getName().getIdentifier();
+      case ASTNode.VARIABLE_DECLARATION_STATEMENT:
+        return ((VariableDeclarationFragment)
+                ((VariableDeclarationStatement) node).fragments().get(0))
+            .getName()
+            .getIdentifier();
+      case ASTNode.FIELD_DECLARATION:
+        return ((VariableDeclarationFragment) ((FieldDeclaration) node).fragments().get(0))
+            .getName()
+            .getIdentifier();
+      case ASTNode.METHOD_DECLARATION:
+        return ((MethodDeclaration) node).getName().getIdentifier();
+      case ASTNode.EXPRESSION_STATEMENT:
+        return node.toString();
+      default:
+        return "";
+    }
+  }
+}
@@ -20,8 +20,8 @@ public class DiffFile {
   private FileType fileType;
   private String baseRelativePath;
   private String currentRelativePath;
-  private String baseContent;
-  private String currentContent;
+  private FileContent baseContent;
+  private FileContent currentContent;
   private String description;
   private Map<String, DiffHunk> diffHunksMap;
   private transient List<DiffHunk> diffHunks;
@@ -37,6 +37,27 @@ public class DiffFile {
       String currentRelativePath,
       String baseContent,
       String currentContent) {
+    this(
+        index,
+        status,
+        fileType,
+        charset,
+        baseRelativePath,
+        currentRelativePath,
+        FileContent.of(baseContent),
+        FileContent.of(currentContent));
+  }
+
+  /** Constructor with the contents possibly loaded lazily */
+  public DiffFile(
+      Integer index,
+      FileStatus status,
+      FileType fileType,
+      Charset charset,
+      String baseRelativePath,
+      String currentRelativePath,
+      FileContent baseContent,
+      FileContent currentContent) {
     this.index = index;
     this.status = status;
     this.fileType = fileType;
@@ -72,8 +93,8 @@ public class DiffFile {
     this.fileType = fileType;
     this.baseRelativePath = baseRelativePath;
     this.currentRelativePath = currentRelativePath;
-    this.baseContent = baseContent;
-    this.currentContent = currentContent;
+    this.baseContent = FileContent.of(baseContent);
+    this.currentContent = FileContent.of(currentContent);
     this.diffHunksMap = diffHunksMap;
   }
 
@@ -139,11 +160,21 @@ public class DiffFile {
   }
 
   public String getBaseContent() {
-    return baseContent;
+    return baseContent == null ? null : baseContent.get();
   }
 
   public String getCurrentContent() {
-    return currentContent;
+    return currentContent == null ? null : currentContent.get();
+  }
+
+  /** Load the lazy contents into memory, before the source of them (e.g. git service) is closed */
+  public void materializeContents() {
+    if (baseContent != null) {
+      baseContent = baseContent.materialize();
+    }
+    if (currentContent != null) {
+      currentContent = currentContent.materialize();
+    }
   }
 
   public void setIndex(Integer index) {
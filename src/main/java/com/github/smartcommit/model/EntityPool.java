@@ -32,4 +32,22 @@ public class EntityPool {
     hunkInfoMap = new HashMap<>();
     importInfoMap = new HashMap<>();
   }
+
+  /**
+   * Add the entities collected into another pool, e.g. from a part of the files
+   *
+   * @param other
+   */
+  public void merge(EntityPool other) {
+    classInfoMap.putAll(other.classInfoMap);
+    interfaceInfoMap.putAll(other.interfaceInfoMap);
+    enumInfoMap.putAll(other.enumInfoMap);
+    enumConstantInfoMap.putAll(other.enumConstantInfoMap);
+    annotationInfoMap.putAll(other.annotationInfoMap);
+    methodInfoMap.putAll(other.methodInfoMap);
+    fieldInfoMap.putAll(other.fieldInfoMap);
+    initBlockInfoMap.putAll(other.initBlockInfoMap);
+    hunkInfoMap.putAll(other.hunkInfoMap);
+    importInfoMap.putAll(other.importInfoMap);
+  }
 }
@@ -0,0 +1,121 @@
+package com.github.smartcommit.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+
+/**
+ * The content of one version of a diff file, either held in memory, or loaded (from a blob or the
+ * working tree) only when it is read.
+ *
+ * <p>A lazily loaded content is only cached softly, so that the file bodies of a big changeset can
+ * be reclaimed after being read. It can be read as long as its source (e.g. the git service) is
+ * open, call {@link #materialize()} to keep it before closing the source.
+ *
+ * <p>In json, the content is always a plain string.
+ */
+@JsonAdapter(FileContent.Adapter.class)
+public class FileContent {
+  public static final FileContent EMPTY = of("");
+
+  /** Load the raw bytes of the content */
+  public interface Loader {
+    byte[] load() throws IOException;
+  }
+
+  private final String content;
+  private final Charset charset;
+  private final Loader loader;
+  private SoftReference<String> cache;
+
+  private FileContent(String content, Charset charset, Loader loader) {
+    this.content = content;
+    this.charset = charset;
+    this.loader = loader;
+    this.cache = new SoftReference<>(null);
+  }
+
+  /**
+   * Content held in memory
+   *
+   * @param content
+   * @return
+   */
+  public static FileContent of(String content) {
+    return new FileContent(content, null, null);
+  }
+
+  /**
+   * Content loaded and decoded on read
+   *
+   * @param charset
+   * @param loader
+   * @return
+   */
+  public static FileContent lazy(Charset charset, Loader loader) {
+    return new FileContent(null, charset, loader);
+  }
+
+  public boolean isLazy() {
+    return loader != null;
+  }
+
+  /**
+   * Get the content, load it if it is lazy and not cached
+   *
+   * @return
+   * @throws UncheckedIOException if failed to load, e.g. the file is changed since analyzed
+   */
+  public synchronized String get() {
+    if (loader == null) {
+      return content;
+    }
+    String loaded = cache.get();
+    if (loaded == null) {
+      try {
+        loaded = new String(loader.load(), charset);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to load content", e);
+      }
+      cache = new SoftReference<>(loaded);
+    }
+    return loaded;
+  }
+
+  /**
+   * Load the content into memory, so that it can be read after the source is closed
+   *
+   * @return
+   */
+  public FileContent materialize() {
+    return loader == null ? this : of(get());
+  }
+
+  /** Read and write the content as a plain string */
+  public static class Adapter extends TypeAdapter<FileContent> {
+    @Override
+    public void write(JsonWriter out, FileContent value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else {
+        out.value(value.get());
+      }
+    }
+
+    @Override
+    public FileContent read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return of(in.nextString());
+    }
+  }
+}
@@ -3,9 +3,7 @@ package com.github.smartcommit.model;
 import com.github.smartcommit.model.constant.ContentType;
 import com.github.smartcommit.model.constant.Version;
 import com.google.common.collect.Iterables;
-import org.eclipse.jdt.core.dom.ASTNode;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class Hunk {
@@ -15,7 +13,8 @@ public class Hunk {
   private Version version;
   private ContentType contentType;
   private List<String> codeSnippet;
-  private transient List<ASTNode> coveredNodes;
+  // summary of the covered AST nodes, set when building the entity graph
+  private transient CoveredNodes coveredNodes;
 
   public Hunk(
       Version version,
@@ -30,7 +29,7 @@ public class Hunk {
     this.endLine = endLine;
     this.contentType = contentType;
     this.codeSnippet = codeSnippet;
-    this.coveredNodes = new ArrayList<>();
+    this.coveredNodes = CoveredNodes.EMPTY;
   }
 
   public Version getVersion() {
@@ -57,11 +56,11 @@ public class Hunk {
     return contentType;
   }
 
-  public List<ASTNode> getCoveredNodes() {
+  public CoveredNodes getCoveredNodes() {
     return coveredNodes;
   }
 
-  public void setCoveredNodes(List<ASTNode> coveredNodes) {
+  public void setCoveredNodes(CoveredNodes coveredNodes) {
     this.coveredNodes = coveredNodes;
   }
 
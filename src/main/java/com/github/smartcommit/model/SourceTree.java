@@ -0,0 +1,87 @@
+package com.github.smartcommit.model;
+
+import com.github.smartcommit.model.constant.Version;
+
+import java.util.*;
+
+/**
+ * The java files in one version (base or current) of the diff files, read from the diff files in
+ * memory instead of the collected files on the disk.
+ */
+public class SourceTree {
+  private final Version version;
+  // relative path : diff file
+  private final Map<String, DiffFile> pathToDiffFile = new LinkedHashMap<>();
+
+  public SourceTree(Version version, List<DiffFile> diffFiles) {
+    this.version = version;
+    for (DiffFile diffFile : diffFiles) {
+      String path =
+          version.equals(Version.BASE)
+              ? diffFile.getBaseRelativePath()
+              : diffFile.getCurrentRelativePath();
+      if (path != null && path.endsWith(".java")) {
+        pathToDiffFile.put(path, diffFile);
+      }
+    }
+  }
+
+  public Version getVersion() {
+    return version;
+  }
+
+  /**
+   * Relative paths of the java files
+   *
+   * @return
+   */
+  public Set<String> getPaths() {
+    return pathToDiffFile.keySet();
+  }
+
+  public DiffFile getDiffFile(String relativePath) {
+    return pathToDiffFile.get(relativePath);
+  }
+
+  /**
+   * Get the content of a java file in this version
+   *
+   * @param relativePath
+   * @return null if the file is not in this version
+   */
+  public String getContent(String relativePath) {
+    DiffFile diffFile = pathToDiffFile.get(relativePath);
+    if (diffFile == null) {
+      return null;
+    }
+    return version.equals(Version.BASE) ? diffFile.getBaseContent() : diffFile.getCurrentContent();
+  }
+
+  /**
+   * Read the contents of all java files
+   *
+   * @return relative path : content
+   */
+  public Map<String, String> getContents() {
+    Map<String, String> contents = new LinkedHashMap<>();
+    for (String path : pathToDiffFile.keySet()) {
+      contents.put(path, getContent(path));
+    }
+    return contents;
+  }
+
+  /**
+   * All the dirs (and their parent dirs) that contain the java files
+   *
+   * @return relative paths of the dirs
+   */
+  public Set<String> getDirectories() {
+    Set<String> directories = new LinkedHashSet<>();
+    for (String path : pathToDiffFile.keySet()) {
+      for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+        directories.add(path.substring(0, i));
+      }
+    }
+    return directories;
+  }
+}
@@ -0,0 +1,9 @@
+package com.github.smartcommit.model.constant;
+
+/** Layout of the results saved on the disk */
+public enum ResultFormat {
+  // one json file per group or diff file, in separate dirs
+  LEGACY,
+  // one json record per line, all in one file
+  NDJSON
+}
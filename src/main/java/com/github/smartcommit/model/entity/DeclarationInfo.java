@@ -1,7 +1,6 @@
 package com.github.smartcommit.model.entity;
 
 import com.github.smartcommit.model.graph.Node;
-import org.eclipse.jdt.core.dom.IMethodBinding;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -23,7 +22,7 @@ public class DeclarationInfo {
 
   // use internal
   public Set<String> typeUses = new HashSet<>(); // AbstractType, including Type, Enum, Annotation
-  public Set<IMethodBinding> methodCalls = new HashSet<>();
+  public Set<String> methodCalls = new HashSet<>(); // binding keys of the called methods
   public Set<String> fieldUses = new HashSet<>();
   public Set<String> paraUses = new HashSet<>();
   public Set<String> localVarUses = new HashSet<>();
@@ -1,15 +1,12 @@
 package com.github.smartcommit.model.entity;
 
-import org.eclipse.jdt.core.dom.ASTNode;
-
-import java.util.LinkedHashSet;
-import java.util.Set;
+import com.github.smartcommit.model.CoveredNodes;
 
 public class HunkInfo extends DeclarationInfo {
   public String identifier = "-1:-1";
   public Integer fileIndex = -1;
   public Integer hunkIndex = -1;
-  public Set<ASTNode> coveredNodes = new LinkedHashSet<>();
+  public CoveredNodes coveredNodes = CoveredNodes.EMPTY;
 
   public HunkInfo(Integer fileIndex, Integer hunkIndex) {
     this.fileIndex = fileIndex;
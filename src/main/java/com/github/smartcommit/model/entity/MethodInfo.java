@@ -1,7 +1,5 @@
 package com.github.smartcommit.model.entity;
 
-import org.eclipse.jdt.core.dom.IMethodBinding;
-
 import java.util.HashSet;
 import java.util.Set;
 
@@ -24,7 +22,7 @@ public class MethodInfo extends DeclarationInfo {
   public Set<String> paramTypes = new HashSet<>();
   public Set<String> exceptionThrows = new HashSet<>();
 
-  public IMethodBinding methodBinding;
+  public String bindingKey; // null if the binding is not resolved
 
   public String uniqueName() {
     return belongTo + ":" + name + "(" + paramString + ")";
@@ -0,0 +1,193 @@
+package com.github.smartcommit.model.graph;
+
+import org.jgrapht.Graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only copy of a built entity graph in the compressed sparse row layout: the nodes and edges
+ * are numbered from 0 in the order of the vertex and edge sets, their attributes are kept in
+ * primitive arrays, and the incoming and outgoing edges of each node are slices of two edge arrays.
+ */
+public class CompactGraph {
+  private static final NodeType[] NODE_TYPES = NodeType.values();
+  private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+  // node attributes, by node index
+  private final int[] nodeIds;
+  private final byte[] nodeTypes;
+  // null if the node is not in any diff hunk
+  private final String[] diffHunkIndices;
+  // indices of the nodes in diff hunks, in order
+  private final int[] hunkNodes;
+
+  // edge attributes, by edge index
+  private final int[] edgeIds;
+  private final byte[] edgeTypes;
+  private final int[] edgeWeights;
+  private final int[] edgeSources;
+  private final int[] edgeTargets;
+
+  // the outgoing edges of node v are outEdges[outOffsets[v]] .. outEdges[outOffsets[v + 1] - 1]
+  private final int[] outOffsets;
+  private final int[] outEdges;
+  private final int[] inOffsets;
+  private final int[] inEdges;
+
+  private CompactGraph(Graph<Node, Edge> graph) {
+    int nodeCount = graph.vertexSet().size();
+    int edgeCount = graph.edgeSet().size();
+
+    nodeIds = new int[nodeCount];
+    nodeTypes = new byte[nodeCount];
+    diffHunkIndices = new String[nodeCount];
+    Map<Node, Integer> indices = new HashMap<>(nodeCount * 2);
+    int hunkNodeCount = 0;
+    for (Node node : graph.vertexSet()) {
+      int v = indices.size();
+      indices.put(node, v);
+      nodeIds[v] = node.getId();
+      nodeTypes[v] = (byte) node.getType().ordinal();
+      if (node.isInDiffHunk) {
+        diffHunkIndices[v] = node.getDiffHunkIndex();
+        hunkNodeCount++;
+      }
+    }
+    hunkNodes = new int[hunkNodeCount];
+    for (int v = 0, i = 0; v < nodeCount; ++v) {
+      if (diffHunkIndices[v] != null) {
+        hunkNodes[i++] = v;
+      }
+    }
+
+    edgeIds = new int[edgeCount];
+    edgeTypes = new byte[edgeCount];
+    edgeWeights = new int[edgeCount];
+    edgeSources = new int[edgeCount];
+    edgeTargets = new int[edgeCount];
+    int e = 0;
+    for (Edge edge : graph.edgeSet()) {
+      edgeIds[e] = edge.getId();
+      edgeTypes[e] = (byte) edge.getType().ordinal();
+      edgeWeights[e] = edge.getWeight();
+      edgeSources[e] = indices.get(graph.getEdgeSource(edge));
+      edgeTargets[e] = indices.get(graph.getEdgeTarget(edge));
+      e++;
+    }
+
+    outOffsets = new int[nodeCount + 1];
+    outEdges = new int[edgeCount];
+    inOffsets = new int[nodeCount + 1];
+    inEdges = new int[edgeCount];
+    fillAdjacency(edgeSources, outOffsets, outEdges);
+    fillAdjacency(edgeTargets, inOffsets, inEdges);
+  }
+
+  /**
+   * Convert the built graph, which should not be changed afterwards
+   *
+   * @param graph
+   * @return
+   */
+  public static CompactGraph freeze(Graph<Node, Edge> graph) {
+    return new CompactGraph(graph);
+  }
+
+  /** Counting sort of the edges by the end node, keeping the edge order for each node */
+  private static void fillAdjacency(int[] ends, int[] offsets, int[] adjacentEdges) {
+    for (int end : ends) {
+      offsets[end + 1]++;
+    }
+    for (int v = 0; v + 1 < offsets.length; ++v) {
+      offsets[v + 1] += offsets[v];
+    }
+    int[] next = offsets.clone();
+    for (int e = 0; e < ends.length; ++e) {
+      adjacentEdges[next[ends[e]]++] = e;
+    }
+  }
+
+  public int nodeCount() {
+    return nodeIds.length;
+  }
+
+  public int edgeCount() {
+    return edgeIds.length;
+  }
+
+  /**
+   * Indices of the nodes in diff hunks, in the order of the vertex set
+   *
+   * @return
+   */
+  public int[] getHunkNodes() {
+    return hunkNodes.clone();
+  }
+
+  public int getNodeId(int node) {
+    return nodeIds[node];
+  }
+
+  public NodeType getNodeType(int node) {
+    return NODE_TYPES[nodeTypes[node]];
+  }
+
+  public boolean isInDiffHunk(int node) {
+    return diffHunkIndices[node] != null;
+  }
+
+  public String getDiffHunkIndex(int node) {
+    return diffHunkIndices[node] == null ? "" : diffHunkIndices[node];
+  }
+
+  public int getEdgeId(int edge) {
+    return edgeIds[edge];
+  }
+
+  public EdgeType getEdgeType(int edge) {
+    return EDGE_TYPES[edgeTypes[edge]];
+  }
+
+  public int getEdgeWeight(int edge) {
+    return edgeWeights[edge];
+  }
+
+  public int getEdgeSource(int edge) {
+    return edgeSources[edge];
+  }
+
+  public int getEdgeTarget(int edge) {
+    return edgeTargets[edge];
+  }
+
+  public int outDegreeOf(int node) {
+    return outOffsets[node + 1] - outOffsets[node];
+  }
+
+  /**
+   * Get the i-th outgoing edge of the node
+   *
+   * @param node
+   * @param i from 0 to outDegreeOf(node) - 1
+   * @return
+   */
+  public int getOutgoingEdge(int node, int i) {
+    return outEdges[outOffsets[node] + i];
+  }
+
+  public int inDegreeOf(int node) {
+    return inOffsets[node + 1] - inOffsets[node];
+  }
+
+  /**
+   * Get the i-th incoming edge of the node
+   *
+   * @param node
+   * @param i from 0 to inDegreeOf(node) - 1
+   * @return
+   */
+  public int getIncomingEdge(int node, int i) {
+    return inEdges[inOffsets[node] + i];
+  }
+}
@@ -15,6 +15,10 @@ public class Edge {
     return id;
   }
 
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
   public Integer getWeight() {
     return weight;
   }
@@ -0,0 +1,36 @@
+package com.github.smartcommit.model.graph;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocate the ids of the nodes and edges in one graph, and intern the package nodes, which is
+ * safe to share among the threads that build the graph.
+ */
+public class IdAllocator {
+  // start from 1, 0 preserved for the project
+  private final AtomicInteger nodeID = new AtomicInteger(1);
+  private final AtomicInteger edgeID = new AtomicInteger(1);
+  // package name : package node
+  private final ConcurrentMap<String, Node> pkgNodes = new ConcurrentHashMap<>();
+
+  public Integer nextNodeID() {
+    return nodeID.getAndIncrement();
+  }
+
+  public Integer nextEdgeID() {
+    return edgeID.getAndIncrement();
+  }
+
+  /**
+   * Get the only node of the package, created on the first request
+   *
+   * @param packageName
+   * @return
+   */
+  public Node getOrCreatePkgNode(String packageName) {
+    return pkgNodes.computeIfAbsent(
+        packageName, name -> new Node(nextNodeID(), NodeType.PACKAGE, name, name));
+  }
+}
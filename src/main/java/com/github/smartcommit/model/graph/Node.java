@@ -24,6 +24,10 @@ public class Node {
     return id;
   }
 
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
   public NodeType getType() {
     return type;
   }
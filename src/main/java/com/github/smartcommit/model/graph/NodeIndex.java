@@ -0,0 +1,100 @@
+package com.github.smartcommit.model.graph;
+
+import java.util.*;
+
+/**
+ * Index of the nodes in the entity graph, maintained while the nodes are created, for lookups by
+ * qualified name, identifier or identifier suffix. As with a scan over the vertex set, the first
+ * added node is returned if several match.
+ */
+public class NodeIndex {
+  // node : the order in which it is added
+  private final Map<Node, Integer> orders = new HashMap<>();
+  // type : qualified name : first node
+  private final Map<NodeType, Map<String, Node>> qualifiedNameIndex = new EnumMap<>(NodeType.class);
+  // identifier : first node of any type
+  private final Map<String, Node> identifierIndex = new HashMap<>();
+  // type : reversed identifier : first node, so that a suffix becomes a prefix range
+  private final Map<NodeType, TreeMap<String, Node>> suffixIndex = new EnumMap<>(NodeType.class);
+
+  /**
+   * Index a node just added into the graph
+   *
+   * @param node
+   */
+  public void add(Node node) {
+    if (orders.containsKey(node)) {
+      return;
+    }
+    orders.put(node, orders.size());
+    qualifiedNameIndex
+        .computeIfAbsent(node.getType(), type -> new HashMap<>())
+        .putIfAbsent(node.getQualifiedName(), node);
+    identifierIndex.putIfAbsent(node.getIdentifier(), node);
+    suffixIndex
+        .computeIfAbsent(node.getType(), type -> new TreeMap<>())
+        .putIfAbsent(reverse(node.getIdentifier()), node);
+  }
+
+  /**
+   * Find the node with the qualified name in one of the types
+   *
+   * @param qualifiedName
+   * @param types
+   * @return the first added one if multiple exist
+   */
+  public Optional<Node> findByQualifiedName(String qualifiedName, NodeType... types) {
+    Node result = null;
+    for (NodeType type : types) {
+      Map<String, Node> nodes = qualifiedNameIndex.get(type);
+      if (nodes != null) {
+        result = first(result, nodes.get(qualifiedName));
+      }
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /**
+   * Find the node with the identifier in any type
+   *
+   * @param identifier
+   * @return
+   */
+  public Optional<Node> findByIdentifier(String identifier) {
+    return Optional.ofNullable(identifierIndex.get(identifier));
+  }
+
+  /**
+   * Find the node of the type whose identifier ends with the suffix, e.g. the simple name
+   *
+   * @param suffix
+   * @param type
+   * @return the first added one if multiple exist
+   */
+  public Optional<Node> findByIdentifierSuffix(String suffix, NodeType type) {
+    TreeMap<String, Node> nodes = suffixIndex.get(type);
+    if (nodes == null) {
+      return Optional.empty();
+    }
+    String prefix = reverse(suffix);
+    Node result = null;
+    for (Node node : nodes.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+      result = first(result, node);
+    }
+    return Optional.ofNullable(result);
+  }
+
+  private Node first(Node a, Node b) {
+    if (a == null) {
+      return b;
+    }
+    if (b == null) {
+      return a;
+    }
+    return orders.get(a) <= orders.get(b) ? a : b;
+  }
+
+  private static String reverse(String s) {
+    return new StringBuilder(s).reverse().toString();
+  }
+}
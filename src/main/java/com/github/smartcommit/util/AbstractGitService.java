@@ -0,0 +1,376 @@
+package com.github.smartcommit.util;
+
+import com.github.smartcommit.model.Action;
+import com.github.smartcommit.model.DiffFile;
+import com.github.smartcommit.model.DiffHunk;
+import com.github.smartcommit.model.constant.*;
+import com.github.smartcommit.util.diffparser.api.ByteUnifiedDiffParser;
+import com.github.smartcommit.util.diffparser.api.model.Diff;
+import com.github.smartcommit.util.diffparser.api.model.Hunk;
+import com.github.smartcommit.util.diffparser.api.model.Line;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.jgit.util.QuotedString;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** Shared logic to build diff hunks from the unified diff output, for both git backends. */
+public abstract class AbstractGitService implements GitService {
+  private FileTypeClassifier fileTypeClassifier;
+  // filter the changed files in the working tree
+  private PathPatterns pathPatterns = PathPatterns.ALL;
+
+  public PathPatterns getPathPatterns() {
+    return pathPatterns;
+  }
+
+  /**
+   * Only analyze the changed files in the working tree that match the patterns, the excluded dirs
+   * are skipped without listing or reading their files
+   *
+   * @param pathPatterns
+   */
+  public void setPathPatterns(PathPatterns pathPatterns) {
+    this.pathPatterns = pathPatterns;
+  }
+
+  /**
+   * Check the type of a changed file in the working tree
+   *
+   * @param repoPath
+   * @param filePath
+   * @return
+   */
+  protected FileType checkFileType(String repoPath, String filePath) {
+    return getFileTypeClassifier(repoPath).classify(removeVersionLabel(filePath));
+  }
+
+  /**
+   * Get the classifier of the repo, which caches the verdicts during the analysis
+   *
+   * @param repoPath
+   * @return
+   */
+  protected FileTypeClassifier getFileTypeClassifier(String repoPath) {
+    if (fileTypeClassifier == null || !fileTypeClassifier.getRepoPath().equals(repoPath)) {
+      fileTypeClassifier = new FileTypeClassifier(repoPath);
+    }
+    return fileTypeClassifier;
+  }
+
+  /**
+   * Parse the raw unified diff output (with -U0) into diffs
+   *
+   * @param diffOutput
+   * @param charsetOfSection the charset of each file section by its "diff --git " line
+   * @return
+   */
+  protected List<Diff> parseDiffs(byte[] diffOutput, Function<String, Charset> charsetOfSection) {
+    // with -U0 (no context lines), the generated patch cannot be applied successfully
+    return new ByteUnifiedDiffParser(charsetOfSection).parse(diffOutput);
+  }
+
+  /**
+   * Parse the raw unified diff output of many files (e.g. of a commit) with UTF-8, the file
+   * sections are parsed in parallel
+   *
+   * @param diffOutput
+   * @return the diffs in the order of the output
+   */
+  protected List<Diff> parseDiffsInParallel(byte[] diffOutput) {
+    return new ByteUnifiedDiffParser().parseInParallel(diffOutput);
+  }
+
+  protected DiffHunk createDiffHunkForBinaryFile(DiffFile diffFile) {
+    ChangeType changeType =
+        diffFile.getStatus().equals(FileStatus.DELETED) ? ChangeType.DELETED : ChangeType.MODIFIED;
+    DiffHunk diffHunk =
+        new DiffHunk(
+            0,
+            diffFile.getFileType(),
+            changeType,
+            new com.github.smartcommit.model.Hunk(
+                Version.BASE,
+                diffFile.getBaseRelativePath(),
+                0,
+                0,
+                ContentType.BINARY,
+                new ArrayList<>()),
+            new com.github.smartcommit.model.Hunk(
+                Version.CURRENT,
+                diffFile.getCurrentRelativePath(),
+                0,
+                0,
+                ContentType.BINARY,
+                new ArrayList<>()),
+            changeType.label
+                + " "
+                + diffFile.getFileType().label
+                + " File:"
+                + diffFile.getBaseRelativePath());
+    diffHunk.addASTAction(
+        new Action(
+            (changeType.equals(ChangeType.DELETED) ? Operation.DEL : Operation.UPD),
+            "Binary",
+            "",
+            "File",
+            diffFile.getCurrentRelativePath()));
+    return diffHunk;
+  }
+
+  /**
+   * Generate diff hunks from diffs parsed from git-diff output
+   *
+   * @param diffs
+   * @return
+   */
+  protected List<DiffHunk> generateDiffHunks(
+      String repoPath, List<Diff> diffs, List<DiffFile> diffFiles) {
+    DiffHunkGenerator generator = new DiffHunkGenerator(repoPath, diffFiles);
+    diffs.forEach(generator);
+    return generator.getDiffHunks();
+  }
+
+  /**
+   * Generate the diff hunks of each diff as soon as it is parsed, so that the diff hunks are built
+   * while git is still printing the diff of the next files
+   */
+  protected class DiffHunkGenerator implements Consumer<Diff> {
+    private final String repoPath;
+    private final List<DiffHunk> allDiffHunks = new ArrayList<>();
+    // (base path, current path) : diff file
+    private final Map<Pair<String, String>, DiffFile> pathsToDiffFile = new HashMap<>();
+
+    public DiffHunkGenerator(String repoPath, List<DiffFile> diffFiles) {
+      this.repoPath = repoPath;
+      for (DiffFile diffFile : diffFiles) {
+        if (diffFile.getStatus().equals(FileStatus.ADDED)
+            || diffFile.getStatus().equals(FileStatus.UNTRACKED)) {
+          List<String> lines = Utils.convertStringToList(diffFile.getCurrentContent());
+          DiffHunk diffHunk =
+              new DiffHunk(
+                  0,
+                  diffFile.getFileType(),
+                  ChangeType.ADDED,
+                  new com.github.smartcommit.model.Hunk(
+                      Version.BASE, "", 0, -1, ContentType.EMPTY, new ArrayList<>()),
+                  new com.github.smartcommit.model.Hunk(
+                      Version.CURRENT,
+                      diffFile.getCurrentRelativePath(),
+                      1,
+                      lines.size(),
+                      Utils.checkContentType(lines),
+                      lines),
+                  "Add "
+                      + diffFile.getFileType().label
+                      + " File:"
+                      + diffFile.getCurrentRelativePath());
+          diffHunk.addASTAction(
+              new Action(Operation.ADD, "", "", "File", diffFile.getCurrentRelativePath()));
+
+          // bidirectional binding
+          diffHunk.setFileIndex(diffFile.getIndex());
+          List<DiffHunk> diffHunksInFile = new ArrayList<>();
+          diffHunksInFile.add(diffHunk);
+          allDiffHunks.add(diffHunk);
+          diffFile.setDiffHunks(diffHunksInFile);
+        }
+      }
+
+      for (DiffFile diffFile : diffFiles) {
+        pathsToDiffFile.put(
+            Pair.of(diffFile.getBaseRelativePath(), diffFile.getCurrentRelativePath()), diffFile);
+      }
+    }
+
+    /**
+     * Generate the diff hunks of one diff (file section), and save them into the diff file
+     *
+     * @param diff
+     */
+    @Override
+    public void accept(Diff diff) {
+      // the hunkIndex of the diff hunk in the current file diff, start from 0
+      Integer hunkIndex = 0;
+
+      // the paths are quoted if they have special or non-ASCII characters
+      String baseFilePath = unquotePath(diff.getFromFileName());
+      String currentFilePath = unquotePath(diff.getToFileName());
+
+      List<String> headers = diff.getHeaderLines();
+      headers.add("--- " + diff.getFromFileName());
+      headers.add("+++ " + diff.getToFileName());
+
+      DiffFile diffFile =
+          pathsToDiffFile.get(
+              Pair.of(removeVersionLabel(baseFilePath), removeVersionLabel(currentFilePath)));
+      // currently we only process Java files
+      FileType fileType;
+      if (diffFile != null) {
+        fileType = diffFile.getFileType();
+      } else {
+        fileType =
+            baseFilePath.contains("/dev/null")
+                ? checkFileType(repoPath, currentFilePath) // ADDED/UNTRACKED
+                : checkFileType(repoPath, baseFilePath);
+      }
+
+      // collect and save diff hunks into diff files
+      List<DiffHunk> diffHunksInFile = new ArrayList<>();
+      for (Hunk hunk : diff.getHunks()) {
+        List<List<String>> hunkLines = splitHunkLines(hunk.getLines());
+        List<String> baseCodeLines = hunkLines.get(1);
+        List<String> currentCodeLines = hunkLines.get(2);
+        int leadingNeutral = hunkLines.get(0).size();
+        int trailingNeutral = hunkLines.get(3).size();
+        com.github.smartcommit.model.Hunk baseHunk =
+            new com.github.smartcommit.model.Hunk(
+                Version.BASE,
+                removeVersionLabel(baseFilePath),
+                // with -U0, leadingNeutral = 0 = trailingNeutral
+                hunk.getFromFileRange().getLineStart() + leadingNeutral,
+                hunk.getFromFileRange().getLineStart()
+                    + leadingNeutral
+                    + hunk.getFromFileRange().getLineCount()
+                    - leadingNeutral
+                    - trailingNeutral
+                    - 1,
+                Utils.checkContentType(baseCodeLines),
+                baseCodeLines);
+        com.github.smartcommit.model.Hunk currentHunk =
+            new com.github.smartcommit.model.Hunk(
+                Version.CURRENT,
+                removeVersionLabel(currentFilePath),
+                hunk.getToFileRange().getLineStart() + leadingNeutral,
+                hunk.getToFileRange().getLineStart()
+                    + leadingNeutral
+                    + hunk.getToFileRange().getLineCount()
+                    - leadingNeutral
+                    - trailingNeutral
+                    - 1,
+                Utils.checkContentType(currentCodeLines),
+                currentCodeLines);
+        ChangeType changeType = ChangeType.MODIFIED;
+        if (baseCodeLines.isEmpty()) {
+          changeType = ChangeType.ADDED;
+        }
+        if (currentCodeLines.isEmpty()) {
+          changeType = ChangeType.DELETED;
+        }
+        DiffHunk diffHunk = new DiffHunk(hunkIndex, fileType, changeType, baseHunk, currentHunk);
+        diffHunk.setRawDiffs(hunk.getRawLines());
+        diffHunksInFile.add(diffHunk);
+        allDiffHunks.add(diffHunk);
+        hunkIndex++;
+      }
+
+      // bidirectional binding
+      if (diffFile != null) {
+        diffHunksInFile.forEach(diffHunk -> diffHunk.setFileIndex(diffFile.getIndex()));
+        diffFile.setDiffHunks(diffHunksInFile);
+        diffFile.setRawHeaders(headers);
+      }
+    }
+
+    /** @return all the diff hunks generated so far */
+    public List<DiffHunk> getDiffHunks() {
+      return allDiffHunks;
+    }
+  }
+
+  /**
+   * Split the raw hunk lines into 0 (leading neutral), 1 (from), 2 (to), 3 (trailing neural)
+   *
+   * @param lines
+   * @return
+   */
+  protected List<List<String>> splitHunkLines(List<Line> lines) {
+    List<List<String>> result = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      result.add(new ArrayList<>());
+    }
+
+    boolean trailing = false;
+    // to handle case where two neighboring diff hunks are merged if the lines between them are less
+    // than the -Ux
+    boolean isLastLineNeutral = true;
+    for (int i = 0; i < lines.size(); ++i) {
+      Line line = lines.get(i);
+      switch (line.getLineType()) {
+        case NEUTRAL:
+          boolean isNextLineNeutral = true;
+          if (!isLastLineNeutral) {
+            // check if the neutral lies between two non-netural lines
+            if (i + 1 < lines.size()) {
+              Line nextLine = lines.get(i + 1);
+              isNextLineNeutral = nextLine.getLineType().equals(Line.LineType.NEUTRAL);
+            }
+          }
+          if (!isLastLineNeutral && !isNextLineNeutral) {
+            isLastLineNeutral = true;
+            continue;
+          } else {
+            if (!line.getContent().trim().equals("\\ No newline at end of file")) {
+              if (trailing) {
+                result.get(3).add(line.getContent());
+              } else {
+                result.get(0).add(line.getContent());
+              }
+              isLastLineNeutral = true;
+            }
+          }
+          break;
+        case FROM:
+          result.get(1).add(line.getContent());
+          trailing = true;
+          isLastLineNeutral = false;
+          break;
+        case TO:
+          result.get(2).add(line.getContent());
+          trailing = true;
+          isLastLineNeutral = false;
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove the quotes around a path printed in Git, e.g. "a/\303\251.txt" to a/é.txt
+   *
+   * @param gitFilePath
+   * @return the path as is if not quoted
+   */
+  protected String unquotePath(String gitFilePath) {
+    String trimmedPath = gitFilePath.trim();
+    if (trimmedPath.length() >= 2 && trimmedPath.startsWith("\"") && trimmedPath.endsWith("\"")) {
+      return QuotedString.GIT_PATH.dequote(trimmedPath);
+    }
+    return gitFilePath;
+  }
+
+  /**
+   * Remove the "a/" or "b/" at the beginning of the path printed in Git
+   *
+   * @return
+   */
+  protected String removeVersionLabel(String gitFilePath) {
+    String trimmedPath = gitFilePath.trim();
+    if (trimmedPath.startsWith("a/")) {
+      return gitFilePath.replaceFirst("a/", "");
+    }
+    if (trimmedPath.startsWith("b/")) {
+      return gitFilePath.replaceFirst("b/", "");
+    }
+    if (trimmedPath.equals("/dev/null")) {
+      return "";
+    }
+    return gitFilePath;
+  }
+}
@@ -0,0 +1,185 @@
+package com.github.smartcommit.util;
+
+import com.github.smartcommit.model.constant.FileType;
+import org.eclipse.jgit.attributes.Attribute;
+import org.eclipse.jgit.attributes.AttributesNode;
+import org.eclipse.jgit.attributes.AttributesRule;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classify changed files as binary or text (by extension) in the JVM, the same way as git diff:
+ * by the binary/diff rules in .gitattributes, otherwise by looking for NUL in the first 8000 bytes
+ * (the text attribute only controls the line endings, not the diff).
+ *
+ * <p>Verdicts are cached by path and blob id (or the size and mtime for working tree files), so
+ * that each file is classified only once in one analysis.
+ */
+public class FileTypeClassifier {
+  // the same as the FIRST_FEW_BYTES in git
+  static final int PREFIX_LENGTH = 8000;
+
+  private final String repoPath;
+  // path@id : type
+  private final Map<String, FileType> cache = new ConcurrentHashMap<>();
+  // relative dir path : rules in the .gitattributes under it, null if not exists
+  private final Map<String, AttributesNode> attributesNodes = new HashMap<>();
+  private final AttributesNode infoAttributesNode;
+
+  public FileTypeClassifier(String repoPath) {
+    this.repoPath = repoPath;
+    this.infoAttributesNode =
+        loadAttributes(Paths.get(repoPath, ".git", "info", "attributes").toFile());
+  }
+
+  public String getRepoPath() {
+    return repoPath;
+  }
+
+  /**
+   * Classify a file in the working tree (by extension if it does not exist on disk)
+   *
+   * @param relativePath
+   * @return
+   */
+  public FileType classify(String relativePath) {
+    File file = new File(repoPath, relativePath);
+    String key =
+        file.isFile()
+            ? relativePath + "@" + file.length() + ":" + file.lastModified()
+            : relativePath;
+    return cache.computeIfAbsent(
+        key,
+        k -> {
+          Boolean binary = checkAttributes(relativePath);
+          if (binary == null) {
+            binary = file.isFile() && isBinary(readPrefix(file));
+          }
+          return binary ? FileType.BIN : Utils.checkFileTypeByExtension(relativePath);
+        });
+  }
+
+  /**
+   * Classify a blob whose content is already loaded
+   *
+   * @param relativePath
+   * @param blobID
+   * @param content
+   * @return
+   */
+  public FileType classify(String relativePath, String blobID, byte[] content) {
+    return cache.computeIfAbsent(
+        relativePath + "@" + blobID,
+        k -> {
+          Boolean binary = checkAttributes(relativePath);
+          if (binary == null) {
+            binary = isBinary(content);
+          }
+          return binary ? FileType.BIN : Utils.checkFileTypeByExtension(relativePath);
+        });
+  }
+
+  /**
+   * Whether the content contains NUL in the first 8000 bytes
+   *
+   * @param content
+   * @return
+   */
+  public static boolean isBinary(byte[] content) {
+    int length = Math.min(content.length, PREFIX_LENGTH);
+    for (int i = 0; i < length; ++i) {
+      if (content[i] == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check the attributes of a path: "binary" or "-diff" means binary, "diff" means text
+   *
+   * @param relativePath
+   * @return null if not specified
+   */
+  private Boolean checkAttributes(String relativePath) {
+    Map<String, Attribute.State> states = new HashMap<>();
+    // rules in deeper dirs override the ones in upper dirs, info/attributes overrides all
+    String[] segments = relativePath.split("/");
+    StringBuilder dir = new StringBuilder();
+    for (int i = 0; i < segments.length; ++i) {
+      String target = relativePath.substring(dir.length());
+      applyRules(getAttributesNode(dir.toString()), target, states);
+      dir.append(segments[i]).append("/");
+    }
+    applyRules(infoAttributesNode, relativePath, states);
+
+    if (states.get("binary") == Attribute.State.SET
+        || states.get("diff") == Attribute.State.UNSET) {
+      return true;
+    }
+    if (states.get("diff") == Attribute.State.SET) {
+      return false;
+    }
+    return null;
+  }
+
+  private void applyRules(
+      AttributesNode node, String relativePath, Map<String, Attribute.State> states) {
+    if (node == null) {
+      return;
+    }
+    for (AttributesRule rule : node.getRules()) {
+      if (rule.isMatch(relativePath, false)) {
+        for (Attribute attribute : rule.getAttributes()) {
+          states.put(attribute.getKey(), attribute.getState());
+        }
+      }
+    }
+  }
+
+  private synchronized AttributesNode getAttributesNode(String relativeDir) {
+    if (!attributesNodes.containsKey(relativeDir)) {
+      attributesNodes.put(
+          relativeDir, loadAttributes(new File(repoPath, relativeDir + ".gitattributes")));
+    }
+    return attributesNodes.get(relativeDir);
+  }
+
+  private AttributesNode loadAttributes(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    AttributesNode node = new AttributesNode();
+    try (InputStream in = new FileInputStream(file)) {
+      node.parse(in);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+    return node;
+  }
+
+  private byte[] readPrefix(File file) {
+    byte[] prefix = new byte[(int) Math.min(file.length(), PREFIX_LENGTH)];
+    try (InputStream in = new FileInputStream(file)) {
+      int offset = 0;
+      while (offset < prefix.length) {
+        int count = in.read(prefix, offset, prefix.length - offset);
+        if (count < 0) {
+          break;
+        }
+        offset += count;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return prefix;
+  }
+}
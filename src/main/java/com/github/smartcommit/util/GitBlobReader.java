@@ -0,0 +1,195 @@
+package com.github.smartcommit.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Read blob contents with one long-lived `git cat-file --batch` process per repository, instead
+ * of forking one `git show` for each file.
+ *
+ * <p>The requests of a batch (e.g. the leading bytes of all the changed blobs to classify them) are
+ * written by a separate thread so that requests and responses are pipelined without blocking each
+ * other on the pipe, a single request is written inline.
+ */
+public class GitBlobReader implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(GitBlobReader.class);
+
+  private final String repoPath;
+  private Process process;
+  private OutputStream stdin;
+  private InputStream stdout;
+
+  public GitBlobReader(String repoPath) {
+    this.repoPath = repoPath;
+  }
+
+  public String getRepoPath() {
+    return repoPath;
+  }
+
+  /**
+   * Read the leading bytes of a list of objects (e.g. HEAD:path or commit:path) in one batch
+   *
+   * @param objectNames
+   * @param maxLength the max number of bytes to keep of each object, the rest is skipped
+   * @return object name : content (empty if the object is missing)
+   */
+  public synchronized Map<String, byte[]> readAll(Collection<String> objectNames, int maxLength) {
+    Map<String, byte[]> results = new LinkedHashMap<>();
+    Set<String> requests = new LinkedHashSet<>(objectNames);
+    if (requests.isEmpty()) {
+      return results;
+    }
+    try {
+      start();
+      Thread writer = new Thread(() -> writeRequests(requests), "git-cat-file-writer");
+      writer.setDaemon(true);
+      writer.start();
+      for (String name : requests) {
+        results.put(name, readResponse(maxLength));
+      }
+      writer.join();
+    } catch (IOException | InterruptedException e) {
+      e.printStackTrace();
+      // the process is in an unknown state, restart it for the next request
+      stop();
+      for (String name : requests) {
+        results.putIfAbsent(name, new byte[0]);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Read the content of one object
+   *
+   * @param objectName
+   * @return empty if the object is missing
+   */
+  public synchronized byte[] read(String objectName) {
+    try {
+      return load(objectName);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new byte[0];
+    }
+  }
+
+  /**
+   * Read the content of one object, failing if the process fails
+   *
+   * @param objectName
+   * @return empty if the object is missing
+   * @throws IOException if failed to talk to git cat-file
+   */
+  public synchronized byte[] load(String objectName) throws IOException {
+    try {
+      start();
+      // one line is buffered by the pipe, no need to write it in another thread
+      writeRequests(Collections.singletonList(objectName));
+      return readResponse(Integer.MAX_VALUE);
+    } catch (IOException e) {
+      // the process is in an unknown state, restart it for the next request
+      stop();
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    stop();
+  }
+
+  private void start() throws IOException {
+    if (process != null && process.isAlive()) {
+      return;
+    }
+    process =
+        new ProcessBuilder("git", "cat-file", "--batch")
+            .directory(new File(repoPath))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    stdin = new BufferedOutputStream(process.getOutputStream());
+    stdout = new BufferedInputStream(process.getInputStream());
+  }
+
+  private void stop() {
+    if (process != null) {
+      try {
+        stdin.close();
+      } catch (IOException e) {
+        // already closed
+      }
+      process.destroy();
+      process = null;
+    }
+  }
+
+  private void writeRequests(Collection<String> requests) {
+    try {
+      for (String name : requests) {
+        stdin.write((name + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      stdin.flush();
+    } catch (IOException e) {
+      logger.error("Failed to write to git cat-file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Read one response: "<sha> <type> <size>\n<content>\n" or "<name> missing\n"
+   *
+   * @param maxLength the max number of bytes to keep of the content
+   * @return
+   */
+  private byte[] readResponse(int maxLength) throws IOException {
+    String header = readLine();
+    if (header == null) {
+      throw new EOFException("git cat-file exited unexpectedly");
+    }
+    String[] fields = header.split(" ");
+    // "<name> missing" or "<name> ambiguous"
+    if (fields.length != 3 || !fields[2].chars().allMatch(Character::isDigit)) {
+      return new byte[0];
+    }
+    long size = Long.parseLong(fields[2]);
+    byte[] content = new byte[(int) Math.min(size, maxLength)];
+    int offset = 0;
+    while (offset < content.length) {
+      int count = stdout.read(content, offset, content.length - offset);
+      if (count < 0) {
+        throw new EOFException("git cat-file exited unexpectedly");
+      }
+      offset += count;
+    }
+    // skip the rest and the trailing LF
+    long rest = size - content.length + 1;
+    while (rest > 0) {
+      long skipped = stdout.skip(rest);
+      if (skipped <= 0) {
+        // skip() may stop early, read() tells whether the stream ends
+        if (stdout.read() < 0) {
+          throw new EOFException("git cat-file exited unexpectedly");
+        }
+        skipped = 1;
+      }
+      rest -= skipped;
+    }
+    return content;
+  }
+
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = stdout.read()) != -1 && b != '\n') {
+      line.write(b);
+    }
+    if (b == -1 && line.size() == 0) {
+      return null;
+    }
+    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
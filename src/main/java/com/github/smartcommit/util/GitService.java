@@ -8,7 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 /** A list of helper functions related with Git */
-public interface GitService {
+public interface GitService extends AutoCloseable {
   /**
    * Get the diff files in the current working tree
    *
@@ -72,4 +72,8 @@ public interface GitService {
    * @return
    */
   String getCommitterEmail(String repoDir, String commitID);
+
+  /** Release the resources (e.g. opened repository or processes) held by the service */
+  @Override
+  default void close() {}
 }
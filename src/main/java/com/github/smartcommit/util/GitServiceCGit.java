@@ -1,24 +1,50 @@
 package com.github.smartcommit.util;
 
-import com.github.smartcommit.model.Action;
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
+import com.github.smartcommit.model.FileContent;
 import com.github.smartcommit.model.constant.*;
-import com.github.smartcommit.util.diffparser.api.DiffParser;
-import com.github.smartcommit.util.diffparser.api.UnifiedDiffParser;
+import com.github.smartcommit.util.diffparser.api.ByteUnifiedDiffParser;
 import com.github.smartcommit.util.diffparser.api.model.Diff;
-import com.github.smartcommit.util.diffparser.api.model.Hunk;
-import com.github.smartcommit.util.diffparser.api.model.Line;
 
-import java.io.ByteArrayInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /** Implementation of helper functions based on the output of git commands. */
-public class GitServiceCGit implements GitService {
+public class GitServiceCGit extends AbstractGitService {
+  private static final Logger logger = Logger.getLogger(GitServiceCGit.class);
+
+  // max total length of paths passed to one git command, to keep under the limit of the system
+  private static final int MAX_PATHSPEC_LENGTH = 64 * 1024;
+  // one long-lived git cat-file process to read the base contents
+  private GitBlobReader blobReader;
+  // never touch the index (no git reset), so that several analyses can run on one repo at a time
+  private final boolean readOnly;
+
+  public GitServiceCGit() {
+    this(false);
+  }
+
+  /**
+   * @param readOnly compare HEAD with the working tree directly instead of unstaging all changes
+   *     first, and ask git not to take optional locks
+   */
+  public GitServiceCGit(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
   /**
    * Get the diff files in the current working tree
    *
@@ -26,131 +52,157 @@ public class GitServiceCGit implements GitService {
    */
   @Override
   public ArrayList<DiffFile> getChangedFilesInWorkingTree(String repoPath) {
-    // unstage the staged files first
-    //    Utils.runSystemCommand(repoPath, "git", "restore", "--staged", ".");
-    Utils.runSystemCommand(repoPath, StandardCharsets.UTF_8, "git", "reset", "HEAD", ".");
+    if (!readOnly) {
+      // unstage the staged files first
+      //    Utils.runSystemCommand(repoPath, "git", "restore", "--staged", ".");
+      runGit(repoPath, StandardCharsets.UTF_8, "reset", "HEAD", ".");
+    }
+    // run git status --porcelain=v2 -z to get changeset
+    List<String> commands =
+        new ArrayList<>(Arrays.asList("git", "status", "--porcelain=v2", "-z", "-uall"));
+    if (readOnly) {
+      // the index is left as is, list the changes file by file as git diff HEAD --no-renames
+      commands.add("--no-renames");
+    }
+    // skip the excluded dirs in git, without listing their untracked files
+    commands.add("--");
+    commands.addAll(getPathPatterns().toPathspecs());
 
     ArrayList<DiffFile> diffFileList = new ArrayList<>();
-    // run git status --porcelain to get changeset
-    String output =
-        Utils.runSystemCommand(
-            repoPath, StandardCharsets.UTF_8, "git", "status", "--porcelain", "-uall");
-    // early return
-    if (output.isEmpty()) {
-      // working tree clean
-      return new ArrayList<>();
-    }
-    // ! use an independent incremental index to avoid index jump in case of invalid status output
-    // only increment index when creating new diff file
-    int fileIndex = 0;
+    List<PorcelainStatusParser.Entry> entries = new ArrayList<>();
+    Map<String, Future<WorkingTreeLoader.LoadedFile>> currentFiles = new HashMap<>();
+    try (WorkingTreeLoader loader = new WorkingTreeLoader()) {
+      ProcessResult<Integer> result =
+          newProcessRunner(repoPath)
+              .run(
+                  stdout ->
+                      new PorcelainStatusParser()
+                          .parse(
+                              stdout,
+                              entry -> {
+                                if (!getPathPatterns().matches(entry.getPath())) {
+                                  return;
+                                }
+                                entries.add(entry);
+                                // start reading the current version while parsing the rest
+                                if (entry.getStatus() != FileStatus.DELETED) {
+                                  currentFiles.put(
+                                      entry.getPath(), loader.submit(repoPath, entry.getPath()));
+                                }
+                              }),
+                  commands.toArray(new String[0]));
+      checkResult(result, commands.toArray(new String[0]));
 
-    String[] lines = output.split("\\r?\\n");
-    for (int i = 0; i < lines.length; i++) {
-      String[] temp = lines[i].trim().split("\\s+");
-      String symbol = temp[0];
-      String relativePath = temp[1];
-      FileType fileType = Utils.checkFileType(repoPath, relativePath);
-      String absolutePath = repoPath + File.separator + relativePath;
-      FileStatus status = Utils.convertSymbolToStatus(symbol);
-      DiffFile DiffFile = null;
-      Charset charset = StandardCharsets.UTF_8;
-      switch (status) {
-        case MODIFIED:
-          charset = Utils.detectCharset(absolutePath);
-          DiffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  charset,
-                  relativePath,
-                  relativePath,
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtHEAD(charset, repoPath, relativePath)),
-                  (fileType == FileType.BIN ? "" : Utils.readFileToString(absolutePath)));
-          break;
-        case ADDED:
-        case UNTRACKED:
-          charset = Utils.detectCharset(absolutePath);
-          DiffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  charset,
-                  "",
-                  relativePath,
-                  "",
-                  (fileType == FileType.BIN ? "" : Utils.readFileToString(absolutePath)));
-          break;
-        case DELETED:
-          // charset and filetype of the deleted is hard to detect
-          if (checkBinaryFileByDiff(repoPath, relativePath, charset)) {
-            fileType = FileType.BIN;
-          }
-          DiffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  StandardCharsets.UTF_8,
-                  relativePath,
-                  "",
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtHEAD(charset, repoPath, relativePath)),
-                  "");
-          break;
-        case RENAMED:
-        case COPIED:
-          if (temp.length == 4) {
-            // C/R aaa -> bbb
-            String oldPath = temp[1];
-            String newPath = temp[3];
-            fileType = Utils.checkFileType(repoPath, newPath);
-            String newAbsPath = repoPath + File.separator + newPath;
-            charset = Utils.detectCharset(absolutePath);
-            DiffFile =
-                new DiffFile(
-                    fileIndex++,
-                    status,
-                    fileType,
-                    charset,
-                    oldPath,
-                    newPath,
-                    (fileType == FileType.BIN ? "" : getContentAtHEAD(charset, repoPath, oldPath)),
-                    (fileType == FileType.BIN ? "" : Utils.readFileToString(newAbsPath)));
-          } else if (temp.length == 3) {
-            // CXX/RXX aaa bbb
-            String oldPath = temp[1];
-            String newPath = temp[2];
-            fileType = Utils.checkFileType(repoPath, newPath);
-            String newAbsPath = repoPath + File.separator + newPath;
-            charset = Utils.detectCharset(absolutePath);
-            DiffFile =
-                new DiffFile(
-                    fileIndex++,
-                    status,
-                    fileType,
-                    charset,
-                    oldPath,
-                    newPath,
-                    (fileType == FileType.BIN ? "" : getContentAtHEAD(charset, repoPath, oldPath)),
-                    (fileType == FileType.BIN ? "" : Utils.readFileToString(newAbsPath)));
-          }
-          break;
-        default:
-          break;
+      // the deleted files are classified by the leading bytes at HEAD, read in one batch
+      List<String> deletedBlobs = new ArrayList<>();
+      for (PorcelainStatusParser.Entry entry : entries) {
+        if (entry.getStatus() == FileStatus.DELETED) {
+          deletedBlobs.add(getHeadBlob(entry));
+        }
       }
-      if (DiffFile != null) {
-        diffFileList.add(DiffFile);
+      Map<String, byte[]> basePrefixes =
+          getBlobReader(repoPath).readAll(deletedBlobs, FileTypeClassifier.PREFIX_LENGTH);
+
+      // ! use an independent incremental index to avoid index jump in case of invalid status
+      // output, only increment index when creating new diff file
+      int fileIndex = 0;
+      for (PorcelainStatusParser.Entry entry : entries) {
+        DiffFile diffFile = createDiffFile(repoPath, fileIndex, entry, currentFiles, basePrefixes);
+        if (diffFile != null) {
+          diffFileList.add(diffFile);
+          fileIndex++;
+        }
       }
+    } catch (InterruptedException | ExecutionException e) {
+      e.printStackTrace();
     }
-    // assert: diffFileList.size() == fileIndex + 1
     return diffFileList;
   }
 
+  /**
+   * Create the diff file for one entry of the status
+   *
+   * @param currentFiles relative path : the file being loaded
+   * @param basePrefixes blob id : leading bytes of the deleted files at HEAD
+   * @return null if not a supported change
+   */
+  private DiffFile createDiffFile(
+      String repoPath,
+      int fileIndex,
+      PorcelainStatusParser.Entry entry,
+      Map<String, Future<WorkingTreeLoader.LoadedFile>> currentFiles,
+      Map<String, byte[]> basePrefixes)
+      throws InterruptedException, ExecutionException {
+    FileStatus status = entry.getStatus();
+    String basePath = entry.getOriginalPath();
+    String currentPath = entry.getPath();
+    FileType fileType;
+    Charset charset;
+    WorkingTreeLoader.LoadedFile currentFile;
+    switch (status) {
+      case MODIFIED:
+      case RENAMED:
+      case COPIED:
+        fileType = checkFileType(repoPath, currentPath);
+        currentFile = currentFiles.get(currentPath).get();
+        charset = currentFile.getCharset();
+        return new DiffFile(
+            fileIndex,
+            status,
+            fileType,
+            charset,
+            basePath,
+            currentPath,
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, "HEAD:" + basePath)),
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : FileContent.lazy(charset, currentFile::getBytes)));
+      case ADDED:
+      case UNTRACKED:
+        fileType = checkFileType(repoPath, currentPath);
+        currentFile = currentFiles.get(currentPath).get();
+        charset = currentFile.getCharset();
+        return new DiffFile(
+            fileIndex,
+            status,
+            fileType,
+            charset,
+            "",
+            currentPath,
+            FileContent.EMPTY,
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : FileContent.lazy(charset, currentFile::getBytes)));
+      case DELETED:
+        // the deleted file is not on disk, classify it by the blob at HEAD
+        String headBlob = getHeadBlob(entry);
+        fileType =
+            getFileTypeClassifier(repoPath)
+                .classify(basePath, headBlob, basePrefixes.get(headBlob));
+        charset = StandardCharsets.UTF_8;
+        return new DiffFile(
+            fileIndex,
+            status,
+            fileType,
+            charset,
+            basePath,
+            "",
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, headBlob)),
+            FileContent.EMPTY);
+      default:
+        return null;
+    }
+  }
+
+  /** The blob id of the file at HEAD, or its object name if not in the status */
+  private String getHeadBlob(PorcelainStatusParser.Entry entry) {
+    return entry.getHeadID() == null ? "HEAD:" + entry.getOriginalPath() : entry.getHeadID();
+  }
+
   /**
    * Get the diff files between one commit and its previous commit
    *
@@ -160,144 +212,154 @@ public class GitServiceCGit implements GitService {
   public ArrayList<DiffFile> getChangedFilesAtCommit(String repoPath, String commitID) {
     // git diff <start_commit> <end_commit>
     // on Windows the ~ character must be used instead of ^
+    // NUL-delimited, so that the paths are neither quoted nor split at spaces
     String output =
-        Utils.runSystemCommand(
+        runGit(
             repoPath,
             StandardCharsets.UTF_8,
-            "git",
             "diff",
-            "--name-status",
+            "--raw",
+            "-z",
+            "--no-abbrev",
             commitID + "~",
             commitID);
-    // early return
-    if (output.trim().isEmpty()) {
-      return new ArrayList<>();
+    // :<old mode> <new mode> <old blob> <new blob> <status>\0<path>\0, with another <new path>\0
+    // for renamed/copied files
+    List<RawEntry> entries = new ArrayList<>();
+    String[] fields = output.split("\0");
+    int i = 0;
+    while (i + 1 < fields.length) {
+      String[] header = fields[i++].split(" ");
+      if (header.length < 5) {
+        continue;
+      }
+      RawEntry entry = new RawEntry();
+      entry.status = Utils.convertSymbolToStatus(header[4].trim());
+      entry.baseID = header[2];
+      entry.currentID = header[3];
+      entry.basePath = fields[i++];
+      entry.currentPath = entry.basePath;
+      if (entry.status == FileStatus.RENAMED || entry.status == FileStatus.COPIED) {
+        if (i >= fields.length) {
+          break;
+        }
+        entry.currentPath = fields[i++];
+      }
+      entries.add(entry);
+    }
+
+    // classify by the leading bytes of the blobs (the deleted ones at the parent), in one batch
+    List<String> blobIDs = new ArrayList<>();
+    for (RawEntry entry : entries) {
+      blobIDs.add(entry.getClassifiedID());
     }
+    Map<String, byte[]> prefixes =
+        getBlobReader(repoPath).readAll(blobIDs, FileTypeClassifier.PREFIX_LENGTH);
+
     ArrayList<DiffFile> diffFileList = new ArrayList<>();
-    String[] lines = output.split("\\r?\\n");
     // ! use an independent incremental index to avoid index jump in case of invalid status output
     // only increment index when creating new diff file
     int fileIndex = 0;
-    for (int i = 0; i < lines.length; i++) {
-      String[] temp = lines[i].trim().split("\\s+");
-      String symbol = temp[0];
-      String relativePath = temp[1];
-      FileType fileType = Utils.checkFileType(repoPath, relativePath);
-      //                        String absolutePath = repoDir + File.separator + relativePath;
-      FileStatus status = Utils.convertSymbolToStatus(symbol);
-      DiffFile diffFile = null;
-      Charset charset = StandardCharsets.UTF_8;
-      switch (status) {
-        case MODIFIED:
-          diffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  charset,
-                  relativePath,
-                  relativePath,
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtCommit(charset, repoPath, relativePath, commitID + "~")),
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtCommit(charset, repoPath, relativePath, commitID)));
-          break;
-        case ADDED:
-        case UNTRACKED:
-          diffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  charset,
-                  "",
-                  relativePath,
-                  "",
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtCommit(charset, repoPath, relativePath, commitID)));
-          break;
-        case DELETED:
-          diffFile =
-              new DiffFile(
-                  fileIndex++,
-                  status,
-                  fileType,
-                  charset,
-                  relativePath,
-                  "",
-                  (fileType == FileType.BIN
-                      ? ""
-                      : getContentAtCommit(charset, repoPath, relativePath, commitID + "~")),
-                  "");
-          break;
-        case RENAMED:
-        case COPIED:
-          if (temp.length == 4) {
-            // C/R aaa -> bbb
-            String oldPath = temp[1];
-            String newPath = temp[3];
-            fileType = Utils.checkFileType(repoPath, newPath);
-            diffFile =
-                new DiffFile(
-                    fileIndex++,
-                    status,
-                    fileType,
-                    charset,
-                    oldPath,
-                    newPath,
-                    (fileType == FileType.BIN
-                        ? ""
-                        : getContentAtCommit(charset, repoPath, oldPath, commitID + "~")),
-                    (fileType == FileType.BIN
-                        ? ""
-                        : getContentAtCommit(charset, repoPath, newPath, commitID)));
-          } else if (temp.length == 3) {
-            // CXX/RXX aaa bbb
-            String oldPath = temp[1];
-            String newPath = temp[2];
-            fileType = Utils.checkFileType(repoPath, newPath);
-            diffFile =
-                new DiffFile(
-                    fileIndex++,
-                    status,
-                    fileType,
-                    charset,
-                    oldPath,
-                    newPath,
-                    (fileType == FileType.BIN
-                        ? ""
-                        : getContentAtCommit(charset, repoPath, oldPath, commitID + "~")),
-                    (fileType == FileType.BIN
-                        ? ""
-                        : getContentAtCommit(charset, repoPath, newPath, commitID)));
-          }
-          break;
-        default:
-          break;
-      }
+    for (RawEntry entry : entries) {
+      DiffFile diffFile = createDiffFileAtCommit(repoPath, fileIndex, entry, prefixes);
       if (diffFile != null) {
         diffFileList.add(diffFile);
+        fileIndex++;
       }
     }
-    // assert: diffFileList.size() == fileIndex + 1
     return diffFileList;
   }
 
+  /** One changed file in the raw diff output */
+  private static class RawEntry {
+    private FileStatus status;
+    private String baseID;
+    private String currentID;
+    private String basePath;
+    private String currentPath;
+
+    /** The blob to classify the file by, i.e. the base one if deleted */
+    private String getClassifiedID() {
+      return status == FileStatus.DELETED ? baseID : currentID;
+    }
+  }
+
+  /**
+   * Create the diff file for one entry of the raw diff at the commit
+   *
+   * @param prefixes blob id : the leading bytes of the blob
+   * @return null if not a supported change
+   */
+  private DiffFile createDiffFileAtCommit(
+      String repoPath, int fileIndex, RawEntry entry, Map<String, byte[]> prefixes) {
+    Charset charset = StandardCharsets.UTF_8;
+    String classifiedPath =
+        entry.status == FileStatus.DELETED ? entry.basePath : entry.currentPath;
+    FileType fileType =
+        getFileTypeClassifier(repoPath)
+            .classify(
+                classifiedPath, entry.getClassifiedID(), prefixes.get(entry.getClassifiedID()));
+    switch (entry.status) {
+      case MODIFIED:
+      case RENAMED:
+      case COPIED:
+        return new DiffFile(
+            fileIndex,
+            entry.status,
+            fileType,
+            charset,
+            entry.basePath,
+            entry.currentPath,
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, entry.baseID)),
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, entry.currentID)));
+      case ADDED:
+      case UNTRACKED:
+        return new DiffFile(
+            fileIndex,
+            entry.status,
+            fileType,
+            charset,
+            "",
+            entry.currentPath,
+            FileContent.EMPTY,
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, entry.currentID)));
+      case DELETED:
+        return new DiffFile(
+            fileIndex,
+            entry.status,
+            fileType,
+            charset,
+            entry.basePath,
+            "",
+            (fileType == FileType.BIN
+                ? FileContent.EMPTY
+                : blobContent(repoPath, charset, entry.baseID)),
+            FileContent.EMPTY);
+      default:
+        return null;
+    }
+  }
+
   @Override
   public List<DiffHunk> getDiffHunksInWorkingTree(String repoPath, List<DiffFile> diffFiles) {
-    // unstage the staged files first
-    //    Utils.runSystemCommand(repoPath, "git", "reset", "--mixed");
-    Utils.runSystemCommand(repoPath, StandardCharsets.UTF_8, "git", "reset", "HEAD", ".");
+    if (!readOnly) {
+      // unstage the staged files first
+      //    Utils.runSystemCommand(repoPath, "git", "reset", "--mixed");
+      runGit(repoPath, StandardCharsets.UTF_8, "reset", "HEAD", ".");
+    }
     // diff once for all
     // git diff + git diff --cached/staged == git diff HEAD (show all the changes since last commit
     // String diffOutput = Utils.runSystemCommand(repoPath, "git", "diff", "HEAD", "-U0");
 
-    // diff per file
-    List<DiffHunk> binaryDiffHunks = new ArrayList<>();
-    StringBuilder diffOutput = new StringBuilder();
+    // diff once for all the modified/deleted files, the added ones are taken as a whole
+    List<String> paths = new ArrayList<>();
+    Map<String, Charset> pathToCharset = new HashMap<>();
     for (DiffFile diffFile : diffFiles) {
       if (null != diffFile.getBaseRelativePath() && !"".equals(diffFile.getBaseRelativePath())) {
         // generate diff hunks for modified or deleted binary files (that cannot be parsed)
@@ -308,244 +370,154 @@ public class GitServiceCGit implements GitService {
           List<DiffHunk> diffHunksInFile = new ArrayList<>();
           diffHunksInFile.add(diffHunk);
           diffFile.setDiffHunks(diffHunksInFile);
+        } else {
+          paths.add(diffFile.getBaseRelativePath());
+          pathToCharset.put(diffFile.getBaseRelativePath(), diffFile.getCharset());
         }
-        diffOutput.append(
-            Utils.runSystemCommand(
-                repoPath,
-                diffFile.getCharset(),
-                "git",
-                "diff",
-                "-U0",
-                "--",
-                diffFile.getBaseRelativePath()));
       }
     }
-    List<Diff> diffs = new ArrayList<>();
-    if (!diffOutput.toString().trim().isEmpty()) {
-      // with -U0 (no context lines), the generated patch cannot be applied successfully
-      DiffParser parser = new UnifiedDiffParser();
-      diffs = parser.parse(new ByteArrayInputStream(diffOutput.toString().getBytes()));
+    // build the diff hunks of each file as soon as its diff is parsed
+    DiffHunkGenerator generator = new DiffHunkGenerator(repoPath, diffFiles);
+    ByteUnifiedDiffParser parser =
+        new ByteUnifiedDiffParser(
+            header -> pathToCharset.get(getPathsInSectionHeader(header).getLeft()));
+    // split into a few invocations only if the command line would be too long
+    for (List<String> batch : splitPathspecs(paths)) {
+      // in read-only mode the index is left as is, so compare the working tree with HEAD
+      // print the non-ASCII paths as they are (not quoted), the same as in the status
+      List<String> commands = new ArrayList<>(Arrays.asList("git", "-c", "core.quotePath=false"));
+      commands.addAll(
+          readOnly
+              ? Arrays.asList("diff", "--no-renames", "-U0", "HEAD", "--")
+              : Arrays.asList("diff", "-U0", "--"));
+      commands.addAll(batch);
+      // parse the raw output, decoding each file section with its own charset
+      ProcessResult<?> result =
+          newProcessRunner(repoPath)
+              .run(
+                  stdout -> {
+                    parser.parse(stdout, generator);
+                    return null;
+                  },
+                  commands.toArray(new String[0]));
+      checkResult(result, commands.toArray(new String[0]));
     }
-
-    return generateDiffHunks(repoPath, diffs, diffFiles);
-  }
-
-  private DiffHunk createDiffHunkForBinaryFile(DiffFile diffFile) {
-    ChangeType changeType =
-        diffFile.getStatus().equals(FileStatus.DELETED) ? ChangeType.DELETED : ChangeType.MODIFIED;
-    DiffHunk diffHunk =
-        new DiffHunk(
-            0,
-            diffFile.getFileType(),
-            changeType,
-            new com.github.smartcommit.model.Hunk(
-                Version.BASE,
-                diffFile.getBaseRelativePath(),
-                0,
-                0,
-                ContentType.BINARY,
-                new ArrayList<>()),
-            new com.github.smartcommit.model.Hunk(
-                Version.CURRENT,
-                diffFile.getCurrentRelativePath(),
-                0,
-                0,
-                ContentType.BINARY,
-                new ArrayList<>()),
-            changeType.label
-                + " "
-                + diffFile.getFileType().label
-                + " File:"
-                + diffFile.getBaseRelativePath());
-    diffHunk.addASTAction(
-        new Action(
-            (changeType.equals(ChangeType.DELETED) ? Operation.DEL : Operation.UPD),
-            "Binary",
-            "",
-            "File",
-            diffFile.getCurrentRelativePath()));
-    return diffHunk;
+    return generator.getDiffHunks();
   }
 
   /**
-   * Generate diff hunks from diffs parsed from git-diff output
+   * Split the paths into batches, each short enough to be passed to one git command
    *
-   * @param diffs
+   * @param paths
    * @return
    */
-  private List<DiffHunk> generateDiffHunks(
-      String repoPath, List<Diff> diffs, List<DiffFile> diffFiles) {
-    List<DiffHunk> allDiffHunks = new ArrayList<>();
-    // one file, one diff
-    // UNTRACKED/ADDED files won't be shown in the diff
-    for (DiffFile diffFile : diffFiles) {
-      if (diffFile.getStatus().equals(FileStatus.ADDED)
-          || diffFile.getStatus().equals(FileStatus.UNTRACKED)) {
-        List<String> lines = Utils.convertStringToList(diffFile.getCurrentContent());
-        DiffHunk diffHunk =
-            new DiffHunk(
-                0,
-                Utils.checkFileType(repoPath, diffFile.getCurrentRelativePath()),
-                ChangeType.ADDED,
-                new com.github.smartcommit.model.Hunk(
-                    Version.BASE, "", 0, -1, ContentType.EMPTY, new ArrayList<>()),
-                new com.github.smartcommit.model.Hunk(
-                    Version.CURRENT,
-                    diffFile.getCurrentRelativePath(),
-                    1,
-                    lines.size(),
-                    Utils.checkContentType(lines),
-                    lines),
-                "Add "
-                    + diffFile.getFileType().label
-                    + " File:"
-                    + diffFile.getCurrentRelativePath());
-        diffHunk.addASTAction(
-            new Action(Operation.ADD, "", "", "File", diffFile.getCurrentRelativePath()));
-
-        // bidirectional binding
-        diffHunk.setFileIndex(diffFile.getIndex());
-        List<DiffHunk> diffHunksInFile = new ArrayList<>();
-        diffHunksInFile.add(diffHunk);
-        allDiffHunks.add(diffHunk);
-        diffFile.setDiffHunks(diffHunksInFile);
+  private List<List<String>> splitPathspecs(List<String> paths) {
+    List<List<String>> batches = new ArrayList<>();
+    List<String> batch = new ArrayList<>();
+    int batchLength = 0;
+    for (String path : paths) {
+      if (!batch.isEmpty() && batchLength + path.length() > MAX_PATHSPEC_LENGTH) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchLength = 0;
       }
+      batch.add(path);
+      batchLength += path.length() + 1;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
     }
+    return batches;
+  }
 
-    for (Diff diff : diffs) {
-      // the hunkIndex of the diff hunk in the current file diff, start from 0
-      Integer hunkIndex = 0;
-
-      String baseFilePath = diff.getFromFileName();
-      String currentFilePath = diff.getToFileName();
-
-      List<String> headers = diff.getHeaderLines();
-      headers.add("--- " + baseFilePath);
-      headers.add("+++ " + currentFilePath);
-
-      // currently we only process Java files
-      FileType fileType =
-          baseFilePath.contains("/dev/null")
-              ? Utils.checkFileType(repoPath, currentFilePath) // ADDED/UNTRACKED
-              : Utils.checkFileType(repoPath, baseFilePath);
-
-      // collect and save diff hunks into diff files
-      List<DiffHunk> diffHunksInFile = new ArrayList<>();
-      for (Hunk hunk : diff.getHunks()) {
-        List<List<String>> hunkLines = splitHunkLines(hunk.getLines());
-        List<String> baseCodeLines = hunkLines.get(1);
-        List<String> currentCodeLines = hunkLines.get(2);
-        int leadingNeutral = hunkLines.get(0).size();
-        int trailingNeutral = hunkLines.get(3).size();
-        com.github.smartcommit.model.Hunk baseHunk =
-            new com.github.smartcommit.model.Hunk(
-                Version.BASE,
-                removeVersionLabel(baseFilePath),
-                // with -U0, leadingNeutral = 0 = trailingNeutral
-                hunk.getFromFileRange().getLineStart() + leadingNeutral,
-                hunk.getFromFileRange().getLineStart()
-                    + leadingNeutral
-                    + hunk.getFromFileRange().getLineCount()
-                    - leadingNeutral
-                    - trailingNeutral
-                    - 1,
-                Utils.checkContentType(baseCodeLines),
-                baseCodeLines);
-        com.github.smartcommit.model.Hunk currentHunk =
-            new com.github.smartcommit.model.Hunk(
-                Version.CURRENT,
-                removeVersionLabel(currentFilePath),
-                hunk.getToFileRange().getLineStart() + leadingNeutral,
-                hunk.getToFileRange().getLineStart()
-                    + leadingNeutral
-                    + hunk.getToFileRange().getLineCount()
-                    - leadingNeutral
-                    - trailingNeutral
-                    - 1,
-                Utils.checkContentType(currentCodeLines),
-                currentCodeLines);
-        ChangeType changeType = ChangeType.MODIFIED;
-        if (baseCodeLines.isEmpty()) {
-          changeType = ChangeType.ADDED;
-        }
-        if (currentCodeLines.isEmpty()) {
-          changeType = ChangeType.DELETED;
-        }
-        DiffHunk diffHunk = new DiffHunk(hunkIndex, fileType, changeType, baseHunk, currentHunk);
-        diffHunk.setRawDiffs(hunk.getRawLines());
-        diffHunksInFile.add(diffHunk);
-        allDiffHunks.add(diffHunk);
-        hunkIndex++;
-      }
+  /**
+   * Run a git command and return its stdout (stderr is logged if the command fails)
+   *
+   * @param repoPath
+   * @param charset
+   * @param args arguments after "git"
+   * @return
+   */
+  private String runGit(String repoPath, Charset charset, String... args) {
+    String[] commands = new String[args.length + 1];
+    commands[0] = "git";
+    System.arraycopy(args, 0, commands, 1, args.length);
+    ProcessResult<String> result = newProcessRunner(repoPath).runForString(charset, commands);
+    checkResult(result, commands);
+    return result.getOutput() == null ? "" : result.getOutput();
+  }
 
-      // bidirectional binding
-      for (DiffFile diffFile : diffFiles) {
-        if (removeVersionLabel(baseFilePath).equals(diffFile.getBaseRelativePath())
-            && removeVersionLabel(currentFilePath).equals(diffFile.getCurrentRelativePath())) {
-          diffHunksInFile.forEach(diffHunk -> diffHunk.setFileIndex(diffFile.getIndex()));
-          diffFile.setDiffHunks(diffHunksInFile);
-          diffFile.setRawHeaders(headers);
-        }
-      }
+  /**
+   * Log the stderr if the command failed or timed out
+   *
+   * @param result
+   * @param commands
+   * @return whether the command succeeded
+   */
+  private boolean checkResult(ProcessResult<?> result, String... commands) {
+    if (result.isSuccessful()) {
+      return true;
     }
-    return allDiffHunks;
+    logger.error(
+        "Failed to run "
+            + String.join(" ", commands)
+            + (result.isTimedOut() ? ": timed out" : ": " + result.getError().trim()));
+    return false;
   }
 
   /**
-   * Split the raw hunk lines into 0 (leading neutral), 1 (from), 2 (to), 3 (trailing neural)
+   * Create a runner for git commands, which do not take optional locks (e.g. to refresh the index)
+   * in read-only mode
    *
-   * @param lines
+   * @param repoPath
    * @return
    */
-  private List<List<String>> splitHunkLines(List<Line> lines) {
-    List<List<String>> result = new ArrayList<>();
-    for (int i = 0; i < 4; ++i) {
-      result.add(new ArrayList<>());
+  private ProcessRunner newProcessRunner(String repoPath) {
+    ProcessRunner runner = new ProcessRunner(repoPath);
+    if (readOnly) {
+      runner.setEnvironment("GIT_OPTIONAL_LOCKS", "0");
     }
+    return runner;
+  }
 
-    boolean trailing = false;
-    // to handle case where two neighboring diff hunks are merged if the lines between them are less
-    // than the -Ux
-    boolean isLastLineNeutral = true;
-    for (int i = 0; i < lines.size(); ++i) {
-      Line line = lines.get(i);
-      switch (line.getLineType()) {
-        case NEUTRAL:
-          boolean isNextLineNeutral = true;
-          if (!isLastLineNeutral) {
-            // check if the neutral lies between two non-netural lines
-            if (i + 1 < lines.size()) {
-              Line nextLine = lines.get(i + 1);
-              isNextLineNeutral = nextLine.getLineType().equals(Line.LineType.NEUTRAL);
-            }
-          }
-          if (!isLastLineNeutral && !isNextLineNeutral) {
-            isLastLineNeutral = true;
-            continue;
-          } else {
-            if (!line.getContent().trim().equals("\\ No newline at end of file")) {
-              if (trailing) {
-                result.get(3).add(line.getContent());
-              } else {
-                result.get(0).add(line.getContent());
-              }
-              isLastLineNeutral = true;
-            }
-          }
-          break;
-        case FROM:
-          result.get(1).add(line.getContent());
-          trailing = true;
-          isLastLineNeutral = false;
-          break;
-        case TO:
-          result.get(2).add(line.getContent());
-          trailing = true;
-          isLastLineNeutral = false;
-          break;
+  /**
+   * Get the base and current paths from the section header "diff --git a/path b/path", where each
+   * path is quoted if it has special characters
+   *
+   * @param header
+   * @return empty paths if not a section header
+   */
+  private Pair<String, String> getPathsInSectionHeader(String header) {
+    String prefix = "diff --git ";
+    if (!header.startsWith(prefix)) {
+      return Pair.of("", "");
+    }
+    String names = header.substring(prefix.length());
+    int split;
+    if (names.startsWith("\"")) {
+      // skip the escaped characters in the quoted name
+      split = 1;
+      while (split < names.length() && names.charAt(split) != '"') {
+        split += names.charAt(split) == '\\' ? 2 : 1;
       }
+      split++;
+    } else if (names.endsWith("\"")) {
+      split = names.lastIndexOf(" \"");
+    } else {
+      // unquoted names may have spaces, prefer the split where both paths are the same
+      split = (names.length() - 1) / 2;
+      if (split <= 0
+          || names.charAt(split) != ' '
+          || !names.substring(2, split).equals(names.substring(split + 3))) {
+        split = names.indexOf(" b/");
+      }
+    }
+    if (split <= 0 || split >= names.length()) {
+      return Pair.of("", "");
     }
-    return result;
+    return Pair.of(
+        removeVersionLabel(unquotePath(names.substring(0, split))),
+        removeVersionLabel(unquotePath(names.substring(split + 1))));
   }
 
   /**
@@ -560,16 +532,16 @@ public class GitServiceCGit implements GitService {
       String repoPath, String commitID, List<DiffFile> diffFiles) {
     // git diff <start_commit> <end_commit>
     // on Windows the ~ character must be used instead of ^
-    String diffOutput =
-        Utils.runSystemCommand(
-            repoPath, StandardCharsets.UTF_8, "git", "diff", "-U0", commitID + "~", commitID);
-    List<Diff> diffs = new ArrayList<>();
-    if (!diffOutput.trim().isEmpty()) {
-      // with -U0 (no context lines), the generated patch cannot be applied successfully
-      DiffParser parser = new UnifiedDiffParser();
-      diffs = parser.parse(new ByteArrayInputStream(diffOutput.getBytes()));
-    }
-
+    // a commit may change thousands of files, so parse the file sections in parallel
+    String[] commands = {
+      "git", "-c", "core.quotePath=false", "diff", "-U0", commitID + "~", commitID
+    };
+    ProcessResult<List<Diff>> result =
+        newProcessRunner(repoPath)
+            .run(stdout -> parseDiffsInParallel(IOUtils.toByteArray(stdout)), commands);
+    // the same as in the working tree, keep the diffs read before the failure (if any)
+    checkResult(result, commands);
+    List<Diff> diffs = result.getOutput() == null ? new ArrayList<>() : result.getOutput();
     return generateDiffHunks(repoPath, diffs, diffFiles);
   }
 
@@ -581,7 +553,7 @@ public class GitServiceCGit implements GitService {
    */
   @Override
   public String getContentAtHEAD(Charset charset, String repoDir, String relativePath) {
-    return Utils.runSystemCommand(repoDir, charset, "git", "show", "HEAD:" + relativePath);
+    return getContentAtCommit(charset, repoDir, relativePath, "HEAD");
   }
 
   /**
@@ -593,38 +565,45 @@ public class GitServiceCGit implements GitService {
   @Override
   public String getContentAtCommit(
       Charset charset, String repoDir, String relativePath, String commitID) {
-    return Utils.runSystemCommand(repoDir, charset, "git", "show", commitID + ":" + relativePath);
+    return new String(getBlobReader(repoDir).read(commitID + ":" + relativePath), charset);
   }
 
   /**
-   * Remove the "a/" or "b/" at the beginning of the path printed in Git
+   * Content of a blob (e.g. HEAD:path), read with the blob reader only when requested
    *
+   * @param objectName
    * @return
    */
-  private String removeVersionLabel(String gitFilePath) {
-    String trimmedPath = gitFilePath.trim();
-    if (trimmedPath.startsWith("a/")) {
-      return gitFilePath.replaceFirst("a/", "");
-    }
-    if (trimmedPath.startsWith("b/")) {
-      return gitFilePath.replaceFirst("b/", "");
+  private FileContent blobContent(String repoPath, Charset charset, String objectName) {
+    GitBlobReader reader = getBlobReader(repoPath);
+    return FileContent.lazy(charset, () -> reader.load(objectName));
+  }
+
+  private GitBlobReader getBlobReader(String repoPath) {
+    if (blobReader == null || !blobReader.getRepoPath().equals(repoPath)) {
+      close();
+      blobReader = new GitBlobReader(repoPath);
     }
-    if (trimmedPath.equals("/dev/null")) {
-      return "";
+    return blobReader;
+  }
+
+  @Override
+  public void close() {
+    if (blobReader != null) {
+      blobReader.close();
+      blobReader = null;
     }
-    return gitFilePath;
   }
 
+
   /**
    * Make the working dir clean by dropping all the changes (which are backed up in tempDir/current)
    *
    * @param repoPath
    */
   public boolean clearWorkingTree(String repoPath) {
-    Utils.runSystemCommand(repoPath, StandardCharsets.UTF_8, "git", "reset", "--hard");
-    String status =
-        Utils.runSystemCommand(
-            repoPath, StandardCharsets.UTF_8, "git", "status", "--porcelain", "-uall");
+    runGit(repoPath, StandardCharsets.UTF_8, "reset", "--hard");
+    String status = runGit(repoPath, StandardCharsets.UTF_8, "status", "--porcelain", "-uall");
     // working tree clean if empty
     return status.isEmpty();
   }
@@ -634,8 +613,7 @@ public class GitServiceCGit implements GitService {
     // git show HEAD | grep Author
     // git log -1 --format='%an' HASH
     // git show -s --format='%an' HASH
-    return Utils.runSystemCommand(
-            repoDir, StandardCharsets.UTF_8, "git", "show", "-s", "--format='%an'", commitID)
+    return runGit(repoDir, StandardCharsets.UTF_8, "show", "-s", "--format='%an'", commitID)
         .trim()
         .replaceAll("'", "");
   }
@@ -644,19 +622,8 @@ public class GitServiceCGit implements GitService {
   public String getCommitterEmail(String repoDir, String commitID) {
     // git log -1 --format='%ae' HASH
     // git show -s --format='%ae' HASH
-    return Utils.runSystemCommand(
-            repoDir, StandardCharsets.UTF_8, "git", "show", "-s", "--format='%ae'", commitID)
+    return runGit(repoDir, StandardCharsets.UTF_8, "show", "-s", "--format='%ae'", commitID)
         .trim()
         .replaceAll("'", "");
   }
-
-  private boolean checkBinaryFileByDiff(String repoPath, String filePath, Charset charset) {
-    String output = Utils.runSystemCommand(repoPath, charset, "git", "diff", "-U0", "--", filePath);
-    // e.g. Binary files a/11.png and /dev/null differ
-    if (output.trim().contains("Binary files")) {
-      return true;
-    } else {
-      return false;
-    }
-  }
 }
@@ -2,52 +2,701 @@ package com.github.smartcommit.util;
 
 import com.github.smartcommit.model.DiffFile;
 import com.github.smartcommit.model.DiffHunk;
+import com.github.smartcommit.model.FileContent;
+import com.github.smartcommit.model.constant.FileStatus;
+import com.github.smartcommit.model.constant.FileType;
+import com.github.smartcommit.util.diffparser.api.model.Diff;
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
-/** Implementation of helper functions based on jGit (the java implementation of Git). */
-public class GitServiceJGit implements GitService {
+/**
+ * Implementation of helper functions based on jGit (the java implementation of Git).
+ *
+ * <p>One repository and object reader are kept open for the whole session (until close()), so
+ * that no git process is forked.
+ */
+public class GitServiceJGit extends AbstractGitService {
+  private static final Logger logger = Logger.getLogger(GitServiceJGit.class);
+
+  private String repoPath;
+  private Repository repository;
+  private ObjectReader reader;
+  // the last commit scanned, which is scanned again to generate diff hunks
+  private String scannedCommitID;
+  private List<DiffEntry> scannedEntries;
+
+  /**
+   * Get the diff files in the current working tree (HEAD vs working tree, staged changes are
+   * treated as unstaged, the same as the CGit one does after reset)
+   *
+   * @return
+   */
   @Override
   public ArrayList<DiffFile> getChangedFilesInWorkingTree(String repoPath) {
-    return null;
+    ArrayList<DiffFile> diffFileList = new ArrayList<>();
+    // untracked files are listed after the tracked ones, as in git status
+    List<WorkingTreeChange> changes = new ArrayList<>();
+    List<WorkingTreeChange> untrackedChanges = new ArrayList<>();
+    try {
+      openRepository(repoPath);
+      RevTree headTree = resolveTree(Constants.HEAD);
+      try (TreeWalk walk = new TreeWalk(repository, reader)) {
+        walk.setRecursive(true);
+        walk.addTree(headTree == null ? new EmptyTreeIterator() : toTreeIterator(headTree));
+        int indexID = walk.addTree(new DirCacheIterator(repository.readDirCache()));
+        int workingID = walk.addTree(new FileTreeIterator(repository));
+        walk.setFilter(
+            getPathPatterns().isEmpty()
+                ? new IndexDiffFilter(indexID, workingID)
+                : AndTreeFilter.create(
+                    new PathPatternsFilter(getPathPatterns()),
+                    new IndexDiffFilter(indexID, workingID)));
+        FileTreeIterator workingIterator = walk.getTree(workingID, FileTreeIterator.class);
+        workingIterator.setDirCacheIterator(walk, indexID);
+
+        while (walk.next()) {
+          String relativePath = walk.getPathString();
+          FileMode headMode = walk.getFileMode(0);
+          FileMode workingMode = walk.getFileMode(workingID);
+          if (isGitLink(headMode) || isGitLink(workingMode)) {
+            continue;
+          }
+          boolean inHead = headMode != FileMode.MISSING;
+          boolean inWorking = workingMode != FileMode.MISSING;
+          if (inHead && inWorking) {
+            if (walk.getObjectId(0).equals(getWorkingTreeID(walk, indexID, workingIterator))) {
+              continue;
+            }
+            changes.add(
+                new WorkingTreeChange(
+                    FileStatus.MODIFIED, relativePath, relativePath, walk.getObjectId(0)));
+          } else if (inHead) {
+            changes.add(
+                new WorkingTreeChange(FileStatus.DELETED, relativePath, "", walk.getObjectId(0)));
+          } else if (inWorking) {
+            // ignored and not staged
+            if (walk.getFileMode(indexID) == FileMode.MISSING && workingIterator.isEntryIgnored()) {
+              continue;
+            }
+            untrackedChanges.add(
+                new WorkingTreeChange(FileStatus.UNTRACKED, "", relativePath, null));
+          }
+        }
+      }
+      changes.addAll(untrackedChanges);
+
+      // read the current versions in parallel
+      List<String> currentPaths = new ArrayList<>();
+      for (WorkingTreeChange change : changes) {
+        if (!change.currentPath.isEmpty()) {
+          currentPaths.add(change.currentPath);
+        }
+      }
+      Map<String, WorkingTreeLoader.LoadedFile> currentFiles;
+      try (WorkingTreeLoader loader = new WorkingTreeLoader()) {
+        currentFiles = loader.loadAll(repository.getWorkTree().getAbsolutePath(), currentPaths);
+      }
+      for (WorkingTreeChange change : changes) {
+        diffFileList.add(
+            createDiffFile(
+                change.status,
+                change.basePath,
+                change.currentPath,
+                change.baseID,
+                null,
+                currentFiles.get(change.currentPath)));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    // ! use an independent incremental index to avoid index jump in case of invalid status output
+    for (int i = 0; i < diffFileList.size(); ++i) {
+      diffFileList.get(i).setIndex(i);
+    }
+    return diffFileList;
   }
 
+  /**
+   * Get the diff files between one commit and its previous commit
+   *
+   * @return
+   */
   @Override
   public ArrayList<DiffFile> getChangedFilesAtCommit(String repoPath, String commitID) {
-    return null;
+    ArrayList<DiffFile> diffFileList = new ArrayList<>();
+    try {
+      openRepository(repoPath);
+      List<DiffEntry> entries = scanCommit(commitID);
+      if (entries.isEmpty()) {
+        return diffFileList;
+      }
+      int fileIndex = 0;
+      for (DiffEntry entry : entries) {
+        DiffFile diffFile = null;
+        switch (entry.getChangeType()) {
+          case MODIFY:
+            diffFile =
+                createDiffFile(
+                    FileStatus.MODIFIED,
+                    entry.getOldPath(),
+                    entry.getNewPath(),
+                    entry.getOldId().toObjectId(),
+                    entry.getNewId().toObjectId(),
+                    null);
+            break;
+          case ADD:
+            diffFile =
+                createDiffFile(
+                    FileStatus.ADDED,
+                    "",
+                    entry.getNewPath(),
+                    null,
+                    entry.getNewId().toObjectId(),
+                    null);
+            break;
+          case DELETE:
+            diffFile =
+                createDiffFile(
+                    FileStatus.DELETED,
+                    entry.getOldPath(),
+                    "",
+                    entry.getOldId().toObjectId(),
+                    null,
+                    null);
+            break;
+          case RENAME:
+          case COPY:
+            diffFile =
+                createDiffFile(
+                    entry.getChangeType() == DiffEntry.ChangeType.RENAME
+                        ? FileStatus.RENAMED
+                        : FileStatus.COPIED,
+                    entry.getOldPath(),
+                    entry.getNewPath(),
+                    entry.getOldId().toObjectId(),
+                    entry.getNewId().toObjectId(),
+                    null);
+            break;
+          default:
+            break;
+        }
+        if (diffFile != null) {
+          diffFile.setIndex(fileIndex++);
+          diffFileList.add(diffFile);
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return diffFileList;
   }
 
   @Override
   public List<DiffHunk> getDiffHunksInWorkingTree(String repoPath, List<DiffFile> diffFiles) {
-    return null;
+    // only modified or deleted files need to be diffed, the added ones are taken as a whole
+    Map<String, DiffFile> pathToDiffFile = new HashMap<>();
+    for (DiffFile diffFile : diffFiles) {
+      if (null != diffFile.getBaseRelativePath() && !"".equals(diffFile.getBaseRelativePath())) {
+        // generate diff hunks for modified or deleted binary files (that cannot be parsed)
+        if (diffFile.getFileType().equals(FileType.BIN)) {
+          DiffHunk diffHunk = createDiffHunkForBinaryFile(diffFile);
+          // bidirectional binding
+          diffHunk.setFileIndex(diffFile.getIndex());
+          List<DiffHunk> diffHunksInFile = new ArrayList<>();
+          diffHunksInFile.add(diffHunk);
+          diffFile.setDiffHunks(diffHunksInFile);
+        } else {
+          pathToDiffFile.put(diffFile.getBaseRelativePath(), diffFile);
+        }
+      }
+    }
+
+    List<Diff> diffs = new ArrayList<>();
+    if (!pathToDiffFile.isEmpty()) {
+      try {
+        openRepository(repoPath);
+        RevTree headTree = resolveTree(Constants.HEAD);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DiffFormatter formatter = createDiffFormatter(out)) {
+          formatter.setPathFilter(PathFilterGroup.createFromStrings(pathToDiffFile.keySet()));
+          List<DiffEntry> entries =
+              formatter.scan(
+                  headTree == null ? new EmptyTreeIterator() : toTreeIterator(headTree),
+                  new FileTreeIterator(repository));
+          diffs =
+              formatAndParse(
+                  formatter,
+                  out,
+                  entries,
+                  entry -> {
+                    DiffFile diffFile = pathToDiffFile.get(entry.getOldPath());
+                    return diffFile == null ? StandardCharsets.UTF_8 : diffFile.getCharset();
+                  });
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return generateDiffHunks(repoPath, diffs, diffFiles);
   }
 
+  /**
+   * Get the diff hunks between one commit and its previous commit
+   *
+   * @param repoPath
+   * @param commitID
+   * @return
+   */
   @Override
   public List<DiffHunk> getDiffHunksAtCommit(
       String repoPath, String commitID, List<DiffFile> diffFiles) {
-    return null;
+    List<Diff> diffs = new ArrayList<>();
+    try {
+      openRepository(repoPath);
+      List<DiffEntry> entries = scanCommit(commitID);
+      // binary files cannot be parsed (jGit prints no hunk after the ---/+++ lines)
+      Set<String> binaryPaths = new HashSet<>();
+      for (DiffFile diffFile : diffFiles) {
+        if (diffFile.getFileType().equals(FileType.BIN)) {
+          binaryPaths.add(diffFile.getBaseRelativePath());
+          binaryPaths.add(diffFile.getCurrentRelativePath());
+        }
+      }
+      List<DiffEntry> textEntries = new ArrayList<>();
+      for (DiffEntry entry : entries) {
+        if (!binaryPaths.contains(entry.getOldPath())
+            && !binaryPaths.contains(entry.getNewPath())) {
+          textEntries.add(entry);
+        }
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (DiffFormatter formatter = createDiffFormatter(out)) {
+        formatter.format(textEntries);
+        formatter.flush();
+      }
+      // a commit may change thousands of files, so parse the file sections in parallel
+      diffs = parseDiffsInParallel(out.toByteArray());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return generateDiffHunks(repoPath, diffs, diffFiles);
   }
 
+  /**
+   * Get the file content at HEAD
+   *
+   * @param relativePath
+   * @return
+   */
   @Override
   public String getContentAtHEAD(Charset charset, String repoDir, String relativePath) {
-    return null;
+    return getContentAtCommit(charset, repoDir, relativePath, Constants.HEAD);
   }
 
+  /**
+   * Get the file content at one specific commit
+   *
+   * @param relativePath
+   * @return
+   */
   @Override
   public String getContentAtCommit(
       Charset charset, String repoDir, String relativePath, String commitID) {
-    return null;
+    try {
+      openRepository(repoDir);
+      RevTree tree = resolveTree(commitID);
+      if (tree != null) {
+        try (TreeWalk walk = TreeWalk.forPath(reader, relativePath, tree)) {
+          if (walk != null) {
+            return new String(readBlob(walk.getObjectId(0)), charset);
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return "";
   }
 
   @Override
   public String getCommitterName(String repoDir, String commitID) {
-    return null;
+    RevCommit commit = parseCommit(repoDir, commitID);
+    return commit == null ? "" : commit.getAuthorIdent().getName();
   }
 
   @Override
   public String getCommitterEmail(String repoDir, String commitID) {
+    RevCommit commit = parseCommit(repoDir, commitID);
+    return commit == null ? "" : commit.getAuthorIdent().getEmailAddress();
+  }
+
+  /**
+   * List the commits reachable from the end commit but not from the start commit, in one walk of
+   * the history
+   *
+   * @param repoPath
+   * @param fromCommit the start commit (excluded), null to walk to the root
+   * @param toCommit the end commit (included)
+   * @return commit ids from the oldest to the newest, root commits (with no parent) are skipped
+   */
+  public List<String> getCommitsInRange(String repoPath, String fromCommit, String toCommit) {
+    List<String> commitIDs = new ArrayList<>();
+    try {
+      openRepository(repoPath);
+      ObjectId toID = repository.resolve(toCommit);
+      ObjectId fromID = fromCommit == null ? null : repository.resolve(fromCommit);
+      if (toID == null || (fromCommit != null && fromID == null)) {
+        logger.error("Unknown commit range: " + fromCommit + ".." + toCommit);
+        return commitIDs;
+      }
+      try (RevWalk revWalk = new RevWalk(reader)) {
+        revWalk.sort(RevSort.TOPO);
+        revWalk.sort(RevSort.REVERSE, true);
+        revWalk.markStart(revWalk.parseCommit(toID));
+        if (fromID != null) {
+          revWalk.markUninteresting(revWalk.parseCommit(fromID));
+        }
+        for (RevCommit commit : revWalk) {
+          if (commit.getParentCount() > 0) {
+            commitIDs.add(commit.getName());
+          }
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Failed to walk commits: " + fromCommit + ".." + toCommit);
+      e.printStackTrace();
+    }
+    return commitIDs;
+  }
+
+  @Override
+  public void close() {
+    scannedCommitID = null;
+    scannedEntries = null;
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+    if (repository != null) {
+      repository.close();
+      repository = null;
+    }
+    repoPath = null;
+  }
+
+  /**
+   * Open the repository (or reuse the opened one if it is the same)
+   *
+   * @param repoPath
+   * @throws IOException
+   */
+  private void openRepository(String repoPath) throws IOException {
+    if (repository != null && repoPath.equals(this.repoPath)) {
+      return;
+    }
+    close();
+    this.repository =
+        new FileRepositoryBuilder()
+            .readEnvironment()
+            .findGitDir(new File(repoPath))
+            .setMustExist(true)
+            .build();
+    this.reader = repository.newObjectReader();
+    this.repoPath = repoPath;
+  }
+
+  /**
+   * Build a diff file, with the base content read lazily from the blob, and the current content
+   * from the blob (if given) or the file loaded from the working tree
+   *
+   * @return
+   */
+  private DiffFile createDiffFile(
+      FileStatus status,
+      String baseRelativePath,
+      String currentRelativePath,
+      ObjectId baseID,
+      ObjectId currentID,
+      WorkingTreeLoader.LoadedFile currentFile)
+      throws IOException {
+    Charset charset = currentFile == null ? StandardCharsets.UTF_8 : currentFile.getCharset();
+
+    // only the leading bytes are needed to classify the blobs
+    FileTypeClassifier classifier = getFileTypeClassifier(this.repoPath);
+    FileType fileType;
+    if (currentRelativePath.isEmpty()) {
+      fileType = classifier.classify(baseRelativePath, baseID.name(), readBlobPrefix(baseID));
+    } else if (currentID != null) {
+      fileType =
+          classifier.classify(currentRelativePath, currentID.name(), readBlobPrefix(currentID));
+    } else {
+      fileType = classifier.classify(currentRelativePath);
+    }
+
+    FileContent baseContent = FileContent.EMPTY;
+    FileContent currentContent = FileContent.EMPTY;
+    if (fileType != FileType.BIN) {
+      if (baseID != null) {
+        baseContent = blobContent(charset, baseID);
+      }
+      if (currentID != null) {
+        currentContent = blobContent(charset, currentID);
+      } else if (currentFile != null) {
+        currentContent = FileContent.lazy(charset, currentFile::getBytes);
+      }
+    }
+    return new DiffFile(
+        0,
+        status,
+        fileType,
+        charset,
+        baseRelativePath,
+        currentRelativePath,
+        baseContent,
+        currentContent);
+  }
+
+  /**
+   * Get the id of the working tree file, reuse the id in the index if the file is not modified
+   * since last staged
+   *
+   * @return
+   */
+  private ObjectId getWorkingTreeID(
+      TreeWalk walk, int indexID, FileTreeIterator workingIterator) throws IOException {
+    DirCacheIterator indexIterator = walk.getTree(indexID, DirCacheIterator.class);
+    if (indexIterator != null
+        && !workingIterator.isModified(indexIterator.getDirCacheEntry(), true, reader)) {
+      return indexIterator.getEntryObjectId();
+    }
+    return workingIterator.getEntryObjectId();
+  }
+
+  /**
+   * Compare the commit with its first parent, with renames detected (as git diff does)
+   *
+   * @param commitID
+   * @return empty if the commit is the root commit
+   */
+  private List<DiffEntry> scanCommit(String commitID) throws IOException {
+    if (commitID.equals(scannedCommitID)) {
+      return scannedEntries;
+    }
+    List<DiffEntry> entries;
+    try (RevWalk revWalk = new RevWalk(reader)) {
+      RevCommit commit = revWalk.parseCommit(repository.resolve(commitID));
+      if (commit.getParentCount() == 0) {
+        entries = new ArrayList<>();
+      } else {
+        RevCommit parent = revWalk.parseCommit(commit.getParent(0));
+        try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+          formatter.setReader(reader, repository.getConfig());
+          formatter.setDetectRenames(true);
+          entries = formatter.scan(parent.getTree(), commit.getTree());
+        }
+      }
+    }
+    scannedCommitID = commitID;
+    scannedEntries = entries;
+    return entries;
+  }
+
+  private DiffFormatter createDiffFormatter(ByteArrayOutputStream out) {
+    DiffFormatter formatter = new DiffFormatter(out);
+    formatter.setReader(reader, repository.getConfig());
+    // no context lines, the same as git diff -U0
+    formatter.setContext(0);
+    return formatter;
+  }
+
+  /**
+   * Format the diff entries into one unified diff, and parse it with the charset of each file
+   *
+   * @param formatter
+   * @param out the output of the formatter
+   * @param entries
+   * @param charsetOfEntry
+   * @return
+   */
+  private List<Diff> formatAndParse(
+      DiffFormatter formatter,
+      ByteArrayOutputStream out,
+      List<DiffEntry> entries,
+      Function<DiffEntry, Charset> charsetOfEntry)
+      throws IOException {
+    // offset of the section in the output : charset of the file
+    Map<Integer, Charset> sectionCharsets = new HashMap<>();
+    for (DiffEntry entry : entries) {
+      sectionCharsets.put(out.size(), charsetOfEntry.apply(entry));
+      formatter.format(entry);
+      formatter.flush();
+    }
+    byte[] output = out.toByteArray();
+    // the first line of each section is its "diff --git " header
+    Map<String, Charset> headerToCharset = new HashMap<>();
+    for (Map.Entry<Integer, Charset> section : sectionCharsets.entrySet()) {
+      int start = section.getKey();
+      int end = start;
+      while (end < output.length && output[end] != '\n') {
+        end++;
+      }
+      headerToCharset.put(
+          new String(output, start, end - start, StandardCharsets.UTF_8), section.getValue());
+    }
+    return parseDiffs(output, headerToCharset::get);
+  }
+
+  private RevTree resolveTree(String revision) throws IOException {
+    ObjectId commitID = repository.resolve(revision);
+    if (commitID == null) {
+      // unborn branch (no commits yet)
+      return null;
+    }
+    try (RevWalk revWalk = new RevWalk(reader)) {
+      return revWalk.parseCommit(commitID).getTree();
+    }
+  }
+
+  private AbstractTreeIterator toTreeIterator(RevTree tree) throws IOException {
+    CanonicalTreeParser parser = new CanonicalTreeParser();
+    parser.reset(reader, tree.getId());
+    return parser;
+  }
+
+  private byte[] readBlob(ObjectId blobID) throws IOException {
+    return reader.open(blobID, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Read the leading bytes of a blob, enough to tell whether it is binary
+   *
+   * @param blobID
+   * @return
+   */
+  private byte[] readBlobPrefix(ObjectId blobID) throws IOException {
+    byte[] buffer = new byte[FileTypeClassifier.PREFIX_LENGTH];
+    int length = 0;
+    try (InputStream in = reader.open(blobID, Constants.OBJ_BLOB).openStream()) {
+      int count;
+      while (length < buffer.length
+          && (count = in.read(buffer, length, buffer.length - length)) != -1) {
+        length += count;
+      }
+    }
+    return Arrays.copyOf(buffer, length);
+  }
+
+  /**
+   * Content of a blob read only when requested, with a reader of its own (the shared reader is not
+   * thread-safe)
+   *
+   * @param charset
+   * @param blobID
+   * @return
+   */
+  private FileContent blobContent(Charset charset, ObjectId blobID) {
+    Repository repository = this.repository;
+    return FileContent.lazy(
+        charset,
+        () -> {
+          try (ObjectReader blobReader = repository.newObjectReader()) {
+            return blobReader.open(blobID, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+          }
+        });
+  }
+
+  private RevCommit parseCommit(String repoDir, String commitID) {
+    try {
+      openRepository(repoDir);
+      try (RevWalk revWalk = new RevWalk(reader)) {
+        return revWalk.parseCommit(repository.resolve(commitID));
+      }
+    } catch (IOException e) {
+      logger.error("Failed to parse commit: " + commitID);
+      e.printStackTrace();
+    }
     return null;
   }
+
+  private boolean isGitLink(FileMode mode) {
+    return mode == FileMode.GITLINK;
+  }
+
+  /** Filter the paths with the patterns, skip the excluded dirs without entering them */
+  private static class PathPatternsFilter extends TreeFilter {
+    private final PathPatterns pathPatterns;
+
+    PathPatternsFilter(PathPatterns pathPatterns) {
+      this.pathPatterns = pathPatterns;
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) {
+      String path = walker.getPathString();
+      return walker.isSubtree() ? !pathPatterns.isExcluded(path) : pathPatterns.matches(path);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+      return false;
+    }
+
+    @Override
+    public TreeFilter clone() {
+      return this;
+    }
+  }
+
+  /** A change between HEAD and the working tree */
+  private static class WorkingTreeChange {
+    private final FileStatus status;
+    private final String basePath;
+    private final String currentPath;
+    private final ObjectId baseID;
+
+    private WorkingTreeChange(
+        FileStatus status, String basePath, String currentPath, ObjectId baseID) {
+      this.status = status;
+      this.basePath = basePath;
+      this.currentPath = currentPath;
+      this.baseID = baseID;
+    }
+  }
 }
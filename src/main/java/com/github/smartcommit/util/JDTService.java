@@ -425,7 +425,8 @@ public class JDTService {
   public MethodInfo createMethodInfo(Integer fileIndex, MethodDeclaration node, String belongTo) {
     MethodInfo methodInfo = new MethodInfo();
     methodInfo.fileIndex = fileIndex;
-    methodInfo.methodBinding = node.resolveBinding();
+    IMethodBinding methodBinding = node.resolveBinding();
+    methodInfo.bindingKey = methodBinding == null ? null : methodBinding.getKey();
     methodInfo.name = node.getName().getFullyQualifiedName();
     Type returnType = node.getReturnType2();
     methodInfo.returnString = returnType == null ? "void" : returnType.toString();
@@ -551,7 +552,7 @@ public class JDTService {
       List<Expression> arguments = ((MethodInvocation) expression).arguments();
       IMethodBinding methodBinding = ((MethodInvocation) expression).resolveMethodBinding();
       if (methodBinding != null) {
-        fieldInfo.methodCalls.add(methodBinding);
+        fieldInfo.methodCalls.add(methodBinding.getKey());
       }
       Expression caller = ((MethodInvocation) expression).getExpression();
       // support static method invocation
@@ -1027,7 +1028,7 @@ public class JDTService {
     if (expression.getNodeType() == ASTNode.METHOD_INVOCATION) {
       List<Expression> arguments = ((MethodInvocation) expression).arguments();
       IMethodBinding methodBinding = ((MethodInvocation) expression).resolveMethodBinding();
-      if (methodBinding != null) methodInfo.methodCalls.add(methodBinding);
+      if (methodBinding != null) methodInfo.methodCalls.add(methodBinding.getKey());
       // support static method invocation
       Expression caller = ((MethodInvocation) expression).getExpression();
       if (caller instanceof SimpleName && caller != null) {
@@ -1349,7 +1350,7 @@ public class JDTService {
     if (expression.getNodeType() == ASTNode.METHOD_INVOCATION) {
       IMethodBinding methodBinding = ((MethodInvocation) expression).resolveMethodBinding();
       if (methodBinding != null) {
-        entityInfo.methodCalls.add(methodBinding);
+        entityInfo.methodCalls.add(methodBinding.getKey());
       }
       // support static method invocation
       Expression caller = ((MethodInvocation) expression).getExpression();
@@ -1436,7 +1437,7 @@ public class JDTService {
       IMethodBinding methodBinding =
           ((ExpressionMethodReference) expression).resolveMethodBinding();
       if (methodBinding != null) {
-        entityInfo.methodCalls.add(methodBinding);
+        entityInfo.methodCalls.add(methodBinding.getKey());
       }
     }
   }
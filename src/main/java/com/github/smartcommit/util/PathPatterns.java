@@ -0,0 +1,108 @@
+package com.github.smartcommit.util;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Include/exclude glob patterns on the relative paths of changed files (e.g. "src/**", "build"). A
+ * pattern matches a path if it matches the path itself or one of its parent dirs, the same as a
+ * git pathspec with the glob magic.
+ */
+public class PathPatterns {
+  public static final PathPatterns ALL =
+      new PathPatterns(Collections.emptyList(), Collections.emptyList());
+
+  private final List<String> includes;
+  private final List<String> excludes;
+  private final List<PathMatcher> includeMatchers;
+  private final List<PathMatcher> excludeMatchers;
+
+  /**
+   * @param includes only the paths matching one of them are kept, all if empty
+   * @param excludes the paths matching one of them are skipped
+   */
+  public PathPatterns(List<String> includes, List<String> excludes) {
+    this.includes = new ArrayList<>(includes);
+    this.excludes = new ArrayList<>(excludes);
+    this.includeMatchers = compile(includes);
+    this.excludeMatchers = compile(excludes);
+  }
+
+  public List<String> getIncludes() {
+    return includes;
+  }
+
+  public List<String> getExcludes() {
+    return excludes;
+  }
+
+  public boolean isEmpty() {
+    return includes.isEmpty() && excludes.isEmpty();
+  }
+
+  /**
+   * Whether a file should be analyzed
+   *
+   * @param relativePath
+   * @return
+   */
+  public boolean matches(String relativePath) {
+    if (!includes.isEmpty() && !matchesAny(includeMatchers, relativePath)) {
+      return false;
+    }
+    return !isExcluded(relativePath);
+  }
+
+  /**
+   * Whether a file or dir is excluded, used to skip a whole dir without listing its files
+   *
+   * @param relativePath
+   * @return
+   */
+  public boolean isExcluded(String relativePath) {
+    return matchesAny(excludeMatchers, relativePath);
+  }
+
+  /**
+   * Convert the patterns into git pathspecs, to filter the paths in git
+   *
+   * @return
+   */
+  public List<String> toPathspecs() {
+    List<String> pathspecs = new ArrayList<>();
+    for (String include : includes) {
+      pathspecs.add(":(glob)" + include);
+    }
+    for (String exclude : excludes) {
+      pathspecs.add(":(glob,exclude)" + exclude);
+    }
+    return pathspecs;
+  }
+
+  private static List<PathMatcher> compile(List<String> patterns) {
+    List<PathMatcher> matchers = new ArrayList<>();
+    for (String pattern : patterns) {
+      matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+    }
+    return matchers;
+  }
+
+  private static boolean matchesAny(List<PathMatcher> matchers, String relativePath) {
+    if (matchers.isEmpty()) {
+      return false;
+    }
+    for (Path path = Paths.get(relativePath); path != null; path = path.getParent()) {
+      for (PathMatcher matcher : matchers) {
+        if (matcher.matches(path)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,209 @@
+package com.github.smartcommit.util;
+
+import com.github.smartcommit.model.constant.FileStatus;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Parse the output of `git status --porcelain=v2 -z` as a stream, emitting each changed file once
+ * its entry is read.
+ *
+ * <p>Entries are separated by NUL, so paths with spaces (or other special characters) are kept as
+ * they are. The index (X) and working tree (Y) status are combined into the change from HEAD to
+ * the working tree.
+ */
+public class PorcelainStatusParser {
+  // number of fields before the path in each type of entry
+  private static final int ORDINARY_FIELDS = 8;
+  private static final int RENAMED_FIELDS = 9;
+  private static final int UNMERGED_FIELDS = 10;
+  // index of the blob id at HEAD (hH) in ordinary and renamed entries
+  private static final int HEAD_ID_FIELD = 6;
+
+  /** One changed file in the status */
+  public static class Entry {
+    private final FileStatus status;
+    private final String path;
+    // the path at HEAD for renamed/copied files, otherwise the same as path
+    private final String originalPath;
+    // the blob id of the original path at HEAD, null if not tracked
+    private final String headID;
+
+    public Entry(FileStatus status, String path, String originalPath) {
+      this(status, path, originalPath, null);
+    }
+
+    public Entry(FileStatus status, String path, String originalPath, String headID) {
+      this.status = status;
+      this.path = path;
+      this.originalPath = originalPath;
+      this.headID = headID;
+    }
+
+    public FileStatus getStatus() {
+      return status;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public String getOriginalPath() {
+      return originalPath;
+    }
+
+    public String getHeadID() {
+      return headID;
+    }
+
+    @Override
+    public String toString() {
+      return status.symbol + " " + (originalPath.equals(path) ? "" : originalPath + " -> ") + path;
+    }
+  }
+
+  /**
+   * Parse the status output and pass each entry to the consumer
+   *
+   * @param in the stdout of git status --porcelain=v2 -z
+   * @param consumer
+   * @return the number of entries emitted
+   */
+  public int parse(InputStream in, Consumer<Entry> consumer) throws IOException {
+    InputStream input = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    int count = 0;
+    String record;
+    while ((record = readRecord(input)) != null) {
+      if (record.isEmpty()) {
+        continue;
+      }
+      Entry entry = null;
+      switch (record.charAt(0)) {
+        case '1':
+          entry = parseOrdinary(record);
+          break;
+        case '2':
+          // the original path follows as a separate record
+          String originalPath = readRecord(input);
+          entry = parseRenamed(record, originalPath == null ? "" : originalPath);
+          break;
+        case 'u':
+          String path = getPath(record, UNMERGED_FIELDS);
+          entry = new Entry(FileStatus.UNMERGED, path, path);
+          break;
+        case '?':
+          entry = new Entry(FileStatus.UNTRACKED, record.substring(2), record.substring(2));
+          break;
+        case '!':
+          entry = new Entry(FileStatus.IGNORED, record.substring(2), record.substring(2));
+          break;
+        default:
+          // headers (# ...)
+          break;
+      }
+      if (entry != null) {
+        consumer.accept(entry);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 1 XY sub mH mI mW hH hI path
+   *
+   * @param record
+   * @return null if the file is unchanged from HEAD (e.g. added then deleted)
+   */
+  private Entry parseOrdinary(String record) {
+    char x = record.charAt(2);
+    char y = record.charAt(3);
+    String path = getPath(record, ORDINARY_FIELDS);
+    FileStatus status;
+    if (x == 'A' || y == 'A') {
+      if (y == 'D') {
+        return null;
+      }
+      status = FileStatus.ADDED;
+    } else if (x == 'D' || y == 'D') {
+      status = FileStatus.DELETED;
+    } else {
+      // modified or type changed
+      status = FileStatus.MODIFIED;
+    }
+    return new Entry(status, path, path, getField(record, HEAD_ID_FIELD));
+  }
+
+  /**
+   * 2 XY sub mH mI mW hH hI Xscore path, followed by the original path
+   *
+   * @param record
+   * @param originalPath
+   * @return
+   */
+  private Entry parseRenamed(String record, String originalPath) {
+    char x = record.charAt(2);
+    char y = record.charAt(3);
+    String path = getPath(record, RENAMED_FIELDS);
+    String headID = getField(record, HEAD_ID_FIELD);
+    if (y == 'D') {
+      // renamed (or copied) in the index, then deleted in the working tree
+      return x == 'C' ? null : new Entry(FileStatus.DELETED, originalPath, originalPath, headID);
+    }
+    return new Entry(
+        x == 'C' ? FileStatus.COPIED : FileStatus.RENAMED, path, originalPath, headID);
+  }
+
+  /**
+   * Get the path after a number of fields separated by one space
+   *
+   * @param record
+   * @param fields
+   * @return
+   */
+  private String getPath(String record, int fields) {
+    int index = 0;
+    for (int i = 0; i < fields; ++i) {
+      index = record.indexOf(' ', index) + 1;
+      if (index == 0) {
+        return "";
+      }
+    }
+    return record.substring(index);
+  }
+
+  /**
+   * Get one of the fields before the path
+   *
+   * @param record
+   * @param index
+   * @return
+   */
+  private String getField(String record, int index) {
+    String[] fields = record.split(" ", index + 2);
+    return fields.length > index + 1 ? fields[index] : null;
+  }
+
+  /**
+   * Read one NUL-terminated record
+   *
+   * @param in
+   * @return null at the end of the stream
+   */
+  private String readRecord(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1 && b != 0) {
+      buffer.write(b);
+    }
+    if (b == -1 && buffer.size() == 0) {
+      return null;
+    }
+    return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.smartcommit.util;
+
+/** The result of running an external command with {@link ProcessRunner}. */
+public class ProcessResult<T> {
+  private final int exitCode;
+  private final T output;
+  private final String error;
+  private final boolean timedOut;
+
+  public ProcessResult(int exitCode, T output, String error, boolean timedOut) {
+    this.exitCode = exitCode;
+    this.output = output;
+    this.error = error;
+    this.timedOut = timedOut;
+  }
+
+  /** -1 if the process failed to start or was killed at the deadline */
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  /** What the output handler returned after consuming the stdout */
+  public T getOutput() {
+    return output;
+  }
+
+  /** The (possibly truncated) stderr */
+  public String getError() {
+    return error;
+  }
+
+  public boolean isTimedOut() {
+    return timedOut;
+  }
+
+  public boolean isSuccessful() {
+    return exitCode == 0 && !timedOut;
+  }
+}
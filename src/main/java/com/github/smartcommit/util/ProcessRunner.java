@@ -0,0 +1,176 @@
+package com.github.smartcommit.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Run external commands (mainly git) under a directory.
+ *
+ * <p>The stdout is streamed to a handler on the calling thread while the stderr is drained
+ * concurrently (so the process never blocks on a full pipe), and the process is killed if it does
+ * not finish before the deadline.
+ */
+public class ProcessRunner {
+  private static final Logger logger = Logger.getLogger(ProcessRunner.class);
+
+  public static final long DEFAULT_TIMEOUT_SECONDS = 600;
+  // keep at most the tail of stderr
+  private static final int MAX_ERROR_LENGTH = 64 * 1024;
+
+  private static final ExecutorService drainers =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "process-stderr-drainer");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private static final ScheduledExecutorService watchdog =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "process-watchdog");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** Consume the stdout of a process as a byte stream */
+  public interface OutputHandler<T> {
+    T handle(InputStream stdout) throws IOException;
+  }
+
+  private final String dir;
+  private long timeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS);
+  private final Map<String, String> environment = new HashMap<>();
+
+  public ProcessRunner(String dir) {
+    this.dir = dir;
+  }
+
+  public ProcessRunner setTimeout(long timeout, TimeUnit unit) {
+    this.timeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
+  public ProcessRunner setEnvironment(String name, String value) {
+    this.environment.put(name, value);
+    return this;
+  }
+
+  /**
+   * Run the command and pass its stdout to the handler as it is produced
+   *
+   * @param handler
+   * @param commands
+   * @return the exit code, what the handler returns and the stderr
+   */
+  public <T> ProcessResult<T> run(OutputHandler<T> handler, String... commands) {
+    ProcessBuilder builder = new ProcessBuilder(commands).directory(new File(dir));
+    builder.environment().putAll(environment);
+    Process process;
+    try {
+      process = builder.start();
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new ProcessResult<>(-1, null, e.getMessage(), false);
+    }
+    // nothing to write to the process
+    try {
+      process.getOutputStream().close();
+    } catch (IOException ignored) {
+      // already closed
+    }
+
+    Future<String> error = drainers.submit(() -> drain(process.getErrorStream()));
+    AtomicBoolean timedOut = new AtomicBoolean(false);
+    ScheduledFuture<?> deadline =
+        watchdog.schedule(
+            () -> {
+              if (process.isAlive()) {
+                timedOut.set(true);
+                process.destroyForcibly();
+              }
+            },
+            timeoutMillis,
+            TimeUnit.MILLISECONDS);
+
+    T output = null;
+    int exitCode = -1;
+    try (InputStream stdout = process.getInputStream()) {
+      output = handler.handle(stdout);
+      // the handler may stop early, discard the rest to let the process exit
+      byte[] discarded = new byte[8192];
+      while (stdout.read(discarded) != -1) {}
+      exitCode = process.waitFor();
+    } catch (IOException e) {
+      if (!timedOut.get()) {
+        e.printStackTrace();
+      }
+      process.destroyForcibly();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      process.destroyForcibly();
+    } finally {
+      deadline.cancel(false);
+      // e.g. the handler threw a runtime exception on malformed output
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+    }
+
+    String errorOutput = "";
+    try {
+      errorOutput = error.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      error.cancel(true);
+    }
+    if (timedOut.get()) {
+      logger.error("Command timed out: " + Arrays.toString(commands));
+      exitCode = -1;
+    }
+    return new ProcessResult<>(exitCode, output, errorOutput, timedOut.get());
+  }
+
+  /**
+   * Run the command and decode its whole stdout into a string
+   *
+   * @param charset
+   * @param commands
+   * @return
+   */
+  public ProcessResult<String> runForString(Charset charset, String... commands) {
+    return run(stdout -> new String(readAllBytes(stdout), charset), commands);
+  }
+
+  private static byte[] readAllBytes(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int count;
+    while ((count = in.read(chunk)) != -1) {
+      buffer.write(chunk, 0, count);
+    }
+    return buffer.toByteArray();
+  }
+
+  private static String drain(InputStream stderr) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int count;
+    while ((count = stderr.read(chunk)) != -1) {
+      if (buffer.size() + count > MAX_ERROR_LENGTH) {
+        // keep the tail, which usually holds the actual error
+        byte[] kept = buffer.toByteArray();
+        buffer.reset();
+        int from = Math.min(kept.length, Math.max(0, kept.length + count - MAX_ERROR_LENGTH));
+        buffer.write(kept, from, kept.length - from);
+      }
+      buffer.write(chunk, 0, count);
+    }
+    return new String(buffer.toByteArray(), Charset.defaultCharset());
+  }
+}
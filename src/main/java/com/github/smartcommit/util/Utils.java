@@ -28,6 +28,9 @@ import java.util.stream.Stream;
 
 /** Helper functions to operate the file and the system. */
 public class Utils {
+  // max bytes examined to detect the charset
+  static final int CHARSET_SAMPLE_LENGTH = 64 * 1024;
+
   /**
    * Run system command under the given dir
    *
@@ -36,33 +39,10 @@ public class Utils {
    * @return
    */
   public static String runSystemCommand(String dir, Charset charSet, String... commands) {
-    StringBuilder builder = new StringBuilder();
-    try {
-      Runtime rt = Runtime.getRuntime();
-      Process proc = rt.exec(commands, null, new File(dir));
-
-      BufferedReader stdInput =
-          new BufferedReader(new InputStreamReader(proc.getInputStream(), charSet));
-
-      BufferedReader stdError =
-          new BufferedReader(new InputStreamReader(proc.getErrorStream(), charSet));
-
-      String s = null;
-      while ((s = stdInput.readLine()) != null) {
-        builder.append(s);
-        builder.append("\n");
-        //                if (verbose) log(s);
-      }
-
-      while ((s = stdError.readLine()) != null) {
-        builder.append(s);
-        builder.append("\n");
-        //                if (verbose) log(s);
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    return builder.toString();
+    // stdout followed by stderr
+    ProcessResult<String> result = new ProcessRunner(dir).runForString(charSet, commands);
+    String output = result.getOutput() == null ? "" : result.getOutput();
+    return output + result.getError();
   }
 
   /**
@@ -320,36 +300,26 @@ public class Utils {
   }
 
   /**
-   * Check the file type by file path. Two ways to determine whether a file is binary: by git diff
-   * or by file -bI, the file must accessible on disk.
+   * Check the file type by file path: binary (by .gitattributes or the content) or by extension,
+   * the file should be accessible on disk to detect binary.
    *
    * @return
    */
   public static FileType checkFileType(String repoPath, String filePath) {
-    //    String output = Utils.runSystemCommand(repoPath, StandardCharsets.UTF_8, "file", "-bI",
-    // filePath);
-    //    if(output.trim().endsWith("binary")){
-    //      return FileType.BIN;
-    //    }
-    String output =
-        Utils.runSystemCommand(
-            repoPath,
-            StandardCharsets.UTF_8,
-            "git",
-            "diff",
-            "--no-index",
-            "--numstat",
-            "/dev/null",
-            filePath);
-    if (output.trim().replaceAll("\\s+", "").startsWith("--")) {
-      return FileType.BIN;
-    } else {
-      // match type by extension
-      return Arrays.stream(FileType.values())
-          .filter(fileType -> filePath.endsWith(fileType.extension))
-          .findFirst()
-          .orElse(FileType.OTHER);
-    }
+    return new FileTypeClassifier(repoPath).classify(filePath);
+  }
+
+  /**
+   * Match the file type by the extension of the file path (for non-binary files)
+   *
+   * @param filePath
+   * @return
+   */
+  public static FileType checkFileTypeByExtension(String filePath) {
+    return Arrays.stream(FileType.values())
+        .filter(fileType -> filePath.endsWith(fileType.extension))
+        .findFirst()
+        .orElse(FileType.OTHER);
   }
 
   /**
@@ -736,12 +706,37 @@ public class Utils {
     return (double) Math.round(value * 100) / 100;
   }
 
+  /**
+   * Detect the charset of a file, by a bounded sample at the beginning of the file
+   *
+   * @param filePath
+   * @return
+   */
   public static Charset detectCharset(String filePath) {
+    byte[] sample = new byte[CHARSET_SAMPLE_LENGTH];
+    int length = 0;
+    try (InputStream in = new FileInputStream(filePath)) {
+      int count;
+      while (length < sample.length
+          && (count = in.read(sample, length, sample.length - length)) != -1) {
+        length += count;
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+    return detectCharset(Arrays.copyOf(sample, length));
+  }
+
+  /**
+   * Detect the charset of the content, only the first bytes (64KB) are examined
+   *
+   * @param content
+   * @return
+   */
+  public static Charset detectCharset(byte[] content) {
     try {
-      Path fileLocation = Paths.get(filePath);
-      byte[] content = Files.readAllBytes(fileLocation);
       UniversalDetector detector = new UniversalDetector(null);
-      detector.handleData(content, 0, content.length);
+      detector.handleData(content, 0, Math.min(content.length, CHARSET_SAMPLE_LENGTH));
       detector.dataEnd();
       String detectorCode = detector.getDetectedCharset();
       if (detectorCode != null && detectorCode.startsWith("GB")) {
@@ -753,6 +748,7 @@ public class Utils {
     return StandardCharsets.UTF_8;
   }
 
+
   /**
    * Return the file extension given a file path
    *
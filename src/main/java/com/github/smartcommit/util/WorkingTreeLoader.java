@@ -0,0 +1,182 @@
+package com.github.smartcommit.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Load the changed files in the working tree in parallel, reading each file only once for both
+ * charset detection (on a bounded sample) and decoding.
+ *
+ * <p>Files larger than the sample are only cached softly after being read. If the cache is
+ * reclaimed, the file is read again only if it is not changed since it was loaded (by the size,
+ * the modified time and the checksum), so that all readers see the same content during one
+ * analysis.
+ */
+public class WorkingTreeLoader implements AutoCloseable {
+  private final ExecutorService executor;
+
+  public WorkingTreeLoader() {
+    this(Math.min(Runtime.getRuntime().availableProcessors(), 8));
+  }
+
+  public WorkingTreeLoader(int threads) {
+    this.executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, threads),
+            runnable -> {
+              Thread thread = new Thread(runnable, "working-tree-loader");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** One file loaded from the working tree */
+  public static class LoadedFile {
+    private final String relativePath;
+    // null if the file is too large to be kept, then it is cached softly
+    private final byte[] bytes;
+    private final Charset charset;
+    // the file and its state when loaded, to check before reading it again
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final long checksum;
+    private SoftReference<byte[]> cache;
+
+    public LoadedFile(String relativePath, byte[] bytes, Charset charset) {
+      this.relativePath = relativePath;
+      this.bytes = bytes;
+      this.charset = charset;
+      this.file = null;
+      this.length = bytes.length;
+      this.lastModified = 0L;
+      this.checksum = 0L;
+      this.cache = new SoftReference<>(null);
+    }
+
+    private LoadedFile(
+        String relativePath, File file, long lastModified, byte[] bytes, Charset charset) {
+      this.relativePath = relativePath;
+      this.bytes = null;
+      this.charset = charset;
+      this.file = file;
+      this.length = bytes.length;
+      this.lastModified = lastModified;
+      this.checksum = checksum(bytes);
+      this.cache = new SoftReference<>(bytes);
+    }
+
+    public String getRelativePath() {
+      return relativePath;
+    }
+
+    /**
+     * Get the raw bytes of the file, as they were when loaded
+     *
+     * @return
+     * @throws IOException if failed to read, or the file is changed since it was loaded
+     */
+    public synchronized byte[] getBytes() throws IOException {
+      if (bytes != null) {
+        return bytes;
+      }
+      byte[] cached = cache.get();
+      if (cached != null) {
+        return cached;
+      }
+      // the cache is reclaimed, read it again
+      if (file.length() == length && file.lastModified() == lastModified) {
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length == length && checksum(content) == checksum) {
+          cache = new SoftReference<>(content);
+          return content;
+        }
+      }
+      throw new IOException(file.getPath() + " is changed since it was loaded");
+    }
+
+    public Charset getCharset() {
+      return charset;
+    }
+
+    private static long checksum(byte[] content) {
+      CRC32 crc = new CRC32();
+      crc.update(content, 0, content.length);
+      return crc.getValue();
+    }
+  }
+
+  /**
+   * Load a list of files under the repo in parallel
+   *
+   * @param repoPath
+   * @param relativePaths
+   * @return relative path : loaded file (empty if failed to read)
+   */
+  public Map<String, LoadedFile> loadAll(String repoPath, Collection<String> relativePaths) {
+    Map<String, Future<LoadedFile>> futures = new LinkedHashMap<>();
+    for (String relativePath : relativePaths) {
+      if (!futures.containsKey(relativePath)) {
+        futures.put(relativePath, submit(repoPath, relativePath));
+      }
+    }
+    Map<String, LoadedFile> results = new LinkedHashMap<>();
+    for (Map.Entry<String, Future<LoadedFile>> entry : futures.entrySet()) {
+      try {
+        results.put(entry.getKey(), entry.getValue().get());
+      } catch (InterruptedException | ExecutionException e) {
+        e.printStackTrace();
+        results.put(
+            entry.getKey(), new LoadedFile(entry.getKey(), new byte[0], StandardCharsets.UTF_8));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Start loading one file in the background
+   *
+   * @param repoPath
+   * @param relativePath
+   * @return
+   */
+  public Future<LoadedFile> submit(String repoPath, String relativePath) {
+    return executor.submit(() -> load(repoPath, relativePath));
+  }
+
+  /**
+   * Read one file and detect its charset on the head of the same bytes
+   *
+   * @param repoPath
+   * @param relativePath
+   * @return
+   */
+  public LoadedFile load(String repoPath, String relativePath) {
+    File file = new File(repoPath, relativePath);
+    // taken before reading, so that a change during the reading is found later
+    long lastModified = file.lastModified();
+    byte[] bytes = new byte[0];
+    try {
+      bytes = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    Charset charset = Utils.detectCharset(bytes);
+    if (bytes.length > Utils.CHARSET_SAMPLE_LENGTH) {
+      return new LoadedFile(relativePath, file, lastModified, bytes, charset);
+    }
+    return new LoadedFile(relativePath, bytes, charset);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
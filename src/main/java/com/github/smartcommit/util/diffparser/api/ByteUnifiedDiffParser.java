@@ -0,0 +1,583 @@
+package com.github.smartcommit.util.diffparser.api;
+
+import com.github.smartcommit.util.diffparser.api.model.Diff;
+import com.github.smartcommit.util.diffparser.api.model.Hunk;
+import com.github.smartcommit.util.diffparser.api.model.Line;
+import com.github.smartcommit.util.diffparser.api.model.Range;
+import com.github.smartcommit.util.diffparser.unified.ParserState;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A parser that parses a unified diff from its raw bytes, with the same states and results as
+ * {@link UnifiedDiffParser}.
+ *
+ * <p>The bytes are scanned once to record the offsets of each line, instead of decoding and
+ * copying every line into a string. Only the header and file name lines are decoded eagerly, the
+ * lines of hunks are views over the bytes, decoded when they are read. So the bytes are kept as
+ * long as any of the parsed hunks is reachable.
+ *
+ * <p>The lines of hunks in each file section (starting with "diff --git ") are decoded with the
+ * charset of the file, so that the diff of files in different encodings can be parsed at once. The
+ * header and file name lines hold paths, which git prints in UTF-8, so they are decoded with UTF-8.
+ *
+ * <p>Differences from {@link UnifiedDiffParser}: a hunk start line must start with "@@ -" (so that
+ * the function name after the ranges is never taken as the ranges), and an empty line is not
+ * inserted between two diffs without one (only "svn diff" does so, not git).
+ */
+public class ByteUnifiedDiffParser implements DiffParser {
+  private static final int BUFFER_SIZE = 8192;
+  // fewer sections are not worth to be parsed in parallel
+  private static final int MIN_PARALLEL_SECTIONS = 8;
+  private static final byte[] SECTION_START = bytes("diff --git ");
+  private static final byte[] HUNK_START = bytes("@@ -");
+  private static final byte[] FROM_FILE = bytes("---");
+  private static final byte[] TO_FILE = bytes("+++");
+
+  // section header line : charset of the section
+  private final Function<String, Charset> charsetOfSection;
+
+  public ByteUnifiedDiffParser() {
+    this(header -> StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param charsetOfSection the charset to decode each file section by its "diff --git " line, the
+   *     section is decoded with UTF-8 if it returns null
+   */
+  public ByteUnifiedDiffParser(Function<String, Charset> charsetOfSection) {
+    this.charsetOfSection = charsetOfSection;
+  }
+
+  @Override
+  public List<Diff> parse(InputStream in) {
+    List<Diff> parsedDiffs = new ArrayList<>();
+    parse(in, parsedDiffs::add);
+    return parsedDiffs;
+  }
+
+  /**
+   * Read the stream by file sections (starting with "diff --git "), each section is parsed and its
+   * diff is passed to the consumer once the next section starts, so only the bytes of one section
+   * are buffered (and kept by the views of its hunks).
+   *
+   * @param in the input stream to parse
+   * @param consumer receives each Diff, in the order of the InputStream.
+   */
+  @Override
+  public void parse(InputStream in, Consumer<Diff> consumer) {
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int length = 0;
+      // the start of the first incomplete line in the buffer
+      int lineStart = 0;
+      int read;
+      while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+        int scanned = length;
+        length += read;
+        for (int i = scanned; i < length; ++i) {
+          if (buffer[i] == '\n') {
+            if (lineStart > 0 && startsWith(buffer, lineStart, i, SECTION_START)) {
+              // the previous section is complete
+              parseSection(buffer, lineStart, consumer);
+              length -= lineStart;
+              i -= lineStart;
+              System.arraycopy(buffer, lineStart, buffer, 0, length);
+              lineStart = 0;
+            }
+            lineStart = i + 1;
+          }
+        }
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+      }
+      // the last line may have no line break
+      if (lineStart > 0 && startsWith(buffer, lineStart, length, SECTION_START)) {
+        parseSection(buffer, lineStart, consumer);
+        length -= lineStart;
+        System.arraycopy(buffer, lineStart, buffer, 0, length);
+      }
+      if (length > 0) {
+        parseSection(buffer, length, consumer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Parse a section from a copy of its bytes, so that the buffer can be reused */
+  private void parseSection(byte[] buffer, int length, Consumer<Diff> consumer) {
+    parse(Arrays.copyOf(buffer, length), 0, length, consumer);
+  }
+
+  /** The text is already decoded, so it is parsed as UTF-8 */
+  @Override
+  public List<Diff> parse(Reader in) {
+    try {
+      return new ByteUnifiedDiffParser()
+          .parse(IOUtils.toString(in).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public List<Diff> parse(File file) throws IOException {
+    return parse(Files.readAllBytes(file.toPath()));
+  }
+
+  @Override
+  public List<Diff> parse(byte[] bytes) {
+    return parse(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Parse the file sections in parallel (on the common ForkJoin pool), for the diff of many files.
+   * The sections are found by a quick scan for "diff --git " lines, and the diffs are returned in
+   * the same order as the sections.
+   *
+   * <p>Each section is parsed on its own, also when there are too few sections to run in parallel,
+   * so that the header lines of a section without hunks (e.g. a binary file) never go into the
+   * next diff, the same as {@link #parse(InputStream, Consumer)}.
+   *
+   * @param bytes
+   * @return
+   */
+  public List<Diff> parseInParallel(byte[] bytes) {
+    int[] sectionStarts = findSectionStarts(bytes);
+    IntStream sections = IntStream.range(0, sectionStarts.length);
+    if (sectionStarts.length >= MIN_PARALLEL_SECTIONS) {
+      sections = sections.parallel();
+    }
+    return sections
+        .mapToObj(
+            i -> {
+              int end = i + 1 < sectionStarts.length ? sectionStarts[i + 1] : bytes.length;
+              return parse(bytes, sectionStarts[i], end - sectionStarts[i]);
+            })
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Find the offsets of the lines starting with "diff --git ", the first section also includes
+   * what is before the first such line
+   *
+   * @param bytes
+   * @return
+   */
+  private int[] findSectionStarts(byte[] bytes) {
+    int[] starts = new int[16];
+    int count = 0;
+    for (int lineStart = 0; lineStart < bytes.length; ) {
+      if (count == 0 || startsWith(bytes, lineStart, bytes.length, SECTION_START)) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = lineStart;
+      }
+      int lineEnd = lineStart;
+      while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+        lineEnd++;
+      }
+      lineStart = lineEnd + 1;
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  /**
+   * Parse a part of a byte array without copying it
+   *
+   * @param bytes
+   * @param offset the start of the diff
+   * @param length the length of the diff
+   * @return
+   */
+  public List<Diff> parse(byte[] bytes, int offset, int length) {
+    List<Diff> parsedDiffs = new ArrayList<>();
+    parse(bytes, offset, length, parsedDiffs::add);
+    return parsedDiffs;
+  }
+
+  private void parse(byte[] bytes, int offset, int length, Consumer<Diff> parsedDiffs) {
+    LineIndex index = new LineIndex(bytes, offset, length);
+    // the index ends with a virtual empty line, the same as ResizingParseWindow
+    int lineCount = index.size();
+    ParserState state = ParserState.INITIAL;
+    Charset charset = StandardCharsets.UTF_8;
+    Diff currentDiff = new Diff();
+    Hunk currentHunk = null;
+    int hunkStart = 0;
+    for (int i = 0; i <= lineCount; ++i) {
+      ParserState lastState = state;
+      state = nextState(state, index, i);
+      if (currentHunk != null && !isHunkLine(state)) {
+        setHunkLines(currentHunk, index, hunkStart, i, charset);
+        currentHunk = null;
+      }
+      switch (state) {
+        case INITIAL:
+          // nothing to do
+          break;
+        case HEADER:
+          if ((lastState != ParserState.INITIAL)
+              && (lastState != ParserState.HEADER)
+              && (lastState != ParserState.END)) {
+            parsedDiffs.accept(currentDiff);
+            currentDiff = new Diff();
+          }
+          if (index.startsWith(i, SECTION_START)) {
+            Charset sectionCharset =
+                charsetOfSection.apply(index.decode(i, StandardCharsets.UTF_8));
+            charset = sectionCharset == null ? StandardCharsets.UTF_8 : sectionCharset;
+          }
+          currentDiff.getHeaderLines().add(index.decode(i, StandardCharsets.UTF_8));
+          break;
+        case FROM_FILE:
+          currentDiff.setFromFileName(
+              cutAfterTab(index.decode(i, StandardCharsets.UTF_8).substring(4)));
+          break;
+        case TO_FILE:
+          currentDiff.setToFileName(
+              cutAfterTab(index.decode(i, StandardCharsets.UTF_8).substring(4)));
+          break;
+        case HUNK_START:
+          currentHunk = parseHunkStart(index, i);
+          hunkStart = i;
+          currentDiff.getHunks().add(currentHunk);
+          break;
+        case FROM_LINE:
+        case TO_LINE:
+        case NEUTRAL_LINE:
+          // covered by the views of the hunk
+          break;
+        case END:
+          parsedDiffs.accept(currentDiff);
+          currentDiff = new Diff();
+          break;
+        default:
+          throw new IllegalStateException(String.format("Illegal parser state '%s", state));
+      }
+    }
+    if (currentHunk != null) {
+      setHunkLines(currentHunk, index, hunkStart, lineCount, charset);
+    }
+    if (currentDiff.getHunks().size() > 0) {
+      parsedDiffs.accept(currentDiff);
+    }
+  }
+
+  /**
+   * The same transitions as {@link ParserState#nextState}, on the line offsets
+   *
+   * @param state
+   * @param index
+   * @param i the focus line
+   * @return
+   */
+  private ParserState nextState(ParserState state, LineIndex index, int i) {
+    switch (state) {
+      case INITIAL:
+      case HEADER:
+        return isFromFile(index, i) ? ParserState.FROM_FILE : ParserState.HEADER;
+      case FROM_FILE:
+        if (index.startsWith(i, TO_FILE)) {
+          return ParserState.TO_FILE;
+        }
+        throw new IllegalStateException(
+            "A FROM_FILE line ('---') must be directly followed by a TO_FILE line ('+++')!");
+      case TO_FILE:
+        if (index.startsWith(i, HUNK_START)) {
+          return ParserState.HUNK_START;
+        }
+        throw new IllegalStateException(
+            "A TO_FILE line ('+++') must be directly followed by a HUNK_START line ('@@')!");
+      case HUNK_START:
+        if (index.firstByte(i) == '-') {
+          return ParserState.FROM_LINE;
+        } else if (index.firstByte(i) == '+') {
+          return ParserState.TO_LINE;
+        } else {
+          return ParserState.NEUTRAL_LINE;
+        }
+      case FROM_LINE:
+      case TO_LINE:
+      case NEUTRAL_LINE:
+        int first = index.firstByte(i);
+        if (first == '-') {
+          return ParserState.FROM_LINE;
+        } else if (first == '+') {
+          return ParserState.TO_LINE;
+        } else if (isEnd(index, i)) {
+          return ParserState.END;
+        } else if (index.startsWith(i, HUNK_START)) {
+          return ParserState.HUNK_START;
+        } else if (first == ' ' || first == '\\') {
+          return ParserState.NEUTRAL_LINE;
+        } else {
+          return ParserState.HEADER;
+        }
+      case END:
+      default:
+        return ParserState.INITIAL;
+    }
+  }
+
+  private boolean isHunkLine(ParserState state) {
+    return state == ParserState.FROM_LINE
+        || state == ParserState.TO_LINE
+        || state == ParserState.NEUTRAL_LINE;
+  }
+
+  private boolean isFromFile(LineIndex index, int i) {
+    return index.startsWith(i, FROM_FILE) && index.startsWith(i + 1, TO_FILE);
+  }
+
+  /**
+   * An empty line ends the diff if it is followed by the next diff or the end of the stream,
+   * before another empty line
+   */
+  private boolean isEnd(LineIndex index, int i) {
+    if (!index.isBlank(i)) {
+      return false;
+    }
+    for (int j = i + 1; j <= index.size(); ++j) {
+      if (isFromFile(index, j)) {
+        return true;
+      } else if (index.isBlank(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parse "@@ -from[,count] +to[,count] @@"
+   *
+   * @param index
+   * @param i
+   * @return
+   */
+  private Hunk parseHunkStart(LineIndex index, int i) {
+    int[] position = {index.start(i) + HUNK_START.length};
+    int end = index.end(i);
+    byte[] bytes = index.bytes;
+    int fromStart = parseNumber(bytes, position, end);
+    int fromCount = 1;
+    if (fromStart >= 0 && position[0] < end && bytes[position[0]] == ',') {
+      position[0]++;
+      fromCount = parseNumber(bytes, position, end);
+    }
+    int toStart = -1;
+    int toCount = 1;
+    if (position[0] + 1 < end && bytes[position[0]] == ' ' && bytes[position[0] + 1] == '+') {
+      position[0] += 2;
+      toStart = parseNumber(bytes, position, end);
+      if (toStart >= 0 && position[0] < end && bytes[position[0]] == ',') {
+        position[0]++;
+        toCount = parseNumber(bytes, position, end);
+      }
+    }
+    if (fromStart < 0 || fromCount < 0 || toStart < 0 || toCount < 0) {
+      throw new IllegalStateException(
+          String.format(
+              "No line ranges found in the following hunk start line: '%s'. Expected something "
+                  + "like '-1,5 +3,5'.",
+              index.decode(i, StandardCharsets.UTF_8)));
+    }
+    Hunk hunk = new Hunk();
+    hunk.setFromFileRange(new Range(fromStart, fromCount));
+    hunk.setToFileRange(new Range(toStart, toCount));
+    return hunk;
+  }
+
+  /**
+   * Parse the decimal number at the position and move the position after it
+   *
+   * @return -1 if there is no digit
+   */
+  private int parseNumber(byte[] bytes, int[] position, int end) {
+    int value = 0;
+    int start = position[0];
+    while (position[0] < end && bytes[position[0]] >= '0' && bytes[position[0]] <= '9') {
+      value = value * 10 + (bytes[position[0]] - '0');
+      position[0]++;
+    }
+    return position[0] == start ? -1 : value;
+  }
+
+  /**
+   * Set the lines of a hunk as views over the bytes
+   *
+   * @param hunk
+   * @param index
+   * @param start the hunk start line
+   * @param end the line after the last line of the hunk
+   * @param charset
+   */
+  private void setHunkLines(Hunk hunk, LineIndex index, int start, int end, Charset charset) {
+    hunk.setRawLines(new RawLineList(index, start, end, charset));
+    hunk.setLines(new LineList(index, start + 1, end, charset));
+  }
+
+  /** Cuts a TAB and all following characters from a String. */
+  private String cutAfterTab(String line) {
+    int tab = line.lastIndexOf('\t');
+    return tab < 0 ? line : line.substring(0, tab);
+  }
+
+  private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+    if (end - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (bytes[start + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] bytes(String ascii) {
+    return ascii.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /** The start and end offsets of each line, without the line break */
+  private static class LineIndex {
+    private final byte[] bytes;
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size = 0;
+
+    LineIndex(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      int limit = offset + length;
+      int lineStart = offset;
+      for (int i = offset; i < limit; ++i) {
+        if (bytes[i] == '\n') {
+          add(lineStart, i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i);
+          lineStart = i + 1;
+        }
+      }
+      if (lineStart < limit) {
+        add(lineStart, bytes[limit - 1] == '\r' ? limit - 1 : limit);
+      }
+    }
+
+    private void add(int start, int end) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+    }
+
+    /** The number of lines, the line at size is the virtual empty line */
+    int size() {
+      return size;
+    }
+
+    /** Lines after the end are empty */
+    int start(int line) {
+      return line < size ? starts[line] : 0;
+    }
+
+    int end(int line) {
+      return line < size ? ends[line] : 0;
+    }
+
+    /** @return -1 if the line is empty */
+    int firstByte(int line) {
+      return start(line) < end(line) ? bytes[start(line)] : -1;
+    }
+
+    boolean startsWith(int line, byte[] prefix) {
+      return ByteUnifiedDiffParser.startsWith(bytes, start(line), end(line), prefix);
+    }
+
+    /** Whether the line is empty after trimming, the same as String.trim() */
+    boolean isBlank(int line) {
+      for (int i = start(line); i < end(line); ++i) {
+        // bytes of multi-byte characters are negative
+        if (bytes[i] < 0 || bytes[i] > ' ') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String decode(int line, Charset charset) {
+      return new String(bytes, start(line), end(line) - start(line), charset);
+    }
+  }
+
+  /** The raw lines of a hunk, including the hunk start line */
+  private static class RawLineList extends AbstractList<String> {
+    private final LineIndex index;
+    private final int from;
+    private final int to;
+    private final Charset charset;
+
+    RawLineList(LineIndex index, int from, int to, Charset charset) {
+      this.index = index;
+      this.from = from;
+      this.to = to;
+      this.charset = charset;
+    }
+
+    @Override
+    public String get(int i) {
+      if (i < 0 || i >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+      }
+      return index.decode(from + i, charset);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+  }
+
+  /** The typed lines of a hunk, with the leading "-"/"+" removed from removed/added lines */
+  private static class LineList extends AbstractList<Line> {
+    private final RawLineList rawLines;
+
+    LineList(LineIndex index, int from, int to, Charset charset) {
+      this.rawLines = new RawLineList(index, from, to, charset);
+    }
+
+    @Override
+    public Line get(int i) {
+      String rawLine = rawLines.get(i);
+      switch (rawLine.isEmpty() ? ' ' : rawLine.charAt(0)) {
+        case '-':
+          return new Line(Line.LineType.FROM, rawLine.substring(1));
+        case '+':
+          return new Line(Line.LineType.TO, rawLine.substring(1));
+        default:
+          return new Line(Line.LineType.NEUTRAL, rawLine);
+      }
+    }
+
+    @Override
+    public int size() {
+      return rawLines.size();
+    }
+  }
+}
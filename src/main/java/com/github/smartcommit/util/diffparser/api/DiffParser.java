@@ -18,7 +18,9 @@ import com.github.smartcommit.util.diffparser.api.model.Diff;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface to a parser that parses a textual diff between two text files. See the javadoc of the
@@ -37,6 +39,23 @@ public interface DiffParser {
    */
   List<Diff> parse(InputStream in);
 
+  /**
+   * Parses Diffs from a textual InputStream and passes each Diff to the consumer as soon as it is
+   * complete, so that the Diffs can be processed while the rest of the stream is parsed.
+   *
+   * @param in the input stream to parse
+   * @param consumer receives each Diff, in the order of the InputStream.
+   */
+  void parse(InputStream in, Consumer<Diff> consumer);
+
+  /**
+   * Constructs a list of Diffs from a textual Reader, lines are consumed as they are read.
+   *
+   * @param in the reader to parse
+   * @return list of Diff objects parsed from the Reader.
+   */
+  List<Diff> parse(Reader in);
+
   /**
    * Constructs a list of Diffs from a textual byte array.
    *
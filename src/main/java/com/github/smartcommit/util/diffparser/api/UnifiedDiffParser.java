@@ -23,6 +23,7 @@ import com.github.smartcommit.util.diffparser.unified.ResizingParseWindow;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,9 +59,24 @@ public class UnifiedDiffParser implements DiffParser {
 
   @Override
   public List<Diff> parse(InputStream in) {
+    return parse(new InputStreamReader(in));
+  }
+
+  @Override
+  public void parse(InputStream in, Consumer<Diff> consumer) {
+    parse(new InputStreamReader(in), consumer);
+  }
+
+  @Override
+  public List<Diff> parse(Reader in) {
+    List<Diff> parsedDiffs = new ArrayList<>();
+    parse(in, parsedDiffs::add);
+    return parsedDiffs;
+  }
+
+  private void parse(Reader in, Consumer<Diff> parsedDiffs) {
     ResizingParseWindow window = new ResizingParseWindow(in);
     ParserState state = ParserState.INITIAL;
-    List<Diff> parsedDiffs = new ArrayList<>();
     Diff currentDiff = new Diff();
     String currentLine;
     while ((currentLine = window.slideForward()) != null) {
@@ -74,7 +90,7 @@ public class UnifiedDiffParser implements DiffParser {
           if ((lastState != ParserState.INITIAL)
               && (lastState != ParserState.HEADER)
               && (lastState != ParserState.END)) {
-            parsedDiffs.add(currentDiff);
+            parsedDiffs.accept(currentDiff);
             currentDiff = new Diff();
           }
           parseHeader(currentDiff, currentLine);
@@ -98,7 +114,7 @@ public class UnifiedDiffParser implements DiffParser {
           parseNeutralLine(currentDiff, currentLine);
           break;
         case END:
-          parsedDiffs.add(currentDiff);
+          parsedDiffs.accept(currentDiff);
           currentDiff = new Diff();
           break;
         default:
@@ -108,11 +124,9 @@ public class UnifiedDiffParser implements DiffParser {
 
     // Something like that may be needed to make sure no diffs are lost.
     if (currentDiff.getHunks().size() > 0) {
-      parsedDiffs.add(currentDiff);
+      parsedDiffs.accept(currentDiff);
       currentDiff = new Diff();
     }
-
-    return parsedDiffs;
   }
 
   private void parseNeutralLine(Diff currentDiff, String currentLine) {
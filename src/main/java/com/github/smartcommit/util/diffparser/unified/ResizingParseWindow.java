@@ -41,8 +41,11 @@ public class ResizingParseWindow implements ParseWindow {
   private boolean isEndOfStream = false;
 
   public ResizingParseWindow(InputStream in) {
-    Reader unbufferedReader = new InputStreamReader(in);
-    this.reader = new BufferedReader(unbufferedReader);
+    this(new InputStreamReader(in));
+  }
+
+  public ResizingParseWindow(Reader in) {
+    this.reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
   }
 
   public void addIgnorePattern(String ignorePattern) {
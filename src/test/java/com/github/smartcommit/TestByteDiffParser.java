@@ -0,0 +1,166 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.util.diffparser.api.ByteUnifiedDiffParser;
+import com.github.smartcommit.util.diffparser.api.UnifiedDiffParser;
+import com.github.smartcommit.util.diffparser.api.model.Diff;
+import com.github.smartcommit.util.diffparser.api.model.Hunk;
+import com.github.smartcommit.util.diffparser.api.model.Line;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestByteDiffParser {
+  private static final String DIFF =
+      "diff --git a/src/A.java b/src/A.java\n"
+          + "index 3b18e51..a4c5d3e 100644\n"
+          + "--- a/src/A.java\n"
+          + "+++ b/src/A.java\n"
+          + "@@ -3 +3,2 @@ class A {\n"
+          + "-  int a;\n"
+          + "+  int b;\n"
+          + "+  int c;\n"
+          + "@@ -10,2 +11,0 @@ class A {\n"
+          + "-  }\n"
+          + "-}\n"
+          + "\\ No newline at end of file\n"
+          + "diff --git a/b.txt b/b.txt\r\n"
+          + "new file mode 100644\r\n"
+          + "--- /dev/null\r\n"
+          + "+++ b/b.txt\r\n"
+          + "@@ -0,0 +1 @@\r\n"
+          + "+added\r\n";
+
+  @Test
+  public void testSameAsUnifiedDiffParser() {
+    byte[] bytes = DIFF.getBytes(StandardCharsets.UTF_8);
+    List<Diff> expected = new UnifiedDiffParser().parse(bytes);
+    List<Diff> actual = new ByteUnifiedDiffParser().parse(bytes);
+
+    assertThat(actual).hasSize(2);
+    assertThat(actual).hasSameSizeAs(expected);
+    for (int i = 0; i < expected.size(); ++i) {
+      assertThat(actual.get(i).getHeaderLines()).isEqualTo(expected.get(i).getHeaderLines());
+      assertThat(actual.get(i).getFromFileName()).isEqualTo(expected.get(i).getFromFileName());
+      assertThat(actual.get(i).getToFileName()).isEqualTo(expected.get(i).getToFileName());
+      List<Hunk> expectedHunks = expected.get(i).getHunks();
+      List<Hunk> actualHunks = actual.get(i).getHunks();
+      assertThat(actualHunks).hasSameSizeAs(expectedHunks);
+      for (int j = 0; j < expectedHunks.size(); ++j) {
+        Hunk expectedHunk = expectedHunks.get(j);
+        Hunk actualHunk = actualHunks.get(j);
+        assertThat(actualHunk.getFromFileRange().getLineStart())
+            .isEqualTo(expectedHunk.getFromFileRange().getLineStart());
+        assertThat(actualHunk.getFromFileRange().getLineCount())
+            .isEqualTo(expectedHunk.getFromFileRange().getLineCount());
+        assertThat(actualHunk.getToFileRange().getLineStart())
+            .isEqualTo(expectedHunk.getToFileRange().getLineStart());
+        assertThat(actualHunk.getToFileRange().getLineCount())
+            .isEqualTo(expectedHunk.getToFileRange().getLineCount());
+        assertThat(actualHunk.getRawLines()).isEqualTo(expectedHunk.getRawLines());
+        assertThat(actualHunk.getLines()).hasSameSizeAs(expectedHunk.getLines());
+        for (int k = 0; k < expectedHunk.getLines().size(); ++k) {
+          Line expectedLine = expectedHunk.getLines().get(k);
+          Line actualLine = actualHunk.getLines().get(k);
+          assertThat(actualLine.getLineType()).isEqualTo(expectedLine.getLineType());
+          assertThat(actualLine.getContent()).isEqualTo(expectedLine.getContent());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPushEachDiff() {
+    // return one byte per read, to split lines and sections across reads
+    InputStream in =
+        new ByteArrayInputStream(DIFF.getBytes(StandardCharsets.UTF_8)) {
+          @Override
+          public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+          }
+        };
+    List<Diff> diffs = new ArrayList<>();
+    new ByteUnifiedDiffParser().parse(in, diffs::add);
+
+    assertThat(diffs).hasSize(2);
+    assertThat(diffs.get(0).getToFileName()).isEqualTo("b/src/A.java");
+    assertThat(diffs.get(0).getHunks()).hasSize(2);
+    assertThat(diffs.get(0).getHunks().get(1).getRawLines())
+        .containsExactly(
+            "@@ -10,2 +11,0 @@ class A {", "-  }", "-}", "\\ No newline at end of file");
+    assertThat(diffs.get(1).getHeaderLines())
+        .containsExactly("diff --git a/b.txt b/b.txt", "new file mode 100644");
+    assertThat(diffs.get(1).getHunks().get(0).getLines().get(0).getContent()).isEqualTo("added");
+  }
+
+  @Test
+  public void testParseInParallel() {
+    StringBuilder diff = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      diff.append(DIFF.replace("A.java", "A" + i + ".java"));
+    }
+    byte[] bytes = diff.toString().getBytes(StandardCharsets.UTF_8);
+    List<Diff> expected = new ByteUnifiedDiffParser().parse(bytes);
+    List<Diff> actual = new ByteUnifiedDiffParser().parseInParallel(bytes);
+
+    assertThat(actual).hasSize(200);
+    for (int i = 0; i < expected.size(); ++i) {
+      assertThat(actual.get(i).getToFileName()).isEqualTo(expected.get(i).getToFileName());
+      assertThat(actual.get(i).getHeaderLines()).isEqualTo(expected.get(i).getHeaderLines());
+      assertThat(actual.get(i).getHunks().get(0).getRawLines())
+          .isEqualTo(expected.get(i).getHunks().get(0).getRawLines());
+    }
+  }
+
+  @Test
+  public void testBinarySectionInParallel() {
+    String binary =
+        "diff --git a/img.png b/img.png\n"
+            + "index 1111111..2222222 100644\n"
+            + "Binary files a/img.png and b/img.png differ\n";
+    // the same headers whether the sections are parsed in parallel or not
+    for (int files : new int[] {3, 9}) {
+      StringBuilder diff = new StringBuilder(binary);
+      for (int i = 1; i < files; i += 2) {
+        diff.append(DIFF.replace("A.java", "A" + i + ".java"));
+      }
+      List<Diff> diffs =
+          new ByteUnifiedDiffParser()
+              .parseInParallel(diff.toString().getBytes(StandardCharsets.UTF_8));
+
+      assertThat(diffs).hasSize(files - 1);
+      assertThat(diffs.get(0).getHeaderLines())
+          .containsExactly(
+              "diff --git a/src/A1.java b/src/A1.java", "index 3b18e51..a4c5d3e 100644");
+    }
+  }
+
+  @Test
+  public void testCharsetOfSection() throws IOException {
+    Charset gbk = Charset.forName("GBK");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(
+        ("diff --git a/g.txt b/g.txt\n--- a/g.txt\n+++ b/g.txt\n@@ -1 +1 @@\n-旧\n+新\n")
+            .getBytes(gbk));
+    out.write(
+        ("diff --git a/u.txt b/u.txt\n--- a/u.txt\n+++ b/u.txt\n@@ -1 +1 @@\n-旧\n+新\n")
+            .getBytes(StandardCharsets.UTF_8));
+    List<Diff> diffs =
+        new ByteUnifiedDiffParser(header -> header.contains("g.txt") ? gbk : null)
+            .parse(out.toByteArray());
+
+    assertThat(diffs).hasSize(2);
+    for (Diff diff : diffs) {
+      assertThat(diff.getHunks().get(0).getLines().get(0).getContent()).isEqualTo("旧");
+      assertThat(diff.getHunks().get(0).getLines().get(1).getContent()).isEqualTo("新");
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.model.graph.*;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.builder.GraphTypeBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestCompactGraph {
+  @Test
+  public void testFreeze() {
+    Graph<Node, Edge> graph =
+        GraphTypeBuilder.<Node, Edge>directed()
+            .allowingMultipleEdges(true)
+            .allowingSelfLoops(true)
+            .edgeClass(Edge.class)
+            .weighted(true)
+            .buildGraph();
+    Node pkg = new Node(1, NodeType.PACKAGE, "p", "p");
+    Node cls = new Node(2, NodeType.CLASS, "A", "p.A");
+    Node foo = new Node(3, NodeType.METHOD, "foo()", "p.A:foo()");
+    Node bar = new Node(4, NodeType.METHOD, "bar()", "p.A:bar()");
+    foo.isInDiffHunk = true;
+    foo.diffHunkIndex = "0:1";
+    for (Node node : new Node[] {pkg, cls, foo, bar}) {
+      graph.addVertex(node);
+    }
+    graph.addEdge(pkg, cls, new Edge(1, EdgeType.CONTAIN));
+    graph.addEdge(cls, foo, new Edge(2, EdgeType.DEFINE));
+    graph.addEdge(cls, bar, new Edge(3, EdgeType.DEFINE));
+    Edge call = new Edge(4, EdgeType.CALL);
+    call.increaseWeight();
+    graph.addEdge(foo, bar, call);
+    graph.addEdge(foo, bar, new Edge(5, EdgeType.CALL));
+
+    CompactGraph compactGraph = CompactGraph.freeze(graph);
+    assertThat(compactGraph.nodeCount()).isEqualTo(4);
+    assertThat(compactGraph.edgeCount()).isEqualTo(5);
+    assertThat(compactGraph.getHunkNodes()).containsExactly(2);
+    assertThat(compactGraph.getDiffHunkIndex(2)).isEqualTo("0:1");
+    assertThat(compactGraph.isInDiffHunk(3)).isFalse();
+    assertThat(compactGraph.getDiffHunkIndex(3)).isEmpty();
+    assertThat(compactGraph.getNodeId(1)).isEqualTo(2);
+    assertThat(compactGraph.getNodeType(1)).isEqualTo(NodeType.CLASS);
+
+    // the parallel edges are kept in order
+    assertThat(compactGraph.outDegreeOf(2)).isEqualTo(2);
+    int first = compactGraph.getOutgoingEdge(2, 0);
+    int second = compactGraph.getOutgoingEdge(2, 1);
+    assertThat(compactGraph.getEdgeId(first)).isEqualTo(4);
+    assertThat(compactGraph.getEdgeWeight(first)).isEqualTo(2);
+    assertThat(compactGraph.getEdgeId(second)).isEqualTo(5);
+    assertThat(compactGraph.getEdgeType(second)).isEqualTo(EdgeType.CALL);
+    assertThat(compactGraph.getEdgeTarget(second)).isEqualTo(3);
+
+    assertThat(compactGraph.inDegreeOf(3)).isEqualTo(3);
+    int define = compactGraph.getIncomingEdge(3, 0);
+    assertThat(compactGraph.getEdgeType(define)).isEqualTo(EdgeType.DEFINE);
+    assertThat(compactGraph.getEdgeSource(define)).isEqualTo(1);
+    assertThat(compactGraph.inDegreeOf(0)).isZero();
+    assertThat(compactGraph.outDegreeOf(3)).isZero();
+  }
+}
@@ -0,0 +1,111 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.io.ContentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestContentStore {
+  @TempDir File tempDir;
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static int materialize(ContentStore store, String dir, Map<String, byte[]> contents) {
+    ContentStore.TreeWriter writer = store.openTree(dir);
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      writer.put(entry.getKey(), entry.getValue());
+    }
+    return writer.finish();
+  }
+
+  @Test
+  public void testHash() {
+    // git hash-object of "hello\n" and of an empty file
+    assertThat(ContentStore.hash(bytes("hello\n")))
+        .isEqualTo("ce013625030ba8dba906f756967f9e9ca394464a");
+    assertThat(ContentStore.hash(new byte[0]))
+        .isEqualTo("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391");
+  }
+
+  @Test
+  public void testMaterialize() throws IOException {
+    ContentStore store = new ContentStore(tempDir.getAbsolutePath());
+    String dir = new File(tempDir, "base").getAbsolutePath();
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("src/A.java", bytes("class A {}"));
+    contents.put("src/p/B.java", bytes("class B {}"));
+    contents.put("C.java", bytes("class C {}"));
+    assertThat(materialize(store, dir, contents)).isEqualTo(3);
+
+    // only the changed files are written again, and the files that are gone are deleted
+    contents.put("src/A.java", bytes("class A { int a; }"));
+    contents.remove("src/p/B.java");
+    assertThat(materialize(store, dir, contents)).isEqualTo(1);
+    assertThat(read(new File(dir, "src/A.java"))).isEqualTo("class A { int a; }");
+    assertThat(new File(dir, "src/p")).doesNotExist();
+    assertThat(new File(dir, "C.java")).exists();
+
+    // a file changed outside the store is written again
+    File file = new File(dir, "C.java");
+    Files.write(file.toPath(), bytes("class D {}"));
+    file.setLastModified(file.lastModified() - 10_000L);
+    ContentStore.TreeWriter writer = store.openTree(dir);
+    writer.put("src/A.java", bytes("class A { int a; }"));
+    writer.put("C.java", bytes("class C {}"));
+    assertThat(writer.finish()).isEqualTo(1);
+    assertThat(read(file)).isEqualTo("class C {}");
+  }
+
+  @Test
+  public void testUnfinishedTree() throws IOException {
+    ContentStore store = new ContentStore(tempDir.getAbsolutePath());
+    String dir = new File(tempDir, "current").getAbsolutePath();
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("A.java", bytes("class A {}"));
+    contents.put("B.java", bytes("class B {}"));
+    materialize(store, dir, contents);
+
+    // stopped halfway, so the dir is rebuilt from scratch next time
+    store.openTree(dir).put("A.java", bytes("class A { int a; }"));
+    assertThat(materialize(store, dir, contents)).isEqualTo(2);
+    assertThat(read(new File(dir, "A.java"))).isEqualTo("class A {}");
+  }
+
+  @Test
+  public void testEvict() {
+    ContentStore store = new ContentStore(tempDir.getAbsolutePath(), 25L);
+    store.putArtifact(ContentStore.hash(bytes("a")), "summary", bytes("0123456789"));
+    store.putArtifact(ContentStore.hash(bytes("b")), "summary", bytes("0123456789"));
+    store.putArtifact(ContentStore.hash(bytes("c")), "summary", bytes("0123456789"));
+    File artifactsDir = new File(store.getStoreDir(), "artifacts");
+    long time = System.currentTimeMillis();
+    int i = 0;
+    for (String name : new String[] {"a", "b", "c"}) {
+      String hash = ContentStore.hash(bytes(name));
+      File file =
+          new File(artifactsDir, "summary/" + hash.substring(0, 2) + "/" + hash.substring(2));
+      file.setLastModified(time - 100_000L + 10_000L * i++);
+    }
+    // the least recently used one is evicted
+    assertThat(store.getArtifact(ContentStore.hash(bytes("a")), "summary")).isNotNull();
+    assertThat(store.evict()).isEqualTo(10L);
+    assertThat(store.getArtifact(ContentStore.hash(bytes("b")), "summary")).isNull();
+    assertThat(store.getArtifact(ContentStore.hash(bytes("a")), "summary")).isNotNull();
+    assertThat(store.getArtifact(ContentStore.hash(bytes("c")), "summary")).isNotNull();
+    assertThat(store.evict()).isZero();
+  }
+}
@@ -0,0 +1,41 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.model.constant.FileType;
+import com.github.smartcommit.util.FileTypeClassifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestFileTypeClassifier {
+  @TempDir File tempDir;
+
+  private void write(String path, byte[] content) throws IOException {
+    Files.write(new File(tempDir, path).toPath(), content);
+  }
+
+  @Test
+  public void testAttributes() throws IOException {
+    write(
+        ".gitattributes", "*.dat text\n*.txt -diff\n*.bin diff\n".getBytes(StandardCharsets.UTF_8));
+    byte[] withNul = {'a', 0, 'b'};
+    write("x.dat", withNul);
+    write("y.txt", "hi\n".getBytes(StandardCharsets.UTF_8));
+    write("z.bin", withNul);
+    write("w.java", withNul);
+
+    FileTypeClassifier classifier = new FileTypeClassifier(tempDir.getAbsolutePath());
+    // text only sets the line endings, the same as git diff
+    assertThat(classifier.classify("x.dat")).isEqualTo(FileType.BIN);
+    assertThat(classifier.classify("y.txt")).isEqualTo(FileType.BIN);
+    assertThat(classifier.classify("z.bin")).isNotEqualTo(FileType.BIN);
+    assertThat(classifier.classify("w.java")).isEqualTo(FileType.BIN);
+    assertThat(classifier.classify("z.bin", "1234", withNul)).isNotEqualTo(FileType.BIN);
+    assertThat(classifier.classify("v.java", "5678", withNul)).isEqualTo(FileType.BIN);
+  }
+}
@@ -0,0 +1,124 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.core.GraphBuilder;
+import com.github.smartcommit.model.DiffFile;
+import com.github.smartcommit.model.constant.FileStatus;
+import com.github.smartcommit.model.constant.FileType;
+import com.github.smartcommit.model.constant.Version;
+import com.github.smartcommit.model.graph.Edge;
+import com.github.smartcommit.model.graph.Node;
+import org.jgrapht.Graph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestFragmentCache {
+  private static final String A =
+      "package p;\npublic class A {\n  void bar() {\n    new B().foo(1);\n  }\n}\n";
+  private static final String B = "package p;\npublic class B {\n  void foo(long x) {}\n}\n";
+  private static final String B_OVERLOADED =
+      "package p;\npublic class B {\n  void foo(long x) {}\n\n  void foo(int x) {}\n}\n";
+  private static final String B_BODY_CHANGED =
+      "package p;\npublic class B {\n  void foo(long x) {\n    x++;\n  }\n}\n";
+
+  @TempDir File tempDir;
+
+  /** Write the current version of the files and create the diff files of them */
+  private List<DiffFile> collect(String srcDir, String... pathsAndContents) throws IOException {
+    List<DiffFile> diffFiles = new ArrayList<>();
+    for (int i = 0; i < pathsAndContents.length; i += 2) {
+      String path = pathsAndContents[i];
+      String content = pathsAndContents[i + 1];
+      File file = new File(srcDir, path);
+      file.getParentFile().mkdirs();
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      diffFiles.add(
+          new DiffFile(
+              i / 2,
+              FileStatus.MODIFIED,
+              FileType.JAVA,
+              StandardCharsets.UTF_8,
+              path,
+              path,
+              "package p;\n",
+              content));
+    }
+    return diffFiles;
+  }
+
+  private static Set<String> dump(Graph<Node, Edge> graph) {
+    Set<String> lines = new TreeSet<>();
+    for (Node node : graph.vertexSet()) {
+      lines.add(node.getType() + " " + node.getQualifiedName());
+    }
+    for (Edge edge : graph.edgeSet()) {
+      lines.add(
+          graph.getEdgeSource(edge).getQualifiedName()
+              + " -"
+              + edge.getType()
+              + "-> "
+              + graph.getEdgeTarget(edge).getQualifiedName()
+              + " "
+              + edge.getWeight());
+    }
+    return lines;
+  }
+
+  @Test
+  public void testDependencyChanged() throws IOException {
+    String srcDir = new File(tempDir, Version.CURRENT.asString()).getAbsolutePath();
+    GraphBuilder.FragmentCache fragmentCache = new GraphBuilder.FragmentCache();
+    List<DiffFile> diffFiles = collect(srcDir, "src/p/A.java", A, "src/p/B.java", B);
+    GraphBuilder graphBuilder = new GraphBuilder(srcDir, diffFiles);
+    graphBuilder.setFragmentCache(fragmentCache);
+    graphBuilder.call();
+    assertThat(fragmentCache.size()).isEqualTo(2);
+
+    // A stays the same, but its call now binds to the new overload in B
+    diffFiles = collect(srcDir, "src/p/A.java", A, "src/p/B.java", B_OVERLOADED);
+    graphBuilder = new GraphBuilder(srcDir, diffFiles);
+    graphBuilder.setFragmentCache(fragmentCache);
+    Set<String> cached = dump(graphBuilder.call());
+    Set<String> fresh = dump(new GraphBuilder(srcDir, diffFiles).call());
+    assertThat(cached).isEqualTo(fresh);
+    assertThat(fresh).anyMatch(line -> line.contains("CALL") && line.contains("foo(int x)"));
+
+    // reused as long as none of the files changes
+    graphBuilder = new GraphBuilder(srcDir, diffFiles);
+    graphBuilder.setFragmentCache(fragmentCache);
+    assertThat(dump(graphBuilder.call())).isEqualTo(fresh);
+    assertThat(fragmentCache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testBodyChanged() throws IOException {
+    String srcDir = new File(tempDir, Version.CURRENT.asString()).getAbsolutePath();
+    GraphBuilder.FragmentCache fragmentCache = new GraphBuilder.FragmentCache();
+    List<DiffFile> diffFiles = collect(srcDir, "src/p/A.java", A, "src/p/B.java", B);
+    GraphBuilder graphBuilder = new GraphBuilder(srcDir, diffFiles);
+    graphBuilder.setFragmentCache(fragmentCache);
+    Set<Node> nodes = graphBuilder.call().vertexSet();
+
+    // the declarations of B stay the same, so the fragment of A (with its nodes) is reused
+    diffFiles = collect(srcDir, "src/p/A.java", A, "src/p/B.java", B_BODY_CHANGED);
+    graphBuilder = new GraphBuilder(srcDir, diffFiles);
+    graphBuilder.setFragmentCache(fragmentCache);
+    Graph<Node, Edge> graph = graphBuilder.call();
+    assertThat(dump(graph)).isEqualTo(dump(new GraphBuilder(srcDir, diffFiles).call()));
+    for (Node node : graph.vertexSet()) {
+      boolean reused = nodes.stream().anyMatch(old -> old == node);
+      if (node.getQualifiedName().startsWith("p.A")) {
+        assertThat(reused).as(node.getQualifiedName()).isTrue();
+      } else if (node.getQualifiedName().startsWith("p.B")) {
+        assertThat(reused).as(node.getQualifiedName()).isFalse();
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.model.constant.FileStatus;
+import com.github.smartcommit.util.PathPatterns;
+import com.github.smartcommit.util.PorcelainStatusParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestPorcelainStatusParser {
+  private static final String HEAD_INDEX_HASHES =
+      " 100644 100644 100644 "
+          + "4b825dc642cb6eb9a060e54bf8d69288fbee4904 4b825dc642cb6eb9a060e54bf8d69288fbee4904 ";
+
+  @Test
+  public void testParse() throws IOException {
+    String output =
+        "# branch.oid 4b825dc642cb6eb9a060e54bf8d69288fbee4904\0"
+            + "1 .M N..."
+            + HEAD_INDEX_HASHES
+            + "src/with space.java\0"
+            + "1 A. N..."
+            + HEAD_INDEX_HASHES
+            + "added.txt\0"
+            + "1 .D N..."
+            + HEAD_INDEX_HASHES
+            + "deleted.txt\0"
+            + "1 AD N..."
+            + HEAD_INDEX_HASHES
+            + "gone.txt\0"
+            + "2 R. N..."
+            + HEAD_INDEX_HASHES
+            + "R100 new name.txt\0old name.txt\0"
+            + "? build/out.class\0";
+    List<PorcelainStatusParser.Entry> entries = new ArrayList<>();
+    int count =
+        new PorcelainStatusParser()
+            .parse(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+    assertThat(count).isEqualTo(5);
+    assertThat(entries.get(0).getStatus()).isEqualTo(FileStatus.MODIFIED);
+    assertThat(entries.get(0).getPath()).isEqualTo("src/with space.java");
+    assertThat(entries.get(1).getStatus()).isEqualTo(FileStatus.ADDED);
+    assertThat(entries.get(2).getStatus()).isEqualTo(FileStatus.DELETED);
+    assertThat(entries.get(2).getHeadID()).isEqualTo("4b825dc642cb6eb9a060e54bf8d69288fbee4904");
+    assertThat(entries.get(3).getStatus()).isEqualTo(FileStatus.RENAMED);
+    assertThat(entries.get(3).getPath()).isEqualTo("new name.txt");
+    assertThat(entries.get(3).getOriginalPath()).isEqualTo("old name.txt");
+    assertThat(entries.get(4).getStatus()).isEqualTo(FileStatus.UNTRACKED);
+    assertThat(entries.get(4).getPath()).isEqualTo("build/out.class");
+    assertThat(entries.get(4).getHeadID()).isNull();
+  }
+
+  @Test
+  public void testPathPatterns() {
+    PathPatterns patterns =
+        new PathPatterns(Collections.singletonList("src/**"), Arrays.asList("build", "**/*.bin"));
+    assertThat(patterns.matches("src/main/A.java")).isTrue();
+    assertThat(patterns.matches("README.md")).isFalse();
+    assertThat(patterns.matches("src/main/data.bin")).isFalse();
+    assertThat(patterns.isExcluded("build")).isTrue();
+    assertThat(patterns.isExcluded("build/classes/A.class")).isTrue();
+    assertThat(patterns.toPathspecs())
+        .containsExactly(":(glob)src/**", ":(glob,exclude)build", ":(glob,exclude)**/*.bin");
+  }
+}
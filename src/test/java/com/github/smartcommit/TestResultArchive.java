@@ -0,0 +1,89 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.io.ResultArchive;
+import com.github.smartcommit.model.DiffHunk;
+import com.github.smartcommit.model.Group;
+import com.github.smartcommit.model.Hunk;
+import com.github.smartcommit.model.constant.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestResultArchive {
+  @TempDir File tempDir;
+
+  private static DiffHunk createDiffHunk(String fileID, int fileIndex, int index, String path) {
+    DiffHunk diffHunk =
+        new DiffHunk(
+            index,
+            FileType.JAVA,
+            ChangeType.MODIFIED,
+            new Hunk(Version.BASE, path, 1, 2, ContentType.CODE, new ArrayList<>()),
+            new Hunk(Version.CURRENT, path, 1, 3, ContentType.CODE, new ArrayList<>()),
+            "Modify 变量 " + index);
+    diffHunk.setFileID(fileID);
+    diffHunk.setDiffHunkID("h" + fileIndex + index);
+    diffHunk.setFileIndex(fileIndex);
+    diffHunk.setRawDiffs(Arrays.asList("@@ -1,2 +1,3 @@", "-a", "+b", "+c"));
+    return diffHunk;
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Map<String, DiffHunk> id2DiffHunkMap = new LinkedHashMap<>();
+    for (DiffHunk diffHunk :
+        Arrays.asList(
+            createDiffHunk("f0", 0, 0, "src/A.java"),
+            createDiffHunk("f0", 0, 1, "src/A.java"),
+            createDiffHunk("f1", 1, 0, "src/B.java"))) {
+      id2DiffHunkMap.put(diffHunk.getDiffHunkID(), diffHunk);
+    }
+    Map<String, Group> groups = new LinkedHashMap<>();
+    groups.put(
+        "group0",
+        new Group("1", "r", "group0", Arrays.asList("f0:h00", "f1:h10"), GroupLabel.FEATURE));
+    Group group1 = new Group("1", "r", "group1", Arrays.asList("f0:h01"), GroupLabel.REFACTOR);
+    group1.setRecommendedCommitMsgs(Arrays.asList("Rename a\n\nto b", "Refactor A"));
+    groups.put("group1", group1);
+
+    File file = new File(tempDir, ResultArchive.FILE_NAME);
+    ResultArchive.write(file, groups, id2DiffHunkMap);
+    ResultArchive archive = ResultArchive.open(file);
+
+    assertThat(archive.getGroupCount()).isEqualTo(2);
+    assertThat(archive.getHunkCount()).isEqualTo(3);
+    int group = archive.findGroup("group1");
+    assertThat(archive.getIntentLabel(group)).isEqualTo("REFACTOR");
+    assertThat(archive.getRecommendedCommitMsgs(group))
+        .containsExactly("Rename a\n\nto b", "Refactor A");
+    assertThat(archive.getRecommendedCommitMsgs(archive.findGroup("group0"))).isEmpty();
+    int[] hunks = archive.getHunkIndices(group);
+    assertThat(hunks).hasSize(1);
+    assertThat(archive.getDiffHunkID(hunks[0])).isEqualTo("h01");
+    assertThat(archive.getUniqueIndex(hunks[0])).isEqualTo("0:1");
+    assertThat(archive.getDescription(hunks[0])).isEqualTo("Modify 变量 1");
+    assertThat(archive.getCurrentEndLine(hunks[0])).isEqualTo(3);
+
+    int hunk = archive.findHunk("h10");
+    assertThat(archive.getHunkIndices(archive.findGroup("group0"))).contains(hunk);
+    assertThat(archive.getFileID(hunk)).isEqualTo("f1");
+    assertThat(archive.getBasePath(hunk)).isEqualTo("src/B.java");
+    assertThat(archive.getChangeType(hunk)).isEqualTo("MODIFIED");
+    assertThat(archive.getRawDiffs(hunk))
+        .isEqualTo(String.join(System.lineSeparator(), "@@ -1,2 +1,3 @@", "-a", "+b", "+c"));
+    assertThat(archive.findGroup("group2")).isEqualTo(-1);
+
+    // replaced as a whole, the mapped archive still reads the old one
+    groups.remove("group0");
+    ResultArchive.write(file, groups, id2DiffHunkMap);
+    assertThat(archive.getGroupCount()).isEqualTo(2);
+    assertThat(archive.getGroupID(0)).isEqualTo("group0");
+    assertThat(ResultArchive.open(file).getGroupCount()).isEqualTo(1);
+    assertThat(tempDir.list()).containsExactly(ResultArchive.FILE_NAME);
+  }
+}
@@ -0,0 +1,117 @@
+package com.github.smartcommit;
+
+import com.github.smartcommit.io.ContentStore;
+import com.github.smartcommit.io.SymbolIndex;
+import com.github.smartcommit.model.constant.Version;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestSymbolIndex {
+  @TempDir File tempDir;
+
+  private static void write(File repo, String path, String content) throws IOException {
+    File file = new File(repo, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Map<String, String> readStubs(String stubDir) throws IOException {
+    Path root = new File(stubDir).toPath();
+    try (Stream<Path> paths = Files.walk(root)) {
+      Map<String, String> stubs = new TreeMap<>();
+      for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        stubs.put(
+            root.relativize(path).toString().replace(File.separatorChar, '/'),
+            new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+      }
+      return stubs;
+    }
+  }
+
+  @Test
+  public void testUpdate() throws IOException, GitAPIException {
+    File repo = new File(tempDir, "repo");
+    String first;
+    String second;
+    try (Git git = Git.init().setDirectory(repo).call()) {
+      write(repo, "src/p/A.java", "package p;\npublic class A { int a() { return 1; } }\n");
+      write(repo, "src/p/B.java", "package p;\npublic class B { void b() {} }\n");
+      git.add().addFilepattern(".").call();
+      first = git.commit().setMessage("first").call().name();
+      write(repo, "src/p/B.java", "package p;\npublic class B { void b(int i) {} }\n");
+      write(repo, "src/q/C.java", "package q;\npublic class C {}\n");
+      git.rm().addFilepattern("src/p/A.java").call();
+      git.add().addFilepattern(".").call();
+      second = git.commit().setMessage("second").call().name();
+    }
+
+    SymbolIndex symbolIndex = new SymbolIndex(new ContentStore(tempDir + "/out"));
+    String stubDir = symbolIndex.getStubDir(Version.BASE);
+    assertThat(symbolIndex.update(repo.getPath(), first, Version.BASE, new HashSet<>()))
+        .isEqualTo(2);
+    Map<String, String> stubs = readStubs(stubDir);
+    assertThat(stubs).containsOnlyKeys("p/A.java", "p/B.java");
+    assertThat(stubs.get("p/A.java")).contains("class A").doesNotContain("return 1");
+
+    // only the changed files are parsed, and the excluded ones have no stubs
+    Set<String> excludedPaths = Collections.singleton("src/q/C.java");
+    assertThat(symbolIndex.update(repo.getPath(), second, Version.BASE, excludedPaths))
+        .isEqualTo(2);
+    stubs = readStubs(stubDir);
+    assertThat(stubs).containsOnlyKeys("p/B.java");
+    assertThat(stubs.get("p/B.java")).contains("int i");
+
+    // included again without parsing
+    assertThat(symbolIndex.update(repo.getPath(), second, Version.BASE, new HashSet<>()))
+        .isZero();
+    stubs = readStubs(stubDir);
+    assertThat(stubs).containsOnlyKeys("p/B.java", "q/C.java");
+
+    // the same as the stubs indexed from scratch
+    SymbolIndex freshIndex = new SymbolIndex(new ContentStore(tempDir + "/fresh"));
+    freshIndex.update(repo.getPath(), second, Version.BASE, new HashSet<>());
+    assertThat(stubs).isEqualTo(readStubs(freshIndex.getStubDir(Version.BASE)));
+
+    // back to the first commit, whose summaries are kept
+    assertThat(symbolIndex.update(repo.getPath(), first, Version.BASE, new HashSet<>()))
+        .isZero();
+    assertThat(readStubs(stubDir)).containsOnlyKeys("p/A.java", "p/B.java");
+  }
+
+  @Test
+  public void testUpdateFromIndex() throws IOException, GitAPIException {
+    File repo = new File(tempDir, "repo");
+    try (Git git = Git.init().setDirectory(repo).call()) {
+      write(repo, "A.java", "public class A {}\n");
+      git.add().addFilepattern(".").call();
+      git.commit().setMessage("first").call();
+
+      SymbolIndex symbolIndex = new SymbolIndex(new ContentStore(tempDir + "/out"));
+      String stubDir = symbolIndex.getStubDir(Version.CURRENT);
+      assertThat(symbolIndex.update(repo.getPath(), null, Version.CURRENT, new HashSet<>()))
+          .isEqualTo(1);
+      write(repo, "p/B.java", "package p;\npublic class B {}\n");
+      git.add().addFilepattern(".").call();
+      assertThat(symbolIndex.update(repo.getPath(), null, Version.CURRENT, new HashSet<>()))
+          .isEqualTo(1);
+      assertThat(readStubs(stubDir)).containsOnlyKeys("A.java", "p/B.java");
+      git.rm().addFilepattern("A.java").call();
+      assertThat(symbolIndex.update(repo.getPath(), null, Version.CURRENT, new HashSet<>()))
+          .isZero();
+      assertThat(readStubs(stubDir)).containsOnlyKeys("p/B.java");
+    }
+  }
+}